@@ -136,6 +136,7 @@ public class BeanCommand implements Identity, Runnable, Command {
 	private Object bean;
 	private String inputName;
 	private String outputName;
+	private String dependsOn;
 	private ArrayList params = new ArrayList();
 	private BeanCommand parent = null;
 	
@@ -233,6 +234,14 @@ public class BeanCommand implements Identity, Runnable, Command {
 	/** @param inputName The inputName to set. */
 	public void setInputName(String name) { this.inputName = name; }
 	
+	/** @return Returns the ids of the jobs to run before this one, comma separated. */
+	public String getDependsOn() { return (this.dependsOn); }
+	/**
+	 * @param dependsOn The ids of the jobs of the {@link ThreadCommand}
+	 * to run before this one, comma separated.
+	 */
+	public void setDependsOn(String dependsOn) { this.dependsOn = dependsOn; }
+
 	/** @return Returns the parent. */
 	public BeanCommand getParent() { return (this.parent); }
 	/** @param parent The parent to set. */
@@ -365,7 +374,6 @@ public class BeanCommand implements Identity, Runnable, Command {
 	/** Adds all the value from the child command to the parent command */
 	private void addReturnValueFromChild(BeanCommand cmd) {
 		Map childMap = null;
-		StringBuffer sb = new StringBuffer();
 		String prefix = cmd.getId();
 		String opName = cmd.getOutputName();
 		if (prefix == null) {
@@ -382,14 +390,11 @@ public class BeanCommand implements Identity, Runnable, Command {
 					value = childMap.get(key);
 				}
 				if (key != null && value != null && prefix != null) {
-					sb.setLength(0);
-					sb.append(prefix).append(".").append(key);
-					this.returnValue.put(sb.toString(), value);
+					this.returnValue.put(prefix + "." + key, value);
 				}
 			}
 		} else if (opName != null) {
-			sb.append(prefix).append(cmd.getOutputName());
-			this.returnValue.put(sb.toString(), o);
+			this.returnValue.put(prefix + opName, o);
 		}
 		
 	}
@@ -404,7 +409,7 @@ public class BeanCommand implements Identity, Runnable, Command {
 			if (m == null) {
 				m = map;
 			}
-			BeanUtils.populate(this.bean, m);
+			BeanInvoker.populate(this.bean, m);
 		} catch (Exception e) {
 			if (log.isErrorEnabled()) { log.error(e); }
 		}
@@ -415,18 +420,7 @@ public class BeanCommand implements Identity, Runnable, Command {
 		if (this.method == null) return;
 		if (this.getBean() == null) return;
 		try {
-			Object o = null;
-			if (params.size() == 1) {
-				Object args = null;
-				args = params.get(0);
-				o = MethodUtils.invokeMethod(this.getBean(), method, args);
-			} else if (params.size() > 1) {
-				Object[] args = null;
-				args = params.toArray();
-				o = MethodUtils.invokeMethod(this.getBean(), method, args);
-			} else {
-				o = MethodUtils.invokeMethod(this.getBean(), method, null);
-			}
+			Object o = BeanInvoker.invoke(this.getBean(), method, params.toArray());
 			if (o != null && this.outputName != null) {
 				this.returnValue.put(this.outputName, o);
 			}
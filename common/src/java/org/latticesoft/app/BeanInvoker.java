@@ -0,0 +1,280 @@
+/*
+ * Copyright 2004 Senunkan Shinryuu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Created on Oct 18, 2026
+ *
+ */
+package org.latticesoft.app;
+
+import java.beans.*;
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.util.*;
+import org.apache.commons.beanutils.*;
+import org.latticesoft.util.common.BeanUtil;
+import org.latticesoft.util.container.ConcurrentCache;
+
+/**
+ * Invokes the methods and setters of the beans through MethodHandles
+ * resolved once per bean class and signature. The method is looked up
+ * first with the exact types of the arguments and then with the
+ * compatible types as MethodUtils does. Anything the handles can not
+ * serve, such as a null argument, a null value or a nested property,
+ * falls back to commons-beanutils.
+ * <p>The handles are kept in a ClassValue so they go away with the
+ * class of the bean and never hold its class loader. The methods of
+ * each class are kept in a bounded cache as the argument types of the
+ * calls may vary without limit.</p>
+ */
+final class BeanInvoker {
+	private static final Object NOT_FOUND = new Object();
+	private static final Object FALLBACK = new Object();
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+	private static final Object[] NO_ARGS = new Object[0];
+	private static final int MAX_METHODS = 256;
+	private static final ClassValue methods = new ClassValue() {
+		protected Object computeValue(Class c) {
+			return new ConcurrentCache(MAX_METHODS, 1, ConcurrentCache.ADMISSION_SLRU);
+		}
+	};
+	private static final ClassValue setters = new ClassValue() {
+		protected Object computeValue(Class c) {
+			try {
+				return findSetters(c);
+			} catch (IntrospectionException e) {
+				throw new UndeclaredThrowableException(e);
+			}
+		}
+	};
+
+	private BeanInvoker() {}
+
+	/**
+	 * Invokes the method of the bean.
+	 * @param bean the bean
+	 * @param name the name of the method
+	 * @param args the arguments, may be null
+	 * @return the value returned, null for a void method
+	 */
+	static Object invoke(Object bean, String name, Object[] args) throws Exception {
+		if (args == null) {
+			args = NO_ARGS;
+		}
+		Class[] types = new Class[args.length];
+		for (int i=0; i<args.length; i++) {
+			if (args[i] == null) {
+				return MethodUtils.invokeMethod(bean, name, args);
+			}
+			types[i] = args[i].getClass();
+		}
+		MethodKey key = new MethodKey(bean.getClass(), name, types);
+		Map m = (Map)methods.get(bean.getClass());
+		Object o = m.get(key);
+		if (o == null) {
+			o = resolve(key);
+			m.put(key, o);
+		}
+		if (o == NOT_FOUND) {
+			throw new NoSuchMethodException("No such accessible method: " + name + "() on object: " + bean.getClass().getName());
+		}
+		if (o == FALLBACK) {
+			return MethodUtils.invokeMethod(bean, name, args);
+		}
+		try {
+			return (Object)((MethodHandle)o).invokeExact(bean, args);
+		} catch (Exception e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new InvocationTargetException(t);
+		}
+	}
+
+	/**
+	 * Resolves the method into a handle taking the bean and the array
+	 * of the arguments. A static method ignores the bean. A method the
+	 * handle can not be adapted to is left to MethodUtils.
+	 */
+	private static Object resolve(MethodKey key) {
+		Method m = MethodUtils.getAccessibleMethod(key.beanClass, key.name, key.types);
+		if (m == null) {
+			m = MethodUtils.getMatchingAccessibleMethod(key.beanClass, key.name, key.types);
+		}
+		if (m == null) {
+			return NOT_FOUND;
+		}
+		MethodHandle mh = unreflect(m);
+		if (mh == null) {
+			return NOT_FOUND;
+		}
+		try {
+			if (Modifier.isStatic(m.getModifiers())) {
+				mh = MethodHandles.dropArguments(mh, 0, Object.class);
+			}
+			return mh.asSpreader(Object[].class, key.types.length).asType(INVOKER_TYPE);
+		} catch (RuntimeException e) {
+			return FALLBACK;
+		}
+	}
+
+	/**
+	 * Populates the bean with the values of the map as
+	 * BeanUtils.populate does. The values of the type of the property
+	 * are set directly and the strings are converted by ConvertUtils.
+	 * The null values go through BeanUtils so that they are converted
+	 * the same way, a null Integer becoming 0.
+	 * @param bean the bean
+	 * @param map the values by property name
+	 */
+	static void populate(Object bean, Map map) throws Exception {
+		if (bean == null || map == null) {
+			return;
+		}
+		if (bean instanceof Map || bean instanceof DynaBean) {
+			BeanUtils.populate(bean, map);
+			return;
+		}
+		Map s = getSetters(bean.getClass());
+		Iterator iter = map.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry e = (Map.Entry)iter.next();
+			if (e.getKey() == null) {
+				continue;
+			}
+			String name = e.getKey().toString();
+			Object value = e.getValue();
+			Setter setter = (Setter)s.get(name);
+			if (setter == null) {
+				if (name.indexOf('.') >= 0 || name.indexOf('[') >= 0 || name.indexOf('(') >= 0) {
+					BeanUtils.setProperty(bean, name, value);
+				}
+				continue;
+			}
+			if (value != null && !setter.type.isInstance(value) && value instanceof String) {
+				Object converted = ConvertUtils.convert((String)value, setter.rawType);
+				if (setter.type.isInstance(converted)) {
+					value = converted;
+				}
+			}
+			if (value == null || !setter.type.isInstance(value)) {
+				BeanUtils.setProperty(bean, name, value);
+				continue;
+			}
+			try {
+				setter.handle.invokeExact(bean, value);
+			} catch (Exception ex) {
+				throw ex;
+			} catch (Error ex) {
+				throw ex;
+			} catch (Throwable t) {
+				throw new InvocationTargetException(t);
+			}
+		}
+	}
+
+	/**
+	 * Returns the setters of the properties of the class by name.
+	 */
+	private static Map getSetters(Class c) throws IntrospectionException {
+		try {
+			return (Map)setters.get(c);
+		} catch (UndeclaredThrowableException e) {
+			throw (IntrospectionException)e.getUndeclaredThrowable();
+		}
+	}
+
+	private static Map findSetters(Class c) throws IntrospectionException {
+		Map map = new HashMap();
+		PropertyDescriptor[] pd = BeanUtil.getPropertyDescriptors(c);
+		for (int i=0; i<pd.length; i++) {
+			if (pd[i] instanceof IndexedPropertyDescriptor || pd[i].getWriteMethod() == null) {
+				continue;
+			}
+			Method m = MethodUtils.getAccessibleMethod(c, pd[i].getWriteMethod().getName(),
+				pd[i].getWriteMethod().getParameterTypes());
+			MethodHandle mh = (m == null) ? null : unreflect(m);
+			if (mh != null) {
+				map.put(pd[i].getName(), new Setter(mh.asType(SETTER_TYPE), pd[i].getPropertyType()));
+			}
+		}
+		return map;
+	}
+
+	private static MethodHandle unreflect(Method m) {
+		try {
+			return MethodHandles.publicLookup().unreflect(m);
+		} catch (IllegalAccessException e) {
+			try {
+				m.setAccessible(true);
+				return MethodHandles.lookup().unreflect(m);
+			} catch (Exception ex) {
+				return null;
+			}
+		}
+	}
+
+	private static Class box(Class c) {
+		if (!c.isPrimitive()) return c;
+		if (c == int.class) return Integer.class;
+		if (c == long.class) return Long.class;
+		if (c == boolean.class) return Boolean.class;
+		if (c == double.class) return Double.class;
+		if (c == float.class) return Float.class;
+		if (c == short.class) return Short.class;
+		if (c == byte.class) return Byte.class;
+		if (c == char.class) return Character.class;
+		return c;
+	}
+
+	/** A setter and the type of its property. */
+	private static class Setter {
+		private MethodHandle handle;
+		private Class rawType;
+		private Class type;
+
+		private Setter(MethodHandle handle, Class rawType) {
+			this.handle = handle;
+			this.rawType = rawType;
+			this.type = box(rawType);
+		}
+	}
+
+	/** The class, name and argument types of a method. */
+	private static class MethodKey {
+		private Class beanClass;
+		private String name;
+		private Class[] types;
+		private int hash;
+
+		private MethodKey(Class beanClass, String name, Class[] types) {
+			this.beanClass = beanClass;
+			this.name = name;
+			this.types = types;
+			this.hash = (beanClass.hashCode() * 31 + name.hashCode()) * 31 + Arrays.hashCode(types);
+		}
+
+		public int hashCode() {
+			return this.hash;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof MethodKey)) return false;
+			MethodKey k = (MethodKey)o;
+			return this.beanClass == k.beanClass && this.name.equals(k.name) && Arrays.equals(this.types, k.types);
+		}
+	}
+}
@@ -23,12 +23,30 @@ import org.latticesoft.util.common.*;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.lang.reflect.*;
 
 /**
  * ThreadCommand is a command that can execute all the child Runnable
  * in a thread. More than one thread can be executed 
+ * <p>
+ * The jobs run on a thread pool shared by all the ThreadCommands, at
+ * most threadCount of them at a time. The jobs block so the pool grows
+ * as needed and its idle threads end after a minute. A job may depend on other jobs
+ * by id, either through {@link BeanCommand#setDependsOn(String)} or
+ * {@link #addDependency(String, String)}; it starts once all of them
+ * have completed, and fails without running if one of them fails.
+ * Each job gets its own copy of the input merged with the results of
+ * its dependencies, and its results are published as a
+ * CompletableFuture by job id.
+ * </p>
+ * <p>
+ * The jobs are run as they are, so a new execution is queued behind the
+ * last one and starts once all of its jobs have stopped running, even
+ * those which timed out or were cancelled.
+ * </p>
  */
 public class ThreadCommand implements Command, Identity {
 	private static final Log log = LogFactory.getLog(ThreadCommand.class);
@@ -39,6 +57,13 @@ public class ThreadCommand implements Command, Identity {
 	private long timeout;
 	private TimeUnit timeoutUnit = TimeUnit.MILLISECONDS;
 	private boolean waitFor;
+	private long jobTimeout;
+	private Map dependencies = new HashMap();
+	private Map jobTimeouts = new HashMap();
+	private volatile Map results = null;
+	private CompletableFuture last = null;
+	private static ExecutorService sharedPool = null;
+	private static ScheduledExecutorService timer = null;
 	
 	/** @return Returns the threadCount. */
 	public int getThreadCount() { return (this.threadCount); }
@@ -100,6 +125,99 @@ if (log.isDebugEnabled()) { log.debug(this.getTimeoutUnit()); }
 	/** @param waitFor The waitFor to set. */
 	public void setWaitFor(boolean waitFor) { this.waitFor = waitFor; }
 
+	/** @return Returns the default timeout of each job, in timeoutUnit. */
+	public long getJobTimeout() { return (this.jobTimeout); }
+	/** @param jobTimeout The default timeout of each job, in timeoutUnit, 0 for none. */
+	public void setJobTimeout(long jobTimeout) { this.jobTimeout = jobTimeout; }
+	/**
+	 * Sets the timeout of one job.
+	 * @param id the id of the job
+	 * @param timeout the timeout in timeoutUnit, 0 for none
+	 */
+	public void setJobTimeout(String id, long timeout) {
+		this.jobTimeouts.put(id, Long.valueOf(timeout));
+	}
+
+	/**
+	 * Declares that a job runs after another one.
+	 * @param id the id of the job
+	 * @param dependsOn the id of the job to run before
+	 */
+	public void addDependency(String id, String dependsOn) {
+		Set set = (Set)this.dependencies.get(id);
+		if (set == null) {
+			set = new LinkedHashSet();
+			this.dependencies.put(id, set);
+		}
+		set.add(dependsOn);
+	}
+
+	/**
+	 * Returns the results of the jobs of the last execution by job id.
+	 * The result of a {@link BeanCommand} is its return value map, the
+	 * one of a Command is the value returned and the one of a plain
+	 * Runnable is null.
+	 * @return the map of the CompletableFuture of each job, null before any execution
+	 */
+	public Map getResults() { return (this.results); }
+
+	/**
+	 * A job which timed out or was cancelled has completed but may still
+	 * be running until it notices the interrupt.
+	 * @return true if some jobs of the last execution have not completed or are still running.
+	 */
+	public synchronized boolean isRunning() {
+		return (this.last != null && !this.last.isDone());
+	}
+
+	/**
+	 * Cancels the jobs of the last execution which have not completed.
+	 * The running ones are interrupted.
+	 */
+	public void cancel() {
+		Map m = this.results;
+		if (m == null) {
+			return;
+		}
+		Iterator iter = m.values().iterator();
+		while (iter.hasNext()) {
+			((CompletableFuture)iter.next()).cancel(true);
+		}
+	}
+
+	/**
+	 * Returns the pool shared by the ThreadCommands. It is not bounded,
+	 * each execution limiting its own jobs to threadCount. Its threads
+	 * are daemons, so it is never shut down.
+	 */
+	public static synchronized ExecutorService getSharedPool() {
+		if (sharedPool == null) {
+			sharedPool = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+				new SynchronousQueue(), new ThreadFactory() {
+					private int count = 0;
+					public synchronized Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "ThreadCommand-" + (++count));
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		}
+		return sharedPool;
+	}
+
+	private static synchronized ScheduledExecutorService getTimer() {
+		if (timer == null) {
+			timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ThreadCommand-timer");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return timer;
+	}
+
 	/** @return Returns the works. */
 	public List getJobs() { return (this.jobs); }
 	/** @param jobs The jobs to set. */
@@ -136,25 +254,25 @@ if (log.isDebugEnabled()) { log.debug(this.getTimeoutUnit()); }
 			map = new HashMap();
 		}
 		try {
-			ExecutorService es = Executors.newFixedThreadPool(threadCount);
 			if (log.isInfoEnabled()) { log.info("JobSize: " + this.jobs.size()); }
-			for (int i=0; i<jobs.size(); i++) {
-				Runnable r = (Runnable)jobs.get(i);
-				if (r instanceof BeanCommand) {
-					BeanCommand cmd = (BeanCommand)r;
-					cmd.setExecuteParam(map);
-				}
-				es.execute(r);
-			}
+			Map futures = this.executeAsync(map);
 			if (this.waitFor && this.timeout > 0 && this.timeoutUnit != null) {
-				es.shutdown();
+				CompletableFuture all = CompletableFuture.allOf(
+					(CompletableFuture[])futures.values().toArray(new CompletableFuture[futures.size()]));
 				long l = System.currentTimeMillis();
 if (log.isInfoEnabled()) { log.info("Begin of waiting..."); }
-				es.awaitTermination(this.timeout, this.timeoutUnit);
+				try {
+					all.get(this.timeout, this.timeoutUnit);
+				} catch (ExecutionException e) {
+					// the failed jobs are logged as they complete
+				} catch (TimeoutException e) {
+if (log.isInfoEnabled()) { log.info("Timeout while waiting"); }
+				}
 				long l2 = System.currentTimeMillis();
 if (log.isInfoEnabled()) { log.info("End of waiting..." + (l2 - l)); }
 			}
-			//es.shutdown();
+		} catch (CommandException e) {
+			throw e;
 		} catch (Exception e) {
 			if (log.isErrorEnabled()) { log.error(e); }
 		}
@@ -162,6 +280,314 @@ if (log.isDebugEnabled()) { log.debug("end!"); }
 		return map;
 	}
 
+	/**
+	 * Runs the jobs on the shared pool without waiting for them. The
+	 * results of each job are put into the map given when it completes.
+	 * The jobs start once those of the last execution have stopped.
+	 * @param map the input of the jobs, also the map the results are put into
+	 * @return the CompletableFuture of each job by job id, in the order of the jobs
+	 */
+	public Map executeAsync(Map map) {
+		final Execution ex = new Execution(map);
+		CompletableFuture previous = null;
+		synchronized (this) {
+			previous = this.last;
+			this.last = ex.stopped;
+			this.results = ex.futures;
+		}
+		if (previous == null || previous.isDone()) {
+			ex.start();
+		} else {
+if (log.isInfoEnabled()) { log.info("Queued behind the last execution of " + this.name); }
+			previous.whenComplete(new BiConsumer() {
+				public void accept(Object o, Object t) {
+					ex.start();
+				}
+			});
+		}
+		return ex.futures;
+	}
+
+	/**
+	 * Returns the id of the job, its position when it has none.
+	 */
+	private static String getJobId(Object job, int index) {
+		String s = null;
+		if (job instanceof Identity) {
+			s = ((Identity)job).getId();
+			if (s == null) {
+				s = ((Identity)job).getName();
+			}
+		}
+		return (s == null) ? String.valueOf(index) : s;
+	}
+
+	/**
+	 * One run of the jobs. A job is queued once its dependencies have
+	 * completed, and at most threadCount queued jobs run at a time. The
+	 * execution is stopped once each job has either returned or been
+	 * dropped without running.
+	 */
+	private class Execution {
+		private Map input;
+		private Map futures = new LinkedHashMap();
+		private Map jobById = new HashMap();
+		private LinkedList ready = new LinkedList();
+		private int running = 0;
+		private AtomicInteger remaining = new AtomicInteger();
+		private CompletableFuture stopped = new CompletableFuture();
+
+		private Execution(Map input) {
+			this.input = input;
+			for (int i=0; i<jobs.size(); i++) {
+				String id = getJobId(jobs.get(i), i);
+				if (this.futures.containsKey(id)) {
+					id = id + "#" + i;
+				}
+				this.futures.put(id, new CompletableFuture());
+				this.jobById.put(id, jobs.get(i));
+			}
+			this.remaining.set(this.futures.size());
+		}
+
+		/** Counts a job which has returned or will not run. */
+		private void stopped() {
+			if (this.remaining.decrementAndGet() == 0) {
+				this.stopped.complete(null);
+			}
+		}
+
+		private Set getDependencies(String id) {
+			Set set = new LinkedHashSet();
+			Object job = this.jobById.get(id);
+			if (job instanceof BeanCommand && ((BeanCommand)job).getDependsOn() != null) {
+				String[] s = ((BeanCommand)job).getDependsOn().split(",");
+				for (int i=0; i<s.length; i++) {
+					if (s[i].trim().length() > 0) {
+						set.add(s[i].trim());
+					}
+				}
+			}
+			if (dependencies.containsKey(id)) {
+				set.addAll((Set)dependencies.get(id));
+			}
+			return set;
+		}
+
+		private void start() {
+			if (this.futures.isEmpty()) {
+				this.stopped.complete(null);
+				return;
+			}
+			Map deps = new HashMap();
+			Iterator iter = this.futures.keySet().iterator();
+			while (iter.hasNext()) {
+				String id = (String)iter.next();
+				deps.put(id, this.getDependencies(id));
+			}
+			Set cyclic = this.findCycles(deps);
+			iter = this.futures.entrySet().iterator();
+			while (iter.hasNext()) {
+				Map.Entry e = (Map.Entry)iter.next();
+				final String id = (String)e.getKey();
+				final CompletableFuture future = (CompletableFuture)e.getValue();
+				this.publish(id, future);
+				if (cyclic.contains(id)) {
+					future.completeExceptionally(new CommandException("Cyclic dependency of job " + id));
+					this.stopped();
+					continue;
+				}
+				final List before = new ArrayList();
+				Iterator it = ((Set)deps.get(id)).iterator();
+				while (it.hasNext()) {
+					String d = (String)it.next();
+					CompletableFuture f = (CompletableFuture)this.futures.get(d);
+					if (f == null) {
+						if (log.isWarnEnabled()) { log.warn("Job " + id + " depends on unknown job " + d); }
+					} else {
+						before.add(f);
+					}
+				}
+				CompletableFuture.allOf((CompletableFuture[])before.toArray(new CompletableFuture[before.size()]))
+					.whenComplete(new BiConsumer() {
+						public void accept(Object o, Object t) {
+							if (t != null) {
+								future.completeExceptionally(new CommandException((Throwable)t));
+								stopped();
+							} else if (!future.isDone()) {
+								schedule(new Job(id, future, before));
+							} else {
+								stopped();
+							}
+						}
+					});
+			}
+		}
+
+		/**
+		 * Returns the jobs on or behind a cycle of dependencies.
+		 */
+		private Set findCycles(Map deps) {
+			Set done = new HashSet();
+			Set cyclic = new HashSet();
+			Iterator iter = deps.keySet().iterator();
+			while (iter.hasNext()) {
+				this.visit((String)iter.next(), deps, new HashSet(), done, cyclic);
+			}
+			return cyclic;
+		}
+
+		private boolean visit(String id, Map deps, Set path, Set done, Set cyclic) {
+			if (cyclic.contains(id) || path.contains(id)) {
+				return true;
+			}
+			if (done.contains(id) || !deps.containsKey(id)) {
+				return false;
+			}
+			path.add(id);
+			boolean b = false;
+			Iterator iter = ((Set)deps.get(id)).iterator();
+			while (iter.hasNext()) {
+				if (this.visit((String)iter.next(), deps, path, done, cyclic)) {
+					b = true;
+				}
+			}
+			path.remove(id);
+			done.add(id);
+			if (b) {
+				cyclic.add(id);
+			}
+			return b;
+		}
+
+		/**
+		 * Logs the failure of the job. The results are put into the input
+		 * map by the job before its future completes, so they are there
+		 * for whoever waits on the future.
+		 */
+		private void publish(final String id, CompletableFuture future) {
+			future.whenComplete(new BiConsumer() {
+				public void accept(Object o, Object t) {
+					if (t instanceof CancellationException) {
+						if (log.isInfoEnabled()) { log.info("Job " + id + " cancelled"); }
+					} else if (t != null) {
+						if (log.isErrorEnabled()) { log.error("Job " + id + " failed", (Throwable)t); }
+					}
+				}
+			});
+		}
+
+		private synchronized void schedule(Job job) {
+			this.ready.add(job);
+			this.dispatch();
+		}
+
+		private synchronized void finished() {
+			this.running--;
+			this.dispatch();
+		}
+
+		private synchronized void dispatch() {
+			while (!this.ready.isEmpty() && (threadCount <= 0 || this.running < threadCount)) {
+				this.running++;
+				getSharedPool().execute((Job)this.ready.removeFirst());
+			}
+		}
+
+		/** A job ready to run with the results of its dependencies. */
+		private class Job implements Runnable {
+			private String id;
+			private CompletableFuture future;
+			private List before;
+
+			private Job(String id, CompletableFuture future, List before) {
+				this.id = id;
+				this.future = future;
+				this.before = before;
+			}
+
+			public void run() {
+				final Thread thread = Thread.currentThread();
+				ScheduledFuture expiry = null;
+				try {
+					if (this.future.isDone()) {
+						return;
+					}
+					// cancelling the future interrupts the job
+					this.future.whenComplete(new BiConsumer() {
+						public void accept(Object o, Object t) {
+							if (t instanceof CancellationException || t instanceof TimeoutException) {
+								synchronized (Job.this) {
+									if (Job.this.future != null) {
+										thread.interrupt();
+									}
+								}
+							}
+						}
+					});
+					long t = jobTimeout;
+					if (jobTimeouts.containsKey(this.id)) {
+						t = ((Long)jobTimeouts.get(this.id)).longValue();
+					}
+					if (t > 0 && timeoutUnit != null) {
+						expiry = getTimer().schedule(new Runnable() {
+							public void run() {
+								future.completeExceptionally(new TimeoutException("Job " + id + " timed out"));
+							}
+						}, t, timeoutUnit);
+					}
+					Object result = this.runJob();
+					if (result instanceof Map) {
+						synchronized (input) {
+							if (!this.future.isDone()) {
+								input.putAll((Map)result);
+							}
+						}
+					}
+					this.future.complete(result);
+				} catch (Throwable t) {
+					this.future.completeExceptionally(t);
+				} finally {
+					synchronized (this) {
+						this.future = null;
+					}
+					// clears an interrupt meant for this job
+					Thread.interrupted();
+					if (expiry != null) {
+						expiry.cancel(false);
+					}
+					finished();
+					stopped();
+				}
+			}
+
+			private Object runJob() {
+				Object job = jobById.get(this.id);
+				Map m = new HashMap();
+				synchronized (input) {
+					m.putAll(input);
+				}
+				for (int i=0; i<this.before.size(); i++) {
+					Object o = ((CompletableFuture)this.before.get(i)).getNow(null);
+					if (o instanceof Map) {
+						m.putAll((Map)o);
+					}
+				}
+				if (job instanceof BeanCommand) {
+					BeanCommand cmd = (BeanCommand)job;
+					cmd.reset();
+					cmd.setExecuteParam(m);
+					cmd.run();
+					return new HashMap((Map)cmd.getReturnValue());
+				} else if (job instanceof Command) {
+					return ((Command)job).execute(m);
+				}
+				((Runnable)job).run();
+				return null;
+			}
+		}
+	}
+
 	public String toString() {
 		return StringUtil.formatObjectToString(this, true);
 	}
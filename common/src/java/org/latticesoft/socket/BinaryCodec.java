@@ -0,0 +1,318 @@
+/*
+ * Copyright Jurong Port Pte Ltd
+ * Created on Oct 18, 2026
+ */
+package org.latticesoft.socket;
+
+import java.io.*;
+import java.math.*;
+import java.nio.*;
+import java.util.*;
+
+/**
+ * A compact binary codec of the {@link SocketRequest} and the
+ * {@link SocketResponse}. Every value is written as a type tag followed
+ * by the value, the strings and the byte arrays being length prefixed.
+ * The strings, numbers, booleans, byte arrays, dates, maps and lists
+ * are written natively. The maps are decoded as HashMap and the lists
+ * as ArrayList. The values of any other type are written with the java
+ * serialization.
+ * <p>Every length and count read is checked against the bytes left in
+ * the frame and the maps and lists are nested at most MAX_DEPTH deep, so
+ * a malformed frame fails with a StreamCorruptedException instead of an
+ * allocation as large as the peer asks for.</p>
+ */
+public class BinaryCodec implements SocketCodec {
+	public static final int ID = 1;
+	private static final String ENCODING = "UTF-8";
+
+	private static final byte KIND_VALUE = 0;
+	private static final byte KIND_REQUEST = 1;
+	private static final byte KIND_RESPONSE = 2;
+
+	private static final byte TYPE_NULL = 0;
+	private static final byte TYPE_STRING = 1;
+	private static final byte TYPE_INTEGER = 2;
+	private static final byte TYPE_LONG = 3;
+	private static final byte TYPE_DOUBLE = 4;
+	private static final byte TYPE_FLOAT = 5;
+	private static final byte TYPE_SHORT = 6;
+	private static final byte TYPE_BYTE = 7;
+	private static final byte TYPE_BOOLEAN = 8;
+	private static final byte TYPE_CHARACTER = 9;
+	private static final byte TYPE_BIG_DECIMAL = 10;
+	private static final byte TYPE_BIG_INTEGER = 11;
+	private static final byte TYPE_BYTES = 12;
+	private static final byte TYPE_DATE = 13;
+	private static final byte TYPE_MAP = 14;
+	private static final byte TYPE_LIST = 15;
+	private static final byte TYPE_SERIALIZED = 16;
+
+	/** The maximum nesting of the maps and lists decoded */
+	public static final int MAX_DEPTH = 64;
+
+	private SerializedCodec serializedCodec = new SerializedCodec();
+
+	public int getId() {
+		return ID;
+	}
+
+	public ByteBuffer encode(Object o, ByteBuffer buffer) throws IOException {
+		BufferPool pool = BufferPool.getInstance();
+		if (o instanceof SocketRequest) {
+			SocketRequest request = (SocketRequest)o;
+			buffer = pool.ensure(buffer, 1);
+			buffer.put(KIND_REQUEST);
+			buffer = this.putString(buffer, request.getInstruction());
+			buffer = this.putString(buffer, request.getCommandClassName());
+			buffer = this.putString(buffer, request.getId());
+			buffer = this.putMap(buffer, request.getMap());
+		} else if (o instanceof SocketResponse) {
+			SocketResponse response = (SocketResponse)o;
+			buffer = pool.ensure(buffer, 21);
+			buffer.put(KIND_RESPONSE);
+			buffer.putLong(response.getRequestId());
+			buffer.putInt(response.getStatus());
+			buffer.putLong(response.getRetryAfter());
+			buffer = this.putString(buffer, response.getId());
+			buffer = this.putString(buffer, response.getMessage());
+			buffer = this.putValue(buffer, response.getResult());
+		} else {
+			buffer = pool.ensure(buffer, 1);
+			buffer.put(KIND_VALUE);
+			buffer = this.putValue(buffer, o);
+		}
+		return buffer;
+	}
+
+	public Object decode(ByteBuffer buffer) throws IOException, ClassNotFoundException {
+		try {
+			return this.decodeKind(buffer);
+		} catch (BufferUnderflowException e) {
+			throw new StreamCorruptedException("Truncated frame");
+		}
+	}
+
+	private Object decodeKind(ByteBuffer buffer) throws IOException, ClassNotFoundException {
+		byte kind = buffer.get();
+		if (kind == KIND_REQUEST) {
+			SocketRequest request = new SocketRequest();
+			String instruction = this.getString(buffer);
+			String commandClassName = this.getString(buffer);
+			String id = this.getString(buffer);
+			Object map = this.getValue(buffer, 0);
+			if (!(map instanceof Map)) {
+				throw new StreamCorruptedException("Request without a map");
+			}
+			request.getMap().putAll((Map)map);
+			request.setInstruction(instruction);
+			request.setCommandClassName(commandClassName);
+			request.setId(id);
+			return request;
+		} else if (kind == KIND_RESPONSE) {
+			SocketResponse response = new SocketResponse();
+			response.setRequestId(buffer.getLong());
+			response.setStatus(buffer.getInt());
+			response.setRetryAfter(buffer.getLong());
+			response.setId(this.getString(buffer));
+			response.setMessage(this.getString(buffer));
+			response.setResult(this.getValue(buffer, 0));
+			return response;
+		} else if (kind == KIND_VALUE) {
+			return this.getValue(buffer, 0);
+		}
+		throw new StreamCorruptedException("Unknown kind " + kind);
+	}
+
+	private ByteBuffer putString(ByteBuffer buffer, String s) throws IOException {
+		if (s == null) {
+			buffer = BufferPool.getInstance().ensure(buffer, 4);
+			buffer.putInt(-1);
+			return buffer;
+		}
+		return this.putBytes(buffer, s.getBytes(ENCODING));
+	}
+
+	private ByteBuffer putBytes(ByteBuffer buffer, byte[] b) {
+		buffer = BufferPool.getInstance().ensure(buffer, 4 + b.length);
+		buffer.putInt(b.length);
+		buffer.put(b);
+		return buffer;
+	}
+
+	private ByteBuffer putMap(ByteBuffer buffer, Map map) throws IOException {
+		buffer = BufferPool.getInstance().ensure(buffer, 5);
+		buffer.put(TYPE_MAP);
+		buffer.putInt(map.size());
+		Iterator iter = map.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry entry = (Map.Entry)iter.next();
+			buffer = this.putValue(buffer, entry.getKey());
+			buffer = this.putValue(buffer, entry.getValue());
+		}
+		return buffer;
+	}
+
+	private ByteBuffer putValue(ByteBuffer buffer, Object o) throws IOException {
+		BufferPool pool = BufferPool.getInstance();
+		buffer = pool.ensure(buffer, 9);
+		if (o == null) {
+			buffer.put(TYPE_NULL);
+		} else if (o instanceof String) {
+			buffer.put(TYPE_STRING);
+			buffer = this.putString(buffer, (String)o);
+		} else if (o instanceof Integer) {
+			buffer.put(TYPE_INTEGER);
+			buffer.putInt(((Integer)o).intValue());
+		} else if (o instanceof Long) {
+			buffer.put(TYPE_LONG);
+			buffer.putLong(((Long)o).longValue());
+		} else if (o instanceof Double) {
+			buffer.put(TYPE_DOUBLE);
+			buffer.putDouble(((Double)o).doubleValue());
+		} else if (o instanceof Float) {
+			buffer.put(TYPE_FLOAT);
+			buffer.putFloat(((Float)o).floatValue());
+		} else if (o instanceof Short) {
+			buffer.put(TYPE_SHORT);
+			buffer.putShort(((Short)o).shortValue());
+		} else if (o instanceof Byte) {
+			buffer.put(TYPE_BYTE);
+			buffer.put(((Byte)o).byteValue());
+		} else if (o instanceof Boolean) {
+			buffer.put(TYPE_BOOLEAN);
+			buffer.put((byte)(((Boolean)o).booleanValue() ? 1 : 0));
+		} else if (o instanceof Character) {
+			buffer.put(TYPE_CHARACTER);
+			buffer.putChar(((Character)o).charValue());
+		} else if (o instanceof BigDecimal) {
+			buffer.put(TYPE_BIG_DECIMAL);
+			buffer = this.putString(buffer, o.toString());
+		} else if (o instanceof BigInteger) {
+			buffer.put(TYPE_BIG_INTEGER);
+			buffer = this.putBytes(buffer, ((BigInteger)o).toByteArray());
+		} else if (o instanceof byte[]) {
+			buffer.put(TYPE_BYTES);
+			buffer = this.putBytes(buffer, (byte[])o);
+		} else if (o.getClass() == Date.class) {
+			buffer.put(TYPE_DATE);
+			buffer.putLong(((Date)o).getTime());
+		} else if (o instanceof Map) {
+			buffer = this.putMap(buffer, (Map)o);
+		} else if (o instanceof List) {
+			List list = (List)o;
+			buffer.put(TYPE_LIST);
+			buffer.putInt(list.size());
+			for (int i=0; i<list.size(); i++) {
+				buffer = this.putValue(buffer, list.get(i));
+			}
+		} else {
+			buffer.put(TYPE_SERIALIZED);
+			int start = buffer.position();
+			buffer.putInt(0);
+			buffer = this.serializedCodec.encode(o, buffer);
+			buffer.putInt(start, buffer.position() - start - 4);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Reads a length or a count and checks that the frame has the bytes
+	 * left for it.
+	 * @param unit the minimum number of bytes of each item counted
+	 */
+	private int getLength(ByteBuffer buffer, int unit) throws StreamCorruptedException {
+		int length = buffer.getInt();
+		this.checkLength(buffer, length, unit);
+		return length;
+	}
+
+	private void checkLength(ByteBuffer buffer, int length, int unit) throws StreamCorruptedException {
+		if (length < 0 || length > buffer.remaining() / unit) {
+			throw new StreamCorruptedException("Invalid length " + length + " with " + buffer.remaining() + " bytes left");
+		}
+	}
+
+	private String getString(ByteBuffer buffer) throws IOException {
+		int length = buffer.getInt();
+		if (length == -1) {
+			return null;
+		}
+		this.checkLength(buffer, length, 1);
+		String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, ENCODING);
+		buffer.position(buffer.position() + length);
+		return s;
+	}
+
+	private byte[] getBytes(ByteBuffer buffer) throws IOException {
+		byte[] b = new byte[this.getLength(buffer, 1)];
+		buffer.get(b);
+		return b;
+	}
+
+	private Object getValue(ByteBuffer buffer, int depth) throws IOException, ClassNotFoundException {
+		byte type = buffer.get();
+		switch (type) {
+			case TYPE_NULL: return null;
+			case TYPE_STRING: return this.getString(buffer);
+			case TYPE_INTEGER: return Integer.valueOf(buffer.getInt());
+			case TYPE_LONG: return Long.valueOf(buffer.getLong());
+			case TYPE_DOUBLE: return Double.valueOf(buffer.getDouble());
+			case TYPE_FLOAT: return Float.valueOf(buffer.getFloat());
+			case TYPE_SHORT: return Short.valueOf(buffer.getShort());
+			case TYPE_BYTE: return Byte.valueOf(buffer.get());
+			case TYPE_BOOLEAN: return Boolean.valueOf(buffer.get() != 0);
+			case TYPE_CHARACTER: return Character.valueOf(buffer.getChar());
+			case TYPE_BIG_DECIMAL: {
+				String s = this.getString(buffer);
+				try {
+					return new BigDecimal(s);
+				} catch (RuntimeException e) {
+					throw new StreamCorruptedException("Invalid decimal " + s);
+				}
+			}
+			case TYPE_BIG_INTEGER: {
+				byte[] b = this.getBytes(buffer);
+				if (b.length == 0) {
+					throw new StreamCorruptedException("Empty integer");
+				}
+				return new BigInteger(b);
+			}
+			case TYPE_BYTES: return this.getBytes(buffer);
+			case TYPE_DATE: return new Date(buffer.getLong());
+			case TYPE_MAP: {
+				if (depth >= MAX_DEPTH) {
+					throw new StreamCorruptedException("Nested deeper than " + MAX_DEPTH);
+				}
+				// a key and a value take at least a tag each
+				int size = this.getLength(buffer, 2);
+				Map map = new HashMap(size * 4 / 3 + 1);
+				for (int i=0; i<size; i++) {
+					Object key = this.getValue(buffer, depth + 1);
+					map.put(key, this.getValue(buffer, depth + 1));
+				}
+				return map;
+			}
+			case TYPE_LIST: {
+				if (depth >= MAX_DEPTH) {
+					throw new StreamCorruptedException("Nested deeper than " + MAX_DEPTH);
+				}
+				int size = this.getLength(buffer, 1);
+				List list = new ArrayList(size);
+				for (int i=0; i<size; i++) {
+					list.add(this.getValue(buffer, depth + 1));
+				}
+				return list;
+			}
+			case TYPE_SERIALIZED: {
+				int length = this.getLength(buffer, 1);
+				int limit = buffer.limit();
+				buffer.limit(buffer.position() + length);
+				Object o = this.serializedCodec.decode(buffer);
+				buffer.limit(limit);
+				return o;
+			}
+		}
+		throw new StreamCorruptedException("Unknown type " + type);
+	}
+}
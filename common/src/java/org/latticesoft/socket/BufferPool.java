@@ -0,0 +1,102 @@
+/*
+ * Copyright Jurong Port Pte Ltd
+ * Created on Oct 18, 2026
+ */
+package org.latticesoft.socket;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A pool of heap byte buffers used in encoding and decoding the frames.
+ * Only the buffers of the default size are pooled. A larger buffer
+ * requested is allocated and simply dropped on release.
+ */
+public class BufferPool {
+	private static BufferPool instance = new BufferPool();
+	private Queue buffers = new ConcurrentLinkedQueue();
+	private AtomicInteger pooled = new AtomicInteger();
+	private int bufferSize = 8192;
+	private int maxPooled = 256;
+
+	public BufferPool() {
+	}
+
+	public BufferPool(int bufferSize, int maxPooled) {
+		this.bufferSize = bufferSize;
+		this.maxPooled = maxPooled;
+	}
+
+	public static BufferPool getInstance() {
+		return instance;
+	}
+
+	/** @return Returns the bufferSize. */
+	public int getBufferSize() {
+		return (this.bufferSize);
+	}
+
+	/** @return Returns the maxPooled. */
+	public int getMaxPooled() {
+		return (this.maxPooled);
+	}
+
+	/** @return the number of buffers idle in the pool. */
+	public int getPooledCount() {
+		return this.pooled.get();
+	}
+
+	/**
+	 * Acquires a cleared buffer with at least the size given.
+	 */
+	public ByteBuffer acquire(int size) {
+		if (size > this.bufferSize) {
+			return ByteBuffer.allocate(size);
+		}
+		ByteBuffer buffer = (ByteBuffer)this.buffers.poll();
+		if (buffer == null) {
+			return ByteBuffer.allocate(this.bufferSize);
+		}
+		this.pooled.decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	public ByteBuffer acquire() {
+		return this.acquire(this.bufferSize);
+	}
+
+	/**
+	 * Returns the buffer to the pool. The buffer must not be used
+	 * by the caller afterwards.
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null || buffer.capacity() != this.bufferSize || !buffer.hasArray()) {
+			return;
+		}
+		if (this.pooled.incrementAndGet() <= this.maxPooled) {
+			this.buffers.add(buffer);
+		} else {
+			this.pooled.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Makes sure the buffer has the space for the bytes to be put.
+	 * A larger buffer is acquired with the content copied over. The
+	 * buffer given is not released as the caller may still hold it,
+	 * see {@link SocketFrame#encode(SocketCodec, long, Object)}.
+	 * @return the buffer with enough space remaining
+	 */
+	public ByteBuffer ensure(ByteBuffer buffer, int size) {
+		if (buffer.remaining() >= size) {
+			return buffer;
+		}
+		ByteBuffer grown = this.acquire(Math.max(buffer.capacity() * 2, buffer.position() + size));
+		buffer.flip();
+		grown.put(buffer);
+		return grown;
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright Jurong Port Pte Ltd
+ * Created on Oct 18, 2026
+ */
+package org.latticesoft.socket;
+
+import java.lang.invoke.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.latticesoft.command.*;
+
+/**
+ * Resolves the command class names of the requests. Each class name is
+ * resolved once into the handle of its public no argument constructor,
+ * or into a shared instance for a {@link StatelessCommand}.
+ * <p>When the allowlist is not empty only the commands listed can be
+ * created. An entry ending with ".*" allows all the classes of a
+ * package. The classes not allowed are never loaded, and the classes
+ * which are not commands are never instantiated.</p>
+ */
+public class CommandRegistry {
+	private static final Log log = LogFactory.getLog(CommandRegistry.class);
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Command.class);
+	private static CommandRegistry instance = new CommandRegistry();
+	private Map entries = new ConcurrentHashMap();
+	private volatile Set allowed = Collections.EMPTY_SET;
+	private volatile String[] allowedPackages = new String[0];
+
+	public CommandRegistry() {
+	}
+
+	public static CommandRegistry getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Adds a command class name, or a package with ".*", to the allowlist.
+	 */
+	public synchronized void allow(String className) {
+		if (className == null || className.trim().length() == 0) {
+			return;
+		}
+		className = className.trim();
+		if (className.endsWith(".*")) {
+			String[] array = new String[this.allowedPackages.length + 1];
+			System.arraycopy(this.allowedPackages, 0, array, 0, this.allowedPackages.length);
+			array[array.length - 1] = className.substring(0, className.length() - 1);
+			this.allowedPackages = array;
+		} else {
+			Set set = new HashSet(this.allowed);
+			set.add(className);
+			this.allowed = set;
+		}
+	}
+
+	/**
+	 * Sets the allowlist from a comma separated list. The previous
+	 * allowlist and the commands resolved are cleared.
+	 */
+	public synchronized void setAllowedCommands(String list) {
+		this.allowed = Collections.EMPTY_SET;
+		this.allowedPackages = new String[0];
+		this.entries.clear();
+		if (list == null) {
+			return;
+		}
+		StringTokenizer st = new StringTokenizer(list, ",");
+		while (st.hasMoreTokens()) {
+			this.allow(st.nextToken());
+		}
+	}
+
+	/**
+	 * @return true if the allowlist is empty or contains the class
+	 */
+	public boolean isAllowed(String className) {
+		if (className == null) {
+			return false;
+		}
+		Set set = this.allowed;
+		String[] packages = this.allowedPackages;
+		if (set.isEmpty() && packages.length == 0) {
+			return true;
+		}
+		if (set.contains(className)) {
+			return true;
+		}
+		for (int i=0; i<packages.length; i++) {
+			if (className.startsWith(packages[i]) && className.indexOf('.', packages[i].length()) < 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Registers a shared instance of a command under the name given.
+	 * The name is added to the allowlist when it is in use.
+	 */
+	public void register(String name, Command command) {
+		Entry entry = new Entry();
+		entry.command = command;
+		this.entries.put(name, entry);
+		if (!this.allowed.isEmpty() || this.allowedPackages.length > 0) {
+			this.allow(name);
+		}
+	}
+
+	/**
+	 * Returns the command of the class name. A new instance is created
+	 * for each call unless the command is stateless.
+	 * @return null if the class is not allowed or not a command
+	 */
+	public Command getCommand(String className) {
+		if (!this.isAllowed(className)) {
+			if (log.isErrorEnabled()) {
+				log.error("Command not allowed: " + className);
+			}
+			return null;
+		}
+		Entry entry = (Entry)this.entries.get(className);
+		if (entry == null) {
+			entry = this.resolve(className);
+			if (entry == null) {
+				return null;
+			}
+			this.entries.put(className, entry);
+		}
+		if (entry.command != null) {
+			return entry.command;
+		}
+		try {
+			return (Command)entry.constructor.invokeExact();
+		} catch (Throwable t) {
+			if (log.isErrorEnabled()) {
+				log.error("Unable to create " + className, t);
+			}
+		}
+		return null;
+	}
+
+	private Entry resolve(String className) {
+		try {
+			ClassLoader cl = Thread.currentThread().getContextClassLoader();
+			if (cl == null) {
+				cl = CommandRegistry.class.getClassLoader();
+			}
+			Class c = Class.forName(className, false, cl);
+			if (!Command.class.isAssignableFrom(c)) {
+				if (log.isErrorEnabled()) {
+					log.error("Not a command: " + className);
+				}
+				return null;
+			}
+			MethodHandle mh = MethodHandles.publicLookup().findConstructor(c, MethodType.methodType(void.class));
+			Entry entry = new Entry();
+			entry.constructor = mh.asType(CONSTRUCTOR_TYPE);
+			if (StatelessCommand.class.isAssignableFrom(c)) {
+				entry.command = (Command)entry.constructor.invokeExact();
+			}
+			return entry;
+		} catch (Throwable t) {
+			if (log.isErrorEnabled()) {
+				log.error("Unable to resolve " + className, t);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Clears the commands resolved. The allowlist is kept.
+	 */
+	public void clear() {
+		this.entries.clear();
+	}
+
+	private static class Entry {
+		private MethodHandle constructor;
+		private Command command;
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright Jurong Port Pte Ltd
+ * Created on Oct 18, 2026
+ */
+package org.latticesoft.socket;
+
+import java.io.*;
+import java.nio.*;
+
+/**
+ * The codec using the java serialization. This is the fallback for
+ * the objects the {@link BinaryCodec} can not handle.
+ */
+public class SerializedCodec implements SocketCodec {
+	public static final int ID = 0;
+
+	public int getId() {
+		return ID;
+	}
+
+	public ByteBuffer encode(Object o, ByteBuffer buffer) throws IOException {
+		BufferOutputStream bos = new BufferOutputStream(buffer);
+		ObjectOutputStream oos = new ObjectOutputStream(bos);
+		oos.writeObject(o);
+		oos.flush();
+		return bos.buffer;
+	}
+
+	public Object decode(ByteBuffer buffer) throws IOException, ClassNotFoundException {
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(
+			buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining()));
+		try {
+			return ois.readObject();
+		} finally {
+			buffer.position(buffer.limit());
+			try { ois.close(); } catch (Exception e) {}
+		}
+	}
+
+	/**
+	 * Writes into the byte buffer, growing it from the pool as needed.
+	 */
+	private static class BufferOutputStream extends OutputStream {
+		private ByteBuffer buffer;
+
+		private BufferOutputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		public void write(int b) {
+			this.buffer = BufferPool.getInstance().ensure(this.buffer, 1);
+			this.buffer.put((byte)b);
+		}
+
+		public void write(byte[] b, int offset, int length) {
+			this.buffer = BufferPool.getInstance().ensure(this.buffer, length);
+			this.buffer.put(b, offset, length);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright Jurong Port Pte Ltd
+ * Created on Oct 18, 2026
+ */
+package org.latticesoft.socket;
+
+import java.io.*;
+import java.nio.*;
+
+/**
+ * The codec of the payload of the frames of a pipelined connection.
+ * Each payload starts with the id of the codec so the server decodes
+ * the request and encodes its response with the codec the client has
+ * chosen. The codecs are registered in {@link SocketFrame}.
+ */
+public interface SocketCodec {
+
+	/**
+	 * @return the id of the codec, between 0 and 127
+	 */
+	int getId();
+
+	/**
+	 * Encodes the object at the position of the buffer. When the buffer
+	 * is too small a larger one is acquired from the {@link BufferPool}.
+	 * The buffer given must not be released by the codec.
+	 * @return the buffer holding the bytes, positioned after the last byte
+	 */
+	ByteBuffer encode(Object o, ByteBuffer buffer) throws IOException;
+
+	/**
+	 * Decodes the object from the position up to the limit of the buffer.
+	 */
+	Object decode(ByteBuffer buffer) throws IOException, ClassNotFoundException;
+}
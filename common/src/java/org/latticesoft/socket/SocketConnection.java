@@ -0,0 +1,176 @@
+/*
+ * Copyright Jurong Port Pte Ltd
+ * Created on Oct 18, 2026
+ */
+package org.latticesoft.socket;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A persistent client connection to the {@link SocketServer}. The
+ * requests are framed with an id and written one after another without
+ * waiting for the responses. A reader thread completes the futures as
+ * the responses come back, in whatever order the server ends them.
+ */
+public class SocketConnection {
+	private static final Log log = LogFactory.getLog(SocketConnection.class);
+	private String host;
+	private int port;
+	private Socket socket;
+	private DataOutputStream out;
+	private AtomicLong sequence = new AtomicLong();
+	private Map pending = new ConcurrentHashMap();
+	private volatile boolean closed = false;
+	private SocketCodec codec = SocketFrame.getCodec(BinaryCodec.ID);
+
+	public SocketConnection(String host, int port) throws IOException {
+		this.host = host;
+		this.port = port;
+		this.socket = new Socket(host, port);
+		this.socket.setTcpNoDelay(true);
+		this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+		this.out.writeInt(SocketFrame.MAGIC);
+		this.out.flush();
+		Thread t = new Thread(new Runnable() {
+			public void run() {
+				SocketConnection.this.readResponses();
+			}
+		}, "SocketConnection-" + host + ":" + port);
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/** @return Returns the host. */
+	public String getHost() {
+		return (this.host);
+	}
+
+	/** @return Returns the port. */
+	public int getPort() {
+		return (this.port);
+	}
+
+	/** @return Returns the codec. */
+	public SocketCodec getCodec() {
+		return (this.codec);
+	}
+
+	/** @param codec The codec to encode the requests with. */
+	public void setCodec(SocketCodec codec) {
+		this.codec = codec;
+	}
+
+	/** @return true if the connection is closed. */
+	public boolean isClosed() {
+		return this.closed;
+	}
+
+	/** @return the number of requests waiting for a response. */
+	public int getPendingCount() {
+		return this.pending.size();
+	}
+
+	/**
+	 * Sends a command to be executed by the server.
+	 * @return the future of the {@link SocketResponse}
+	 */
+	public CompletableFuture send(String commandName, Map param) throws IOException {
+		SocketRequest request = new SocketRequest();
+		request.setCommandClassName(commandName);
+		request.setInstruction(SocketRequest.EXECUTE_COMMAND);
+		if (param != null) {
+			request.getMap().putAll(param);
+		}
+		return this.send(request);
+	}
+
+	/**
+	 * Sends the request without waiting for the response.
+	 * @return the future of the {@link SocketResponse}
+	 */
+	public CompletableFuture send(SocketRequest request) throws IOException {
+		if (this.closed) {
+			throw new IOException("Connection closed " + this);
+		}
+		long requestId = this.sequence.incrementAndGet();
+		CompletableFuture future = new CompletableFuture();
+		ByteBuffer frame = SocketFrame.encode(this.codec, requestId, request);
+		this.pending.put(Long.valueOf(requestId), future);
+		if (this.closed) {
+			// closed after the check above, close may have missed the future
+			this.pending.remove(Long.valueOf(requestId));
+			BufferPool.getInstance().release(frame);
+			throw new IOException("Connection closed " + this);
+		}
+		try {
+			synchronized (this.out) {
+				SocketFrame.write(this.out, frame);
+				this.out.flush();
+			}
+		} catch (IOException e) {
+			this.pending.remove(Long.valueOf(requestId));
+			this.close();
+			throw e;
+		} finally {
+			BufferPool.getInstance().release(frame);
+		}
+		return future;
+	}
+
+	private void readResponses() {
+		DataInputStream dis = null;
+		long[] requestId = new long[1];
+		try {
+			dis = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+			while (!this.closed) {
+				Object o = SocketFrame.read(dis, requestId);
+				CompletableFuture future = (CompletableFuture)this.pending.remove(Long.valueOf(requestId[0]));
+				if (future != null) {
+					future.complete(o);
+				}
+			}
+		} catch (Exception e) {
+			if (!this.closed && log.isErrorEnabled()) {
+				log.error("Exception in reading response", e);
+			}
+		} finally {
+			this.close();
+		}
+	}
+
+	/**
+	 * Closes the connection. The requests still waiting for the
+	 * responses are completed exceptionally.
+	 */
+	public void close() {
+		this.closed = true;
+		try { this.socket.close(); } catch (Exception e) {}
+		Iterator iter = this.pending.values().iterator();
+		while (iter.hasNext()) {
+			CompletableFuture future = (CompletableFuture)iter.next();
+			iter.remove();
+			future.completeExceptionally(new IOException("Connection closed " + this));
+		}
+	}
+
+	/**
+	 * Converts the class in a string form
+	 * @returns the class in a string form.
+	 */
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("[Connection|");
+		sb.append(this.host).append(":").append(this.port).append("|");
+		sb.append("pending:").append(this.pending.size());
+		sb.append("]");
+		return sb.toString();
+	}
+}
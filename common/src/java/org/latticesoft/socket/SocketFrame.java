@@ -0,0 +1,176 @@
+/*
+ * Copyright Jurong Port Pte Ltd
+ * Created on Oct 18, 2026
+ */
+package org.latticesoft.socket;
+
+import java.io.*;
+import java.nio.*;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The framing of the pipelined connections. A connection starts with
+ * the MAGIC number which can not be mistaken with the header of an
+ * object stream. Each request and response is then sent as a frame:
+ * <pre>
+ * [int length of the payload][long requestId][byte codec id][encoded object]
+ * </pre>
+ * The payload is encoded by the {@link SocketCodec} registered with the
+ * codec id. The {@link SerializedCodec} and the {@link BinaryCodec} are
+ * registered by default.
+ */
+public class SocketFrame {
+	private static final Log log = LogFactory.getLog(SocketFrame.class);
+	/** "LAT1" */
+	public static final int MAGIC = 0x4C415431;
+	public static final int HEADER_SIZE = 12;
+	public static final int MAX_PAYLOAD_SIZE = 64 * 1024 * 1024;
+	private static SocketCodec[] codecs = new SocketCodec[128];
+
+	static {
+		SocketFrame.register(new SerializedCodec());
+		SocketFrame.register(new BinaryCodec());
+	}
+
+	private SocketFrame() {}
+
+	/**
+	 * Registers a codec. A codec registered earlier with the same id is replaced.
+	 */
+	public static synchronized void register(SocketCodec codec) {
+		int id = codec.getId();
+		if (id < 0 || id >= codecs.length) {
+			throw new IllegalArgumentException("Invalid codec id " + id);
+		}
+		SocketCodec[] array = (SocketCodec[])codecs.clone();
+		array[id] = codec;
+		codecs = array;
+	}
+
+	/**
+	 * @return the codec registered with the id, null if there is none
+	 */
+	public static SocketCodec getCodec(int id) {
+		if (id < 0 || id >= codecs.length) {
+			return null;
+		}
+		return codecs[id];
+	}
+
+	/**
+	 * Checks if the stream starts with the magic number. The stream
+	 * is reset to the start afterwards.
+	 */
+	public static boolean isFramed(BufferedInputStream is) throws IOException {
+		is.mark(4);
+		byte[] b = new byte[4];
+		int read = 0;
+		int n = 0;
+		while (read < 4 && (n = is.read(b, read, 4 - read)) > 0) {
+			read += n;
+		}
+		is.reset();
+		return read == 4 && SocketFrame.isMagic(b, 0);
+	}
+
+	public static boolean isMagic(byte[] b, int offset) {
+		int i = ((b[offset] & 0xff) << 24) | ((b[offset + 1] & 0xff) << 16) |
+			((b[offset + 2] & 0xff) << 8) | (b[offset + 3] & 0xff);
+		return i == MAGIC;
+	}
+
+	/**
+	 * Encodes the object into a frame. The buffer is acquired from the
+	 * {@link BufferPool} and should be released once written. The buffer
+	 * acquired is released here when the codec has grown it or failed,
+	 * the codec never releasing it.
+	 * @return the frame flipped ready to be written
+	 */
+	public static ByteBuffer encode(SocketCodec codec, long requestId, Object o) throws IOException {
+		ByteBuffer acquired = BufferPool.getInstance().acquire();
+		ByteBuffer buffer = null;
+		try {
+			acquired.position(HEADER_SIZE);
+			acquired.put((byte)codec.getId());
+			buffer = codec.encode(o, acquired);
+		} finally {
+			if (buffer != acquired) {
+				BufferPool.getInstance().release(acquired);
+			}
+		}
+		buffer.putInt(0, buffer.position() - HEADER_SIZE);
+		buffer.putLong(4, requestId);
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Encodes a response into a frame. When the result can not be
+	 * encoded, an error response is sent instead.
+	 */
+	public static ByteBuffer encode(SocketResponse response) throws IOException {
+		SocketCodec codec = response.getCodec();
+		if (codec == null) {
+			codec = SocketFrame.getCodec(SerializedCodec.ID);
+		}
+		try {
+			return SocketFrame.encode(codec, response.getRequestId(), response);
+		} catch (NotSerializableException e) {
+			if (log.isErrorEnabled()) {
+				log.error("Result not serializable " + response, e);
+			}
+			response.setResult(null);
+			response.setStatus(SocketResponse.STATUS_ERROR);
+			response.setMessage(e.toString());
+			return SocketFrame.encode(codec, response.getRequestId(), response);
+		}
+	}
+
+	/**
+	 * Decodes the payload of a frame. A request decoded remembers its
+	 * codec so that the response is encoded the same way.
+	 * @param payload the payload from the position up to the limit
+	 */
+	public static Object decode(ByteBuffer payload) throws IOException, ClassNotFoundException {
+		int id = payload.get();
+		SocketCodec codec = SocketFrame.getCodec(id);
+		if (codec == null) {
+			throw new StreamCorruptedException("Unknown codec " + id);
+		}
+		Object o = codec.decode(payload);
+		if (o instanceof SocketRequest) {
+			((SocketRequest)o).setCodec(codec);
+		}
+		return o;
+	}
+
+	/**
+	 * Writes a frame into the stream. The stream is not flushed.
+	 */
+	public static void write(DataOutputStream dos, ByteBuffer frame) throws IOException {
+		dos.write(frame.array(), frame.arrayOffset(), frame.limit());
+	}
+
+	/**
+	 * Reads a frame from the stream.
+	 * @param requestId holder of the requestId read
+	 * @return the object in the frame
+	 */
+	public static Object read(DataInputStream dis, long[] requestId) throws IOException, ClassNotFoundException {
+		int length = dis.readInt();
+		if (length <= 0 || length > MAX_PAYLOAD_SIZE) {
+			throw new StreamCorruptedException("Invalid frame length " + length);
+		}
+		requestId[0] = dis.readLong();
+		ByteBuffer buffer = BufferPool.getInstance().acquire(length);
+		try {
+			dis.readFully(buffer.array(), buffer.arrayOffset(), length);
+			buffer.limit(length);
+			return SocketFrame.decode(buffer);
+		} finally {
+			BufferPool.getInstance().release(buffer);
+		}
+	}
+}
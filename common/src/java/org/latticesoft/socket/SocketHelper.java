@@ -54,22 +54,48 @@ public class SocketHelper implements Runnable {
 	public void run() {
 		Socket socket = request.getSocket();
 		if (this.request == null) { return; }
+		SocketResponse response = new SocketResponse(this.request);
 		try {
 			Command cmd = this.request.getCommandClass();
 			if (cmd != null) {
-				cmd.execute(this.request.getMap());
+				response.setResult(cmd.execute(this.request.getMap()));
 			}
 			
 		} catch (Exception e) {
 			if (log.isErrorEnabled()) {
 				log.error("Exception", e);
 			}
+			response.setStatus(SocketResponse.STATUS_ERROR);
+			response.setMessage(e.toString());
 		} finally {
+			if (this.request.getSession() != null) {
+				this.request.getSession().send(response);
+			}
 			try { socket.close(); } catch (Exception e) {}
 			request.setSocket(null);
 		}
 	}
 	
+	/**
+	 * Tells the client the request is not executed. The socket kept
+	 * open in the synchronous mode is closed.
+	 * @param status the status of the response
+	 * @param message the reason of the rejection
+	 * @param retryAfter the milliseconds to wait before retrying
+	 */
+	public void reject(int status, String message, long retryAfter) {
+		if (this.request == null) { return; }
+		if (this.request.getSession() != null) {
+			SocketResponse response = new SocketResponse(this.request);
+			response.setStatus(status);
+			response.setMessage(message);
+			response.setRetryAfter(retryAfter);
+			this.request.getSession().send(response);
+		}
+		try { this.request.getSocket().close(); } catch (Exception e) {}
+		this.request.setSocket(null);
+	}
+
 	/**
 	 * Converts the class in a string form
 	 * @returns the class in a string form.
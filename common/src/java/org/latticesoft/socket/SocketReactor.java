@@ -0,0 +1,428 @@
+/*
+ * Copyright Jurong Port Pte Ltd
+ * Created on Oct 18, 2026
+ */
+package org.latticesoft.socket;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The reactor owns a selector and reads the requests from the
+ * channels handed over by the acceptor of the {@link SocketServer}.
+ * A pipelined connection stays registered, its frames are dispatched to
+ * the server's thread pool as they are read and its responses are
+ * written back by the reactor. A legacy connection sending a serialized
+ * request without the magic number is deregistered and read with a
+ * blocking stream in the reader pool of the server, at most
+ * MAX_PAYLOAD_SIZE bytes. A slow client therefore only occupies a registration in the
+ * selector and never blocks the acceptor or the other clients. When the
+ * client of a pipelined connection ends its stream, the reactor stops
+ * reading and closes the channel once the responses of the requests
+ * still running are written.
+ */
+public class SocketReactor implements Runnable {
+	private static final Log log = LogFactory.getLog(SocketReactor.class);
+	private SocketServer server;
+	private Selector selector;
+	private Queue pending = new ConcurrentLinkedQueue();
+	private Queue writers = new ConcurrentLinkedQueue();
+	private Queue legacy = new ConcurrentLinkedQueue();
+	private volatile boolean running = true;
+	private int bufferSize = 4096;
+
+	public SocketReactor(SocketServer server) throws IOException {
+		this.server = server;
+		this.selector = Selector.open();
+	}
+
+	/** @return Returns the bufferSize. */
+	public int getBufferSize() {
+		return (this.bufferSize);
+	}
+
+	/** @param bufferSize The bufferSize to set. */
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Hands over a newly accepted channel to the reactor. The channel
+	 * is registered in the reactor thread on the next wake up.
+	 * @param channel the non-blocking channel accepted
+	 */
+	public void register(SocketChannel channel) {
+		this.pending.add(channel);
+		this.selector.wakeup();
+	}
+
+	/**
+	 * Stops the reactor. All the channels still registered are closed.
+	 */
+	public void stop() {
+		this.running = false;
+		this.selector.wakeup();
+	}
+
+	public void run() {
+		ByteBuffer buffer = ByteBuffer.allocate(this.bufferSize);
+		while (this.running) {
+			try {
+				this.selector.select();
+				this.readLegacy();
+				this.registerPending();
+				this.registerWriters();
+				Iterator iter = this.selector.selectedKeys().iterator();
+				while (iter.hasNext()) {
+					SelectionKey key = (SelectionKey)iter.next();
+					iter.remove();
+					if (key.isValid() && key.isWritable()) {
+						this.write(key);
+					}
+					if (key.isValid() && key.isReadable()) {
+						this.read(key, buffer);
+					}
+				}
+			} catch (Exception e) {
+				if (log.isErrorEnabled()) {
+					log.error("Exception in reactor", e);
+				}
+			}
+		}
+		Iterator iter = this.selector.keys().iterator();
+		while (iter.hasNext()) {
+			SelectionKey key = (SelectionKey)iter.next();
+			try { key.channel().close(); } catch (Exception e) {}
+		}
+		while (!this.pending.isEmpty()) {
+			try { ((SocketChannel)this.pending.poll()).close(); } catch (Exception e) {}
+		}
+		while (!this.legacy.isEmpty()) {
+			try { ((LegacyReader)this.legacy.poll()).channel.close(); } catch (Exception e) {}
+		}
+		try { this.selector.close(); } catch (Exception e) {}
+		if (log.isDebugEnabled()) {
+			log.debug("Reactor ended");
+		}
+	}
+
+	private void registerPending() {
+		SocketChannel channel = null;
+		while ((channel = (SocketChannel)this.pending.poll()) != null) {
+			try {
+				ChannelSession session = new ChannelSession();
+				session.key = channel.register(this.selector, SelectionKey.OP_READ, session);
+			} catch (Exception e) {
+				if (log.isErrorEnabled()) {
+					log.error("Unable to register " + channel, e);
+				}
+				try { channel.close(); } catch (Exception ex) {}
+			}
+		}
+	}
+
+	/**
+	 * Adds the write interest of the sessions with responses queued.
+	 */
+	private void registerWriters() {
+		ChannelSession session = null;
+		while ((session = (ChannelSession)this.writers.poll()) != null) {
+			if (session.key.isValid()) {
+				session.key.interestOps(session.key.interestOps() | SelectionKey.OP_WRITE);
+			}
+		}
+	}
+
+	/**
+	 * Hands over the legacy connections deregistered by the previous
+	 * select to the reader pool. A channel can only be made blocking
+	 * once its cancelled key is gone from the selector.
+	 */
+	private void readLegacy() {
+		LegacyReader reader = null;
+		while ((reader = (LegacyReader)this.legacy.poll()) != null) {
+			try {
+				reader.channel.configureBlocking(true);
+				this.server.getReaderPool().execute(reader);
+			} catch (Exception e) {
+				if (log.isErrorEnabled()) {
+					log.error("Unable to read the legacy request of " + reader.channel, e);
+				}
+				try { reader.channel.close(); } catch (Exception ex) {}
+			}
+		}
+	}
+
+	/**
+	 * Reads what one read of the channel returns. A pipelined
+	 * connection dispatches every complete frame read. A legacy
+	 * connection is handed over to the reader pool once known.
+	 */
+	private void read(SelectionKey key, ByteBuffer buffer) {
+		SocketChannel channel = (SocketChannel)key.channel();
+		ChannelSession session = (ChannelSession)key.attachment();
+		boolean done = false;
+		try {
+			buffer.clear();
+			int n = channel.read(buffer);
+			if (n > 0) {
+				buffer.flip();
+				session.append(buffer);
+			}
+			if (session.framed == null && session.in.position() >= 4) {
+				session.framed = Boolean.valueOf(SocketFrame.isMagic(session.in.array(), 0));
+				if (session.framed.booleanValue()) {
+					session.consume(4);
+				}
+			}
+			if (session.framed != null && session.framed.booleanValue()) {
+				this.readFrames(session);
+				if (n < 0) {
+					done = true;
+					session.eof = true;
+					key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+					this.closeIfDrained(key);
+				}
+				return;
+			}
+			if (session.framed != null) {
+				done = true;
+				key.cancel();
+				byte[] head = new byte[session.in.position()];
+				System.arraycopy(session.in.array(), 0, head, 0, head.length);
+				this.legacy.add(new LegacyReader(channel, head));
+				this.selector.wakeup();
+			} else if (n < 0) {
+				if (session.in.position() > 0 && log.isErrorEnabled()) {
+					log.error("Incomplete request from " + channel);
+				}
+				done = true;
+				key.cancel();
+				channel.close();
+			}
+		} catch (Exception e) {
+			if (log.isErrorEnabled()) {
+				log.error("Exception in reading request", e);
+			}
+			key.cancel();
+			if (!done) {
+				try { channel.close(); } catch (Exception ex) {}
+			}
+		}
+	}
+
+	/**
+	 * Dispatches all the complete frames read so far.
+	 */
+	private void readFrames(ChannelSession session) throws IOException, ClassNotFoundException {
+		ByteBuffer in = session.in;
+		int offset = 0;
+		while (in.position() - offset >= SocketFrame.HEADER_SIZE) {
+			int length = in.getInt(offset);
+			if (length <= 0 || length > SocketFrame.MAX_PAYLOAD_SIZE) {
+				throw new StreamCorruptedException("Invalid frame length " + length);
+			}
+			if (in.position() - offset < SocketFrame.HEADER_SIZE + length) {
+				break;
+			}
+			long requestId = in.getLong(offset + 4);
+			Object o = SocketFrame.decode(ByteBuffer.wrap(in.array(), offset + SocketFrame.HEADER_SIZE, length));
+			offset += SocketFrame.HEADER_SIZE + length;
+			if (o instanceof SocketRequest) {
+				SocketRequest request = (SocketRequest)o;
+				request.setRequestId(requestId);
+				request.setSession(session);
+				if (request.isAnswered()) {
+					session.pendingCount.incrementAndGet();
+				}
+				this.server.dispatch(request);
+			}
+		}
+		session.consume(offset);
+	}
+
+	/**
+	 * Writes the queued responses until the channel can not take more.
+	 */
+	private void write(SelectionKey key) {
+		SocketChannel channel = (SocketChannel)key.channel();
+		ChannelSession session = (ChannelSession)key.attachment();
+		try {
+			ByteBuffer buffer = null;
+			while ((buffer = (ByteBuffer)session.out.peek()) != null) {
+				channel.write(buffer);
+				if (buffer.hasRemaining()) {
+					return;
+				}
+				BufferPool.getInstance().release((ByteBuffer)session.out.poll());
+			}
+			key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+			this.closeIfDrained(key);
+		} catch (Exception e) {
+			if (log.isErrorEnabled()) {
+				log.error("Exception in writing response", e);
+			}
+			key.cancel();
+			try { channel.close(); } catch (Exception ex) {}
+		}
+	}
+
+	/**
+	 * Closes the channel of a session whose client has ended the stream
+	 * once all the responses are written.
+	 */
+	private void closeIfDrained(SelectionKey key) throws IOException {
+		ChannelSession session = (ChannelSession)key.attachment();
+		if (session.eof && session.out.isEmpty() && session.pendingCount.get() == 0) {
+			key.cancel();
+			key.channel().close();
+		}
+	}
+
+	private void dispatch(SocketChannel channel, Object o) {
+		if (o instanceof SocketRequest) {
+			SocketRequest request = (SocketRequest)o;
+			if (this.server.isSynchronous()) {
+				request.setSocket(channel.socket());
+			} else {
+				try { channel.close(); } catch (Exception e) {}
+			}
+			this.server.dispatch(request);
+		} else {
+			try { channel.close(); } catch (Exception e) {}
+		}
+	}
+
+	/**
+	 * Reads the serialized request of a legacy connection with a
+	 * blocking stream, the bytes already read by the reactor first.
+	 */
+	private class LegacyReader implements Runnable {
+		private SocketChannel channel;
+		private byte[] head;
+
+		private LegacyReader(SocketChannel channel, byte[] head) {
+			this.channel = channel;
+			this.head = head;
+		}
+
+		public void run() {
+			try {
+				InputStream is = new SequenceInputStream(new ByteArrayInputStream(this.head),
+					new BufferedInputStream(this.channel.socket().getInputStream()));
+				ObjectInputStream ois = new ObjectInputStream(new LimitedInputStream(is, SocketFrame.MAX_PAYLOAD_SIZE));
+				dispatch(this.channel, ois.readObject());
+			} catch (Exception e) {
+				if (log.isErrorEnabled()) {
+					log.error("Exception in reading request from " + this.channel, e);
+				}
+				try { this.channel.close(); } catch (Exception ex) {}
+			}
+		}
+	}
+
+	/**
+	 * Fails the reads past the limit.
+	 */
+	private static class LimitedInputStream extends FilterInputStream {
+		private long remaining;
+
+		private LimitedInputStream(InputStream in, long limit) {
+			super(in);
+			this.remaining = limit;
+		}
+
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				this.count(1);
+			}
+			return b;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				this.count(n);
+			}
+			return n;
+		}
+
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			this.count(skipped);
+			return skipped;
+		}
+
+		private void count(long n) throws StreamCorruptedException {
+			this.remaining -= n;
+			if (this.remaining < 0) {
+				throw new StreamCorruptedException("Request larger than " + SocketFrame.MAX_PAYLOAD_SIZE + " bytes");
+			}
+		}
+	}
+
+	/**
+	 * The state of a channel registered in the reactor. The responses
+	 * of a pipelined connection are queued by the threads of the pool
+	 * and written by the reactor when the channel is writable.
+	 */
+	private class ChannelSession implements SocketSession {
+		private SelectionKey key;
+		private ByteBuffer in = ByteBuffer.allocate(bufferSize);
+		private Queue out = new ConcurrentLinkedQueue();
+		private Boolean framed;
+		private AtomicInteger pendingCount = new AtomicInteger();
+		private boolean eof = false;
+
+		private void append(ByteBuffer buffer) throws IOException {
+			// at most one partial frame is kept between the reads
+			if (this.in.position() + buffer.remaining() > SocketFrame.HEADER_SIZE + SocketFrame.MAX_PAYLOAD_SIZE + bufferSize) {
+				throw new StreamCorruptedException("Request larger than " + SocketFrame.MAX_PAYLOAD_SIZE + " bytes");
+			}
+			if (this.in.remaining() < buffer.remaining()) {
+				int size = Math.max(this.in.capacity() * 2, this.in.position() + buffer.remaining());
+				ByteBuffer grown = ByteBuffer.allocate(size);
+				this.in.flip();
+				grown.put(this.in);
+				this.in = grown;
+			}
+			this.in.put(buffer);
+		}
+
+		private void consume(int count) {
+			if (count <= 0) {
+				return;
+			}
+			this.in.flip();
+			this.in.position(count);
+			this.in.compact();
+		}
+
+		public void send(SocketResponse response) {
+			if (!this.key.isValid()) {
+				this.pendingCount.decrementAndGet();
+				return;
+			}
+			try {
+				this.out.add(SocketFrame.encode(response));
+			} catch (Exception e) {
+				if (log.isErrorEnabled()) {
+					log.error("Unable to send " + response, e);
+				}
+			} finally {
+				// queued before the count drops so the reactor does not close too early
+				this.pendingCount.decrementAndGet();
+				writers.add(this);
+				selector.wakeup();
+			}
+		}
+	}
+}
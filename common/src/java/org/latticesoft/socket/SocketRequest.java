@@ -20,11 +20,16 @@ public class SocketRequest implements Serializable {
 	private static final Log log = LogFactory.getLog(SocketRequest.class);
 	public static final String END_SERVER = "END";
 	public static final String EXECUTE_COMMAND = "CMD";
+	public static final String STATISTICS = "STAT";
+	public static final String PRIORITY = "priority";
 	
 	private Map map = new HashMap();
 	private String instruction;
 	private String commandClassName;
 	private transient Socket socket;
+	private transient SocketSession session;
+	private transient long requestId;
+	private transient SocketCodec codec;
 	private String id;
 	
 	
@@ -76,6 +81,36 @@ public class SocketRequest implements Serializable {
 		this.socket = socket;
 	}
 	
+	/** @return Returns the session of a pipelined request. */
+	public SocketSession getSession() {
+		return (this.session);
+	}
+
+	/** @param session The session to set. */
+	public void setSession(SocketSession session) {
+		this.session = session;
+	}
+
+	/** @return Returns the requestId given by the client in the frame. */
+	public long getRequestId() {
+		return (this.requestId);
+	}
+
+	/** @param requestId The requestId to set. */
+	public void setRequestId(long requestId) {
+		this.requestId = requestId;
+	}
+	
+	/** @return Returns the codec the request was decoded with. */
+	public SocketCodec getCodec() {
+		return (this.codec);
+	}
+
+	/** @param codec The codec to set. */
+	public void setCodec(SocketCodec codec) {
+		this.codec = codec;
+	}
+
 	public Object getAttribute(String key) {
 		if (key != null && this.map.containsKey(key)) {
 			return this.map.get(key);
@@ -92,13 +127,14 @@ public class SocketRequest implements Serializable {
 		return this.map;
 	}
 
+	/**
+	 * Returns the command to execute.
+	 * @see CommandRegistry#getCommand(String)
+	 */
 	public Command getCommandClass() {
 		Command cmd = null;
 		if (this.commandClassName != null) {
-			Object o = ClassUtil.newInstance(this.commandClassName);
-			if (o instanceof Command) {
-				cmd = (Command)o;
-			}
+			cmd = CommandRegistry.getInstance().getCommand(this.commandClassName);
 		}
 		return cmd;
 	}
@@ -111,6 +147,28 @@ public class SocketRequest implements Serializable {
 		return false;
 	}
 	
+	public boolean isStatistics() {
+		if (this.instruction != null && 
+			SocketRequest.STATISTICS.equalsIgnoreCase(this.instruction)) {
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the priority of the request. The requests with a priority
+	 * lower than the shedPriority of the server are the first to be
+	 * shed under load.
+	 */
+	public int getPriority() {
+		return NumeralUtil.parseInt(this.getAttribute(PRIORITY));
+	}
+
+	/** @param priority The priority to set. */
+	public void setPriority(int priority) {
+		this.setAttribute(PRIORITY, Integer.valueOf(priority));
+	}
+
 	public boolean isExecuteCommand() {
 		if (this.instruction != null && 
 			SocketRequest.EXECUTE_COMMAND.equalsIgnoreCase(this.instruction)) {
@@ -118,6 +176,14 @@ public class SocketRequest implements Serializable {
 		}
 		return false;
 	}
+
+	/**
+	 * @return true if the server sends a response to the session of
+	 * the request, whether the command is run or rejected
+	 */
+	public boolean isAnswered() {
+		return this.isExecuteCommand() || this.isStatistics();
+	}
 	
 	/**
 	 * Converts the class in a string form
@@ -0,0 +1,129 @@
+/*
+ * Copyright Jurong Port Pte Ltd
+ * Created on Oct 18, 2026
+ */
+package org.latticesoft.socket;
+
+import java.io.*;
+
+/**
+ * The response sent back to the client of a pipelined connection.
+ * The requestId is the one given by the client in the frame of the
+ * request so the responses can be sent back in any order.
+ */
+public class SocketResponse implements Serializable {
+	public static final long serialVersionUID = 20261018100000L;
+	public static final int STATUS_OK = 0;
+	public static final int STATUS_ERROR = 1;
+	public static final int STATUS_REJECTED = 2;
+	public static final int STATUS_RETRY = 3;
+
+	private long requestId;
+	private String id;
+	private int status = STATUS_OK;
+	private Object result;
+	private String message;
+	private long retryAfter;
+	private transient SocketCodec codec;
+
+	public SocketResponse() {
+	}
+
+	public SocketResponse(SocketRequest request) {
+		this.requestId = request.getRequestId();
+		this.id = request.getId();
+		this.codec = request.getCodec();
+	}
+
+	/** @return Returns the requestId. */
+	public long getRequestId() {
+		return (this.requestId);
+	}
+
+	/** @param requestId The requestId to set. */
+	public void setRequestId(long requestId) {
+		this.requestId = requestId;
+	}
+
+	/** @return Returns the id. */
+	public String getId() {
+		return (this.id);
+	}
+
+	/** @param id The id to set. */
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	/** @return Returns the status. */
+	public int getStatus() {
+		return (this.status);
+	}
+
+	/** @param status The status to set. */
+	public void setStatus(int status) {
+		this.status = status;
+	}
+
+	/** @return Returns the result. */
+	public Object getResult() {
+		return (this.result);
+	}
+
+	/** @param result The result to set. */
+	public void setResult(Object result) {
+		this.result = result;
+	}
+
+	/** @return Returns the message. */
+	public String getMessage() {
+		return (this.message);
+	}
+
+	/** @param message The message to set. */
+	public void setMessage(String message) {
+		this.message = message;
+	}
+
+	/** @return Returns the milliseconds to wait before retrying a request rejected. */
+	public long getRetryAfter() {
+		return (this.retryAfter);
+	}
+
+	/** @param retryAfter The retryAfter to set. */
+	public void setRetryAfter(long retryAfter) {
+		this.retryAfter = retryAfter;
+	}
+
+	/** @return Returns the codec to encode the response with. */
+	public SocketCodec getCodec() {
+		return (this.codec);
+	}
+
+	/** @param codec The codec to set. */
+	public void setCodec(SocketCodec codec) {
+		this.codec = codec;
+	}
+
+	public boolean isOk() {
+		return this.status == STATUS_OK;
+	}
+
+	public boolean isRetry() {
+		return this.status == STATUS_RETRY;
+	}
+
+	/**
+	 * Converts the class in a string form
+	 * @returns the class in a string form.
+	 */
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("[Response|");
+		sb.append("requestId:").append(this.getRequestId()).append("|");
+		sb.append("id:").append(this.getId()).append("|");
+		sb.append("status:").append(this.getStatus());
+		sb.append("]");
+		return sb.toString();
+	}
+}
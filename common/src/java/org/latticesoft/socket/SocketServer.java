@@ -6,7 +6,10 @@ package org.latticesoft.socket;
 
 import java.io.*;
 import java.net.*;
+import java.nio.channels.*;
+import java.util.*;
 import java.util.concurrent.*; 
+import java.util.concurrent.atomic.*;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -20,6 +23,28 @@ public class SocketServer implements Runnable, RejectedExecutionHandler {
 	private static final Log log = LogFactory.getLog(SocketServer.class);
 	public static final int MODE_SYNCHRONOUS = 1;
 	public static final int MODE_ASYNCHRONOUS = 2;
+	/**
+	 * Runs each command in its own virtual thread with the socket kept
+	 * as in the synchronous mode. The maxConnSize caps the commands
+	 * running at the same time and the maxQueueSize the ones waiting.
+	 */
+	public static final int MODE_VIRTUAL_THREADS = 3;
+	/** Rejects the request, the client of a pipelined request is told so */
+	public static final int OVERLOAD_REJECT = 1;
+	/**
+	 * Runs the request in the thread which has read it. In the
+	 * nonBlocking mode that thread is a reactor serving many connections,
+	 * so the request is rejected instead.
+	 */
+	public static final int OVERLOAD_CALLER_RUNS = 2;
+	/**
+	 * Waits up to overloadWait milliseconds for the space in the queue.
+	 * In the nonBlocking mode the request is rejected instead of blocking
+	 * the reactor.
+	 */
+	public static final int OVERLOAD_WAIT = 3;
+	/** Tells the client of a pipelined request to retry after retryAfter milliseconds */
+	public static final int OVERLOAD_RETRY = 4;
 	private int port = 8888;
 	private int initialConnSize = 1;
 	private int maxConnSize = 2;
@@ -27,7 +52,28 @@ public class SocketServer implements Runnable, RejectedExecutionHandler {
 	private int mode = MODE_SYNCHRONOUS;
 	private ThreadPoolExecutor threadPool;
 	private BlockingQueue queue; 
+	private ExecutorService virtualExecutor;
+	private ThreadPoolExecutor readerPool;
+	private Semaphore permits;
+	private Semaphore slots;
+	private Semaphore sessions;
+	private AtomicLong virtualCompletedCount = new AtomicLong();
 	private PropertyMap pm = PropertyMap.getInstance();
+	private boolean nonBlocking = false;
+	private int reactorSize = 2;
+	private SocketReactor[] reactors;
+	private Selector acceptSelector;
+	private ServerSocket listener;
+	private volatile boolean running = false;
+	private int overloadPolicy = OVERLOAD_REJECT;
+	private long overloadWait = 1000;
+	private long retryAfter = 1000;
+	private int shedQueueSize = 0;
+	private int shedPriority = 0;
+	private AtomicLong rejectedCount = new AtomicLong();
+	private AtomicLong shedCount = new AtomicLong();
+	private AtomicLong callerRunsCount = new AtomicLong();
+	private AtomicLong waitedCount = new AtomicLong();
 	
 	public SocketServer() {
 	}
@@ -86,9 +132,160 @@ public class SocketServer implements Runnable, RejectedExecutionHandler {
 		this.mode = mode;
 	}
 
+	/**
+	 * @return true if the socket of the request is kept open until the
+	 * command ends.
+	 */
+	public boolean isSynchronous() {
+		return this.mode == MODE_SYNCHRONOUS || this.mode == MODE_VIRTUAL_THREADS;
+	}
+
+	/** @return Returns the nonBlocking. */
+	public boolean isNonBlocking() {
+		return (this.nonBlocking);
+	}
+
+	/** @param nonBlocking The nonBlocking to set. */
+	public void setNonBlocking(boolean nonBlocking) {
+		this.nonBlocking = nonBlocking;
+	}
+
+	/** @return Returns the reactorSize. */
+	public int getReactorSize() {
+		return (this.reactorSize);
+	}
+
+	/** @param reactorSize The reactorSize to set. */
+	public void setReactorSize(int reactorSize) {
+		this.reactorSize = reactorSize;
+	}
+
+	/** @return Returns the overloadPolicy. */
+	public int getOverloadPolicy() {
+		return (this.overloadPolicy);
+	}
+
+	/** @param overloadPolicy The overloadPolicy to set. */
+	public void setOverloadPolicy(int overloadPolicy) {
+		this.overloadPolicy = overloadPolicy;
+	}
+
+	/** @return Returns the overloadWait in milliseconds. */
+	public long getOverloadWait() {
+		return (this.overloadWait);
+	}
+
+	/** @param overloadWait The overloadWait to set. */
+	public void setOverloadWait(long overloadWait) {
+		this.overloadWait = overloadWait;
+	}
+
+	/** @return Returns the retryAfter in milliseconds. */
+	public long getRetryAfter() {
+		return (this.retryAfter);
+	}
+
+	/** @param retryAfter The retryAfter to set. */
+	public void setRetryAfter(long retryAfter) {
+		this.retryAfter = retryAfter;
+	}
+
+	/** @return Returns the queue size from which the low priority requests are shed. */
+	public int getShedQueueSize() {
+		return (this.shedQueueSize);
+	}
+
+	/** @param shedQueueSize The shedQueueSize to set, 0 to turn off the shedding. */
+	public void setShedQueueSize(int shedQueueSize) {
+		this.shedQueueSize = shedQueueSize;
+	}
+
+	/** @return Returns the priority below which the requests are shed. */
+	public int getShedPriority() {
+		return (this.shedPriority);
+	}
+
+	/** @param shedPriority The shedPriority to set. */
+	public void setShedPriority(int shedPriority) {
+		this.shedPriority = shedPriority;
+	}
+
+	/** @return the number of requests waiting in the queue. */
+	public int getQueueDepth() {
+		if (this.virtualExecutor != null) {
+			int admitted = this.maxConnSize + this.maxQueueSize - this.slots.availablePermits();
+			return Math.max(0, admitted - this.getActiveCount());
+		}
+		return this.queue == null ? 0 : this.queue.size();
+	}
+
+	/** @return the number of threads executing the commands. */
+	public int getActiveCount() {
+		if (this.virtualExecutor != null) {
+			return this.maxConnSize - this.permits.availablePermits();
+		}
+		return this.threadPool == null ? 0 : this.threadPool.getActiveCount();
+	}
+
+	/** @return the number of requests rejected, shed included. */
+	public long getRejectedCount() {
+		return this.rejectedCount.get();
+	}
+
+	/** @return the number of requests shed because of their priority. */
+	public long getShedCount() {
+		return this.shedCount.get();
+	}
+
+	/** @return the number of requests run by the thread which read them. */
+	public long getCallerRunsCount() {
+		return this.callerRunsCount.get();
+	}
+
+	/** @return the number of requests queued after waiting. */
+	public long getWaitedCount() {
+		return this.waitedCount.get();
+	}
+
+	/**
+	 * Returns the pool reading the legacy requests of the reactors with
+	 * maxConnSize threads and maxQueueSize reads waiting. A read is
+	 * rejected with a RejectedExecutionException when the queue is full.
+	 */
+	ExecutorService getReaderPool() {
+		return this.readerPool;
+	}
+
+	/**
+	 * Returns the load of the server. This is also the result of the
+	 * {@link SocketRequest#STATISTICS} request.
+	 */
+	public Map getStatistics() {
+		Map map = new HashMap();
+		map.put("queueDepth", Integer.valueOf(this.getQueueDepth()));
+		map.put("maxQueueSize", Integer.valueOf(this.maxQueueSize));
+		map.put("activeCount", Integer.valueOf(this.getActiveCount()));
+		if (this.virtualExecutor != null) {
+			map.put("poolSize", Integer.valueOf(this.maxConnSize));
+			map.put("completedCount", Long.valueOf(this.virtualCompletedCount.get()));
+		} else {
+			map.put("poolSize", Integer.valueOf(this.threadPool == null ? 0 : this.threadPool.getPoolSize()));
+			map.put("completedCount", Long.valueOf(this.threadPool == null ? 0 : this.threadPool.getCompletedTaskCount()));
+		}
+		map.put("rejectedCount", Long.valueOf(this.rejectedCount.get()));
+		map.put("shedCount", Long.valueOf(this.shedCount.get()));
+		map.put("callerRunsCount", Long.valueOf(this.callerRunsCount.get()));
+		map.put("waitedCount", Long.valueOf(this.waitedCount.get()));
+		return map;
+	}
+
 	public void run() {
 		if (this.init()) {
-			this.listen();
+			if (this.nonBlocking) {
+				this.listenNonBlocking();
+			} else {
+				this.listen();
+			}
 		}
 	}
 
@@ -101,13 +298,36 @@ public class SocketServer implements Runnable, RejectedExecutionHandler {
 			this.maxQueueSize = pm.getInt("maxQueueSize");
 			this.port = pm.getInt("port");
 			this.mode = pm.getInt("mode");
+			this.nonBlocking = pm.getBoolean("nonBlocking");
+			if (pm.getInt("reactorSize") > 0) {
+				this.reactorSize = pm.getInt("reactorSize");
+			}
+			if (pm.getInt("overloadPolicy") > 0) {
+				this.overloadPolicy = pm.getInt("overloadPolicy");
+			}
+			if (pm.getLong("overloadWait") > 0) {
+				this.overloadWait = pm.getLong("overloadWait");
+			}
+			if (pm.getLong("retryAfter") > 0) {
+				this.retryAfter = pm.getLong("retryAfter");
+			}
+			this.shedQueueSize = pm.getInt("shedQueueSize");
+			this.shedPriority = pm.getInt("shedPriority");
+			if (pm.getString("allowedCommands") != null) {
+				CommandRegistry.getInstance().setAllowedCommands(pm.getString("allowedCommands"));
+			}
 			
 			if (log.isInfoEnabled()) {
 				log.info("Mode: " + this.mode);
+				log.info("NonBlocking: " + this.nonBlocking);
+				log.info("ReactorSize: " + this.reactorSize);
 				log.info("Port: " + this.port);
 				log.info("MaxConnSize: " + this.maxConnSize);
 				log.info("InitialConnSize: " + this.initialConnSize);
 				log.info("MaxQueueSize: " + this.maxQueueSize);
+				log.info("OverloadPolicy: " + this.overloadPolicy);
+				log.info("ShedQueueSize: " + this.shedQueueSize);
+				log.info("ShedPriority: " + this.shedPriority);
 			}
 			if (this.port > 0 && this.maxConnSize > 0) {
 				b = true;
@@ -115,25 +335,43 @@ public class SocketServer implements Runnable, RejectedExecutionHandler {
 		} else {
 			b = true;
 		}
-		queue = new ArrayBlockingQueue(maxQueueSize);	
-		threadPool = new ThreadPoolExecutor(this.initialConnSize, this.maxConnSize, 10, TimeUnit.SECONDS, queue, this);
+		if (this.mode == MODE_VIRTUAL_THREADS) {
+			this.virtualExecutor = this.newVirtualThreadExecutor();
+			this.permits = new Semaphore(this.maxConnSize);
+			this.slots = new Semaphore(this.maxConnSize + this.maxQueueSize);
+		} else {
+			queue = new ArrayBlockingQueue(maxQueueSize);	
+			threadPool = new ThreadPoolExecutor(this.initialConnSize, this.maxConnSize, 10, TimeUnit.SECONDS, queue, this);
+		}
+		this.sessions = new Semaphore(this.maxConnSize);
+		if (this.nonBlocking) {
+			this.readerPool = new ThreadPoolExecutor(this.maxConnSize, this.maxConnSize, 10, TimeUnit.SECONDS,
+				new LinkedBlockingQueue(Math.max(1, this.maxQueueSize)), new ThreadFactory() {
+				private AtomicInteger count = new AtomicInteger();
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "SocketReader-" + this.count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			this.readerPool.allowCoreThreadTimeOut(true);
+		}
 
 		return b;
 	}
 
 	public void listen() {
-		ServerSocket listener = null;
 		Socket socket = null;
-		SocketHelper helper = null;
 		SocketRequest request = null;
 		ObjectInputStream ois = null;
 		boolean continueLoop = false;
 		try {
-			listener = new ServerSocket(port);
+			this.listener = new ServerSocket(port);
 			if (log.isDebugEnabled()) {
-				log.debug("listener: " + listener);
+				log.debug("listener: " + this.listener);
 			}
 			continueLoop = true;
+			this.running = true;
 		} catch (Exception e) {
 			if (log.isErrorEnabled()) {
 				log.error("Listening error", e);
@@ -142,37 +380,36 @@ public class SocketServer implements Runnable, RejectedExecutionHandler {
 		if (log.isDebugEnabled()) {
 			log.debug("Starting to listen: " + continueLoop);
 		}
-		while (continueLoop && this.maxConnSize > 0) {
+		while (continueLoop && this.running && this.maxConnSize > 0) {
 			try {
-				socket = listener.accept();
-				ois = new ObjectInputStream(socket.getInputStream());
+				socket = this.listener.accept();
+				BufferedInputStream bis = new BufferedInputStream(socket.getInputStream());
+				if (SocketFrame.isFramed(bis)) {
+					bis.skip(4);
+					this.startSession(socket, bis);
+					socket = null;
+					continue;
+				}
+				ois = new ObjectInputStream(bis);
 				Object o = ois.readObject();
 				if (o != null && o instanceof SocketRequest) {
 					request = (SocketRequest)o;
-					if (this.MODE_SYNCHRONOUS == this.mode) {
+					if (this.isSynchronous()) {
 						request.setSocket(socket);
 					}
-					request.setId(MiscUtil.getSysId());
-					if (log.isInfoEnabled()) {
-						log.info(request.toString());
-					}
-					if (request.isToEndServer()) {
+					if (!this.dispatch(request)) {
 						continueLoop = false;
-						threadPool.shutdown();
 						ThreadUtil.sleep(5000);
-					} else if (request.isExecuteCommand()) {
-						helper = new SocketHelper(request, this);
-						threadPool.execute(helper);
 					}
 				}
 			} catch (Exception e) {
-				if (log.isErrorEnabled()) {
+				if (this.running && log.isErrorEnabled()) {
 					log.error("Exception in accepting new request", e);
 				}
 			} finally {
 				try { ois.close(); } catch (Exception e) {}
 				ois = null;
-				if (this.mode == this.MODE_ASYNCHRONOUS) {
+				if (!this.isSynchronous()) {
 					try { socket.close(); } catch (Exception e) {}
 				}
 				socket = null;
@@ -183,13 +420,267 @@ public class SocketServer implements Runnable, RejectedExecutionHandler {
 		}
 	}
 
-	/* (non-Javadoc)
+	/**
+	 * Starts the thread of a pipelined connection. At most maxConnSize
+	 * sessions run at a time, the connections over are closed.
+	 */
+	private void startSession(Socket socket, InputStream is) throws IOException {
+		if (!this.sessions.tryAcquire()) {
+			this.rejectedCount.incrementAndGet();
+			if (log.isErrorEnabled()) {
+				log.error("Too many sessions, connection rejected " + socket);
+			}
+			try { socket.close(); } catch (Exception e) {}
+			return;
+		}
+		try {
+			final StreamSession session = new StreamSession(socket, is, this);
+			Thread t = new Thread(new Runnable() {
+				public void run() {
+					try {
+						session.run();
+					} finally {
+						sessions.release();
+					}
+				}
+			}, "StreamSession-" + socket.getPort());
+			t.setDaemon(true);
+			t.start();
+		} catch (IOException e) {
+			this.sessions.release();
+			throw e;
+		} catch (RuntimeException e) {
+			this.sessions.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Listens with a non-blocking server channel. The calling thread
+	 * only accepts the connections and hands them over round robin to
+	 * the reactors which read the requests. The commands are still
+	 * executed by the thread pool.
+	 */
+	public void listenNonBlocking() {
+		ServerSocketChannel serverChannel = null;
+		int next = 0;
+		try {
+			this.acceptSelector = Selector.open();
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.configureBlocking(false);
+			serverChannel.socket().bind(new InetSocketAddress(port));
+			serverChannel.register(this.acceptSelector, SelectionKey.OP_ACCEPT);
+			this.reactors = new SocketReactor[this.reactorSize > 0 ? this.reactorSize : 1];
+			for (int i=0; i<this.reactors.length; i++) {
+				this.reactors[i] = new SocketReactor(this);
+				Thread t = new Thread(this.reactors[i], "SocketReactor-" + i);
+				t.setDaemon(true);
+				t.start();
+			}
+			if (log.isDebugEnabled()) {
+				log.debug("listener: " + serverChannel);
+			}
+			this.running = true;
+		} catch (Exception e) {
+			if (log.isErrorEnabled()) {
+				log.error("Listening error", e);
+			}
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Starting to listen: " + this.running);
+		}
+		while (this.running) {
+			try {
+				this.acceptSelector.select();
+				Iterator iter = this.acceptSelector.selectedKeys().iterator();
+				while (iter.hasNext()) {
+					SelectionKey key = (SelectionKey)iter.next();
+					iter.remove();
+					if (!key.isValid() || !key.isAcceptable()) {
+						continue;
+					}
+					SocketChannel channel = null;
+					while ((channel = serverChannel.accept()) != null) {
+						channel.configureBlocking(false);
+						this.reactors[next].register(channel);
+						next = (next + 1) % this.reactors.length;
+					}
+				}
+			} catch (Exception e) {
+				if (log.isErrorEnabled()) {
+					log.error("Exception in accepting new request", e);
+				}
+			}
+		}
+		for (int i=0; this.reactors != null && i<this.reactors.length; i++) {
+			if (this.reactors[i] != null) {
+				this.reactors[i].stop();
+			}
+		}
+		try { serverChannel.close(); } catch (Exception e) {}
+		try { this.acceptSelector.close(); } catch (Exception e) {}
+		if (log.isInfoEnabled()) {
+			log.info("Server ended");
+		}
+	}
+
+	/**
+	 * Dispatches a request read to the thread pool.
+	 * @param request the request read from the client
+	 * @return false if the request is to end the server
+	 */
+	public boolean dispatch(SocketRequest request) {
+		request.setId(MiscUtil.getSysId());
+		if (log.isInfoEnabled()) {
+			log.info(request.toString());
+		}
+		if (request.isToEndServer()) {
+			this.running = false;
+			if (this.virtualExecutor != null) {
+				this.virtualExecutor.shutdown();
+			} else {
+				threadPool.shutdown();
+			}
+			if (this.readerPool != null) {
+				this.readerPool.shutdown();
+			}
+			if (this.acceptSelector != null) {
+				this.acceptSelector.wakeup();
+			}
+			if (this.listener != null) {
+				try { this.listener.close(); } catch (Exception e) {}
+			}
+			return false;
+		} else if (request.isStatistics()) {
+			if (request.getSession() != null) {
+				SocketResponse response = new SocketResponse(request);
+				response.setResult(this.getStatistics());
+				request.getSession().send(response);
+			}
+		} else if (request.isExecuteCommand()) {
+			SocketHelper helper = new SocketHelper(request, this);
+			if (this.shedQueueSize > 0 && request.getPriority() < this.shedPriority &&
+				this.getQueueDepth() >= this.shedQueueSize) {
+				this.shedCount.incrementAndGet();
+				this.reject(helper);
+			} else if (this.virtualExecutor != null) {
+				if (this.slots.tryAcquire()) {
+					this.submit(helper);
+				} else {
+					this.overload(helper, this.virtualExecutor.isShutdown());
+				}
+			} else {
+				threadPool.execute(helper);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Handles the request when the queue is full according to the
+	 * overload policy.
 	 * @see java.util.concurrent.RejectedExecutionHandler#rejectedExecution(java.lang.Runnable, java.util.concurrent.ThreadPoolExecutor)
 	 */
 	public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+		this.overload(r, executor.isShutdown());
+	}
+
+	private void overload(Runnable r, boolean shutdown) {
+		if (shutdown) {
+			this.reject(r);
+		} else if (this.nonBlocking) {
+			// never run or wait in a reactor thread
+			this.reject(r);
+		} else if (this.overloadPolicy == OVERLOAD_CALLER_RUNS) {
+			this.callerRunsCount.incrementAndGet();
+			r.run();
+		} else if (this.overloadPolicy == OVERLOAD_WAIT) {
+			boolean queued = false;
+			try {
+				if (this.virtualExecutor != null) {
+					queued = this.slots.tryAcquire(this.overloadWait, TimeUnit.MILLISECONDS);
+					if (queued) {
+						this.submit(r);
+					}
+				} else {
+					queued = threadPool.getQueue().offer(r, this.overloadWait, TimeUnit.MILLISECONDS);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (queued) {
+				this.waitedCount.incrementAndGet();
+			} else {
+				this.reject(r);
+			}
+		} else {
+			this.reject(r);
+		}
+	}
+
+	/**
+	 * Runs the command in a virtual thread once a permit is free. The
+	 * slot of the request must have been acquired.
+	 */
+	private void submit(final Runnable r) {
+		try {
+			this.virtualExecutor.execute(new Runnable() {
+				public void run() {
+					try {
+						permits.acquire();
+						try {
+							r.run();
+						} finally {
+							permits.release();
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						reject(r);
+					} finally {
+						slots.release();
+						virtualCompletedCount.incrementAndGet();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			this.slots.release();
+			this.reject(r);
+		}
+	}
+
+	/**
+	 * Creates the executor starting a virtual thread per command. A
+	 * cached thread pool is used on a JVM without virtual threads.
+	 */
+	private ExecutorService newVirtualThreadExecutor() {
+		try {
+			java.lang.reflect.Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor", new Class[0]);
+			return (ExecutorService)m.invoke(null, new Object[0]);
+		} catch (Exception e) {
+			if (log.isInfoEnabled()) {
+				log.info("Virtual threads not available, using a cached thread pool");
+			}
+		}
+		return Executors.newCachedThreadPool();
+	}
+
+	/**
+	 * Rejects the request. The client of a pipelined request is told
+	 * whether to retry later.
+	 */
+	private void reject(Runnable r) {
+		this.rejectedCount.incrementAndGet();
 		if (log.isErrorEnabled()) {
 			log.error("Request rejected " + r);
 		}
+		if (r instanceof SocketHelper) {
+			SocketHelper helper = (SocketHelper)r;
+			if (this.overloadPolicy == OVERLOAD_RETRY) {
+				helper.reject(SocketResponse.STATUS_RETRY, "Server busy", this.retryAfter);
+			} else {
+				helper.reject(SocketResponse.STATUS_REJECTED, "Request rejected", 0);
+			}
+		}
 	}
 
 	private static void initProperties() {
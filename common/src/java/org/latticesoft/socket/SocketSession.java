@@ -0,0 +1,19 @@
+/*
+ * Copyright Jurong Port Pte Ltd
+ * Created on Oct 18, 2026
+ */
+package org.latticesoft.socket;
+
+/**
+ * A persistent connection on the server side which accepts pipelined
+ * requests. The responses are sent back as soon as each command ends
+ * and therefore not necessarily in the order the requests came in.
+ */
+public interface SocketSession {
+
+	/**
+	 * Sends the response back to the client.
+	 * @param response the response of a request read from this session
+	 */
+	void send(SocketResponse response);
+}
@@ -7,6 +7,7 @@ package org.latticesoft.socket;
 import java.util.*;
 import java.net.*;
 import java.io.*;
+import java.util.concurrent.*;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.latticesoft.util.common.*;
@@ -18,7 +19,108 @@ import org.latticesoft.command.*;
 
 public class SocketUtil {
 	private static final Log log = LogFactory.getLog(SocketUtil.class);
+	private static ConcurrentMap connections = new ConcurrentHashMap();
+	private static int connectionsPerHost = 1;
 	
+	/** @return Returns the number of pooled connections per host and port. */
+	public static int getConnectionsPerHost() {
+		return connectionsPerHost;
+	}
+
+	/** @param connectionsPerHost The connectionsPerHost to set. */
+	public static void setConnectionsPerHost(int connectionsPerHost) {
+		SocketUtil.connectionsPerHost = connectionsPerHost;
+	}
+
+	/**
+	 * Gets a pooled persistent connection. A new connection is opened
+	 * until there are connectionsPerHost of them. After that the
+	 * connection with the least requests pending is returned. The
+	 * connection is opened without holding any lock, so a slow host
+	 * does not hold up the callers of the other hosts.
+	 */
+	public static SocketConnection getConnection(String host, int port) throws IOException {
+		String key = host + ":" + port;
+		List list = (List)connections.get(key);
+		if (list == null) {
+			list = new ArrayList();
+			List old = (List)connections.putIfAbsent(key, list);
+			if (old != null) {
+				list = old;
+			}
+		}
+		SocketConnection conn = null;
+		synchronized (list) {
+			conn = SocketUtil.leastPending(list);
+			if (conn != null && (list.size() >= connectionsPerHost || conn.getPendingCount() == 0)) {
+				return conn;
+			}
+		}
+		SocketConnection created = new SocketConnection(host, port);
+		synchronized (list) {
+			conn = SocketUtil.leastPending(list);
+			if (conn == null || list.size() < connectionsPerHost) {
+				list.add(created);
+				return created;
+			}
+		}
+		// another caller has filled the pool meanwhile
+		created.close();
+		return conn;
+	}
+
+	/**
+	 * Removes the closed connections of the list.
+	 * @return the open connection with the least requests pending
+	 */
+	private static SocketConnection leastPending(List list) {
+		SocketConnection conn = null;
+		Iterator iter = list.iterator();
+		while (iter.hasNext()) {
+			SocketConnection c = (SocketConnection)iter.next();
+			if (c.isClosed()) {
+				iter.remove();
+			} else if (conn == null || c.getPendingCount() < conn.getPendingCount()) {
+				conn = c;
+			}
+		}
+		return conn;
+	}
+
+	/**
+	 * Closes all the pooled connections.
+	 */
+	public static void closeConnections() {
+		Iterator iter = connections.values().iterator();
+		while (iter.hasNext()) {
+			List list = (List)iter.next();
+			List copy = null;
+			synchronized (list) {
+				copy = new ArrayList(list);
+				list.clear();
+			}
+			for (int i=0; i<copy.size(); i++) {
+				((SocketConnection)copy.get(i)).close();
+			}
+		}
+	}
+
+	/**
+	 * Sends a request over a pooled persistent connection.
+	 * @return the future of the {@link SocketResponse}, null if the
+	 * request can not be sent
+	 */
+	public static Future sendPipelinedRequest(String host, int port, String commandName, Map param) {
+		try {
+			return SocketUtil.getConnection(host, port).send(commandName, param);
+		} catch (Exception e) {
+			if (log.isErrorEnabled()) {
+				log.error("Exception", e);
+			}
+		}
+		return null;
+	}
+
 	public static void sendRequest(String host, int port, String commandName, Map param) {
 		SocketRequest request = new SocketRequest();
 		request.setCommandClassName(commandName);
@@ -43,6 +145,27 @@ public class SocketUtil {
 		}
 	}
 	
+	/**
+	 * Gets the load of the server so that the sender can throttle itself.
+	 * @param timeout the milliseconds to wait for the response
+	 * @return the statistics of the server, null if not available
+	 * @see SocketServer#getStatistics()
+	 */
+	public static Map getServerStatistics(String host, int port, long timeout) {
+		SocketRequest request = new SocketRequest();
+		request.setInstruction(SocketRequest.STATISTICS);
+		try {
+			Future future = SocketUtil.getConnection(host, port).send(request);
+			SocketResponse response = (SocketResponse)future.get(timeout, TimeUnit.MILLISECONDS);
+			return (Map)response.getResult();
+		} catch (Exception e) {
+			if (log.isErrorEnabled()) {
+				log.error("Exception", e);
+			}
+		}
+		return null;
+	}
+
 	public static void sendEndServerRequest(String host, int port) {
 		SocketRequest request = new SocketRequest();
 		request.setInstruction(SocketRequest.END_SERVER);
@@ -0,0 +1,15 @@
+/*
+ * Copyright Jurong Port Pte Ltd
+ * Created on Oct 18, 2026
+ */
+package org.latticesoft.socket;
+
+import org.latticesoft.command.Command;
+
+/**
+ * Marks a command which keeps no state between executions. The
+ * {@link CommandRegistry} creates one instance of such a command and
+ * shares it among all the requests, so the command must be thread safe.
+ */
+public interface StatelessCommand extends Command {
+}
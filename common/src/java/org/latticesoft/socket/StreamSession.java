@@ -0,0 +1,115 @@
+/*
+ * Copyright Jurong Port Pte Ltd
+ * Created on Oct 18, 2026
+ */
+package org.latticesoft.socket;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The pipelined connection of the blocking listener. The session
+ * reads the frames in its own thread and dispatches each request to the
+ * thread pool of the server. The responses are written back by the
+ * threads of the pool as soon as the commands end. When the client
+ * ends its stream, the session waits for the responses of the requests
+ * still running before closing the socket.
+ */
+public class StreamSession implements SocketSession, Runnable {
+	private static final Log log = LogFactory.getLog(StreamSession.class);
+	private Socket socket;
+	private InputStream is;
+	private DataOutputStream out;
+	private SocketServer server;
+	private int pendingCount = 0;
+
+	/**
+	 * @param socket the socket accepted
+	 * @param is the input stream of the socket positioned after the magic number
+	 * @param server the server to dispatch the requests to
+	 */
+	public StreamSession(Socket socket, InputStream is, SocketServer server) throws IOException {
+		this.socket = socket;
+		this.is = is;
+		this.server = server;
+		this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+	}
+
+	public void run() {
+		DataInputStream dis = new DataInputStream(this.is);
+		long[] requestId = new long[1];
+		boolean continueLoop = true;
+		try {
+			while (continueLoop) {
+				Object o = SocketFrame.read(dis, requestId);
+				if (o instanceof SocketRequest) {
+					SocketRequest request = (SocketRequest)o;
+					request.setRequestId(requestId[0]);
+					request.setSession(this);
+					if (request.isAnswered()) {
+						synchronized (this) {
+							this.pendingCount++;
+						}
+					}
+					continueLoop = this.server.dispatch(request);
+				}
+			}
+		} catch (EOFException e) {
+			if (log.isDebugEnabled()) {
+				log.debug("Session ended " + this.socket);
+			}
+		} catch (Exception e) {
+			if (log.isErrorEnabled()) {
+				log.error("Exception in reading request", e);
+			}
+		} finally {
+			this.drain();
+			try { this.socket.close(); } catch (Exception e) {}
+		}
+	}
+
+	/**
+	 * Waits until the responses of all the requests read are sent. The
+	 * input is shut down so only the output stays open.
+	 */
+	private void drain() {
+		try { this.socket.shutdownInput(); } catch (Exception e) {}
+		synchronized (this) {
+			while (this.pendingCount > 0 && !this.socket.isClosed()) {
+				try {
+					this.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	public void send(SocketResponse response) {
+		ByteBuffer frame = null;
+		try {
+			frame = SocketFrame.encode(response);
+			synchronized (this.out) {
+				SocketFrame.write(this.out, frame);
+				this.out.flush();
+			}
+		} catch (Exception e) {
+			if (log.isErrorEnabled()) {
+				log.error("Unable to send " + response, e);
+			}
+		} finally {
+			BufferPool.getInstance().release(frame);
+			synchronized (this) {
+				if (this.pendingCount > 0) {
+					this.pendingCount--;
+				}
+				this.notifyAll();
+			}
+		}
+	}
+}
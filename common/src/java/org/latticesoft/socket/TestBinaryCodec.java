@@ -0,0 +1,108 @@
+/*
+ * Copyright Jurong Port Pte Ltd
+ * Created on Oct 18, 2026
+ */
+package org.latticesoft.socket;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+/**
+ * Feeds well formed and malformed payloads to the {@link BinaryCodec}.
+ * Every malformed payload must fail with a StreamCorruptedException and
+ * nothing else.
+ */
+public class TestBinaryCodec {
+	private static final byte KIND_VALUE = 0;
+	private static final byte TYPE_STRING = 1;
+	private static final byte TYPE_BYTES = 12;
+	private static final byte TYPE_MAP = 14;
+	private static final byte TYPE_LIST = 15;
+	private static final byte TYPE_SERIALIZED = 16;
+
+	private BinaryCodec codec = new BinaryCodec();
+	private int failures = 0;
+
+	public void testRoundTrip() throws Exception {
+		SocketRequest request = new SocketRequest();
+		request.setInstruction(SocketRequest.EXECUTE_COMMAND);
+		request.setCommandClassName("TestCommand");
+		List list = new ArrayList();
+		list.add(Integer.valueOf(1));
+		list.add(null);
+		list.add("x");
+		request.getMap().put("list", list);
+		request.getMap().put("bytes", new byte[] { 1, 2, 3 });
+		ByteBuffer buffer = this.codec.encode(request, ByteBuffer.allocate(16));
+		buffer.flip();
+		SocketRequest decoded = (SocketRequest)this.codec.decode(buffer);
+		this.check("round trip", list.equals(decoded.getMap().get("list")));
+	}
+
+	public void testMalformed() {
+		this.expectCorrupted("huge string", this.frame(new byte[] { KIND_VALUE, TYPE_STRING }, Integer.MAX_VALUE, 0));
+		this.expectCorrupted("negative string", this.frame(new byte[] { KIND_VALUE, TYPE_STRING }, -2, 0));
+		this.expectCorrupted("huge bytes", this.frame(new byte[] { KIND_VALUE, TYPE_BYTES }, 64 * 1024 * 1024, 4));
+		this.expectCorrupted("negative bytes", this.frame(new byte[] { KIND_VALUE, TYPE_BYTES }, -1, 4));
+		this.expectCorrupted("huge list", this.frame(new byte[] { KIND_VALUE, TYPE_LIST }, Integer.MAX_VALUE, 8));
+		this.expectCorrupted("huge map", this.frame(new byte[] { KIND_VALUE, TYPE_MAP }, Integer.MAX_VALUE, 8));
+		this.expectCorrupted("huge serialized", this.frame(new byte[] { KIND_VALUE, TYPE_SERIALIZED }, Integer.MAX_VALUE, 8));
+		this.expectCorrupted("truncated", ByteBuffer.wrap(new byte[] { KIND_VALUE, TYPE_LIST, 0, 0 }));
+		this.expectCorrupted("unknown type", ByteBuffer.wrap(new byte[] { KIND_VALUE, 99 }));
+
+		// a string running past the frame into the bytes of the next one
+		ByteBuffer next = ByteBuffer.allocate(64);
+		next.put(KIND_VALUE).put(TYPE_STRING).putInt(10).put((byte)'a');
+		int limit = next.position();
+		while (next.hasRemaining()) {
+			next.put((byte)'z');
+		}
+		next.position(0);
+		next.limit(limit);
+		this.expectCorrupted("string past the limit", next);
+
+		// lists nested deeper than allowed
+		ByteBuffer deep = ByteBuffer.allocate(1 + (BinaryCodec.MAX_DEPTH + 10) * 5 + 1);
+		deep.put(KIND_VALUE);
+		for (int i=0; i<BinaryCodec.MAX_DEPTH + 10; i++) {
+			deep.put(TYPE_LIST).putInt(1);
+		}
+		deep.put((byte)0);
+		deep.flip();
+		this.expectCorrupted("deep nesting", deep);
+	}
+
+	private ByteBuffer frame(byte[] head, int length, int padding) {
+		ByteBuffer buffer = ByteBuffer.allocate(head.length + 4 + padding);
+		buffer.put(head);
+		buffer.putInt(length);
+		buffer.position(0);
+		return buffer;
+	}
+
+	private void expectCorrupted(String name, ByteBuffer buffer) {
+		try {
+			Object o = this.codec.decode(buffer);
+			this.check(name + " decoded " + o, false);
+		} catch (StreamCorruptedException e) {
+			this.check(name + ": " + e.getMessage(), true);
+		} catch (Throwable t) {
+			this.check(name + " threw " + t, false);
+		}
+	}
+
+	private void check(String name, boolean ok) {
+		if (!ok) {
+			this.failures++;
+		}
+		System.out.println((ok ? "OK   " : "FAIL ") + name);
+	}
+
+	public static void main(String[] args) throws Exception {
+		TestBinaryCodec test = new TestBinaryCodec();
+		test.testRoundTrip();
+		test.testMalformed();
+		System.out.println(test.failures + " failure(s)");
+	}
+}
@@ -19,6 +19,9 @@
 package org.latticesoft.util.common;
 
 import org.apache.commons.beanutils.*;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
 import java.util.*;
 
 
@@ -69,6 +72,24 @@ public final class BeanUtil {
 		return new BasicDynaClass(name, c);
 	}
 	
+	/**
+	 * Returns the property descriptors of the class for the callers
+	 * caching them per class. The class and its superclasses are then
+	 * flushed from the cache of the Introspector, which would otherwise
+	 * keep their class loader for the life of the thread group.
+	 * @param c the class
+	 * @return the property descriptors of the class
+	 */
+	public static PropertyDescriptor[] getPropertyDescriptors(Class c) throws IntrospectionException {
+		try {
+			return Introspector.getBeanInfo(c).getPropertyDescriptors();
+		} finally {
+			for (Class k=c; k!=null; k=k.getSuperclass()) {
+				Introspector.flushFromCaches(k);
+			}
+		}
+	}
+
 	public static Object getAttribute(Object bean, String attribute) {
 		Object retVal = null;
 		if (bean == null || attribute == null) return null;
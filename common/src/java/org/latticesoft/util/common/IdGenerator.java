@@ -0,0 +1,167 @@
+/*
+ * Copyright 2004 Senunkan Shinryuu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Created on Oct 18, 2026
+ *
+ */
+package org.latticesoft.util.common;
+
+import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Generates unique and monotonic ids without locking or sleeping.</p>
+ * <p>The numeric id is made of the milliseconds since EPOCH (41 bits),
+ * the node id (10 bits) and a sequence within the millisecond (12 bits).
+ * When the sequence of a millisecond runs out, the following millisecond
+ * is borrowed instead of waiting for the clock.</p>
+ * <p>The string id keeps the layout yyyyMMddHHmmss###### of
+ * {@link MiscUtil#getSysId()} where the last 6 digits are a sequence
+ * within the second. The ids are unique within the generator only.</p>
+ */
+public final class IdGenerator {
+
+	/** 2010-01-01 00:00:00 UTC */
+	public static final long EPOCH = 1262304000000L;
+	public static final int NODE_BITS = 10;
+	public static final int SEQUENCE_BITS = 12;
+	public static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+	private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+	private static final long SYS_ID_SEQUENCE = 1000000L;
+
+	private static IdGenerator instance = new IdGenerator(NumeralUtil.parseLong(System.getProperty("nodeId")) & MAX_NODE_ID);
+
+	private final long nodeId;
+	/** last millisecond shifted left by SEQUENCE_BITS plus the sequence */
+	private final AtomicLong last = new AtomicLong();
+	/** last second multiplied by SYS_ID_SEQUENCE plus the sequence */
+	private final AtomicLong lastSysId = new AtomicLong();
+	private volatile Prefix prefix = new Prefix(-1, null);
+
+	public IdGenerator() {
+		this(0);
+	}
+
+	public IdGenerator(long nodeId) {
+		if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+			throw new IllegalArgumentException("Node id out of range: " + nodeId);
+		}
+		this.nodeId = nodeId;
+	}
+
+	/**
+	 * Returns the shared generator. The node id is taken from the
+	 * lower 10 bits of the system property nodeId.
+	 */
+	public static IdGenerator getInstance() {
+		return instance;
+	}
+
+	/** @return Returns the nodeId. */
+	public long getNodeId() {
+		return (this.nodeId);
+	}
+
+	/**
+	 * @return the next unique numeric id
+	 */
+	public long nextId() {
+		long next = 0;
+		while (true) {
+			long now = System.currentTimeMillis();
+			long prev = this.last.get();
+			if (now > (prev >>> SEQUENCE_BITS)) {
+				next = now << SEQUENCE_BITS;
+			} else {
+				next = prev + 1;
+			}
+			if (this.last.compareAndSet(prev, next)) {
+				break;
+			}
+		}
+		long time = (next >>> SEQUENCE_BITS) - EPOCH;
+		return (time << (NODE_BITS + SEQUENCE_BITS)) | (this.nodeId << SEQUENCE_BITS) | (next & SEQUENCE_MASK);
+	}
+
+	/**
+	 * @return the milliseconds since 1970 in which the id was generated
+	 */
+	public static long getTimeMillis(long id) {
+		return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+	}
+
+	/**
+	 * @return the next unique id in the form of yyyyMMddHHmmss######
+	 */
+	public String nextSysId() {
+		long next = 0;
+		while (true) {
+			long now = System.currentTimeMillis() / 1000;
+			long prev = this.lastSysId.get();
+			if (now > prev / SYS_ID_SEQUENCE) {
+				next = now * SYS_ID_SEQUENCE;
+			} else {
+				next = prev + 1;
+			}
+			if (this.lastSysId.compareAndSet(prev, next)) {
+				break;
+			}
+		}
+		long second = next / SYS_ID_SEQUENCE;
+		int sequence = (int)(next % SYS_ID_SEQUENCE);
+		Prefix p = this.prefix;
+		if (p.second != second) {
+			p = new Prefix(second, IdGenerator.formatSecond(second));
+			this.prefix = p;
+		}
+		char[] c = new char[20];
+		p.text.getChars(0, 14, c, 0);
+		for (int i=19; i>=14; i--) {
+			c[i] = (char)('0' + sequence % 10);
+			sequence /= 10;
+		}
+		return new String(c);
+	}
+
+	private static String formatSecond(long second) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(second * 1000);
+		char[] c = new char[14];
+		IdGenerator.put(c, 0, cal.get(Calendar.YEAR), 4);
+		IdGenerator.put(c, 4, cal.get(Calendar.MONTH) + 1, 2);
+		IdGenerator.put(c, 6, cal.get(Calendar.DAY_OF_MONTH), 2);
+		IdGenerator.put(c, 8, cal.get(Calendar.HOUR_OF_DAY), 2);
+		IdGenerator.put(c, 10, cal.get(Calendar.MINUTE), 2);
+		IdGenerator.put(c, 12, cal.get(Calendar.SECOND), 2);
+		return new String(c);
+	}
+
+	private static void put(char[] c, int offset, int value, int digits) {
+		for (int i=offset+digits-1; i>=offset; i--) {
+			c[i] = (char)('0' + value % 10);
+			value /= 10;
+		}
+	}
+
+	/** The formatted second shared by the ids of the same second */
+	private static final class Prefix {
+		private final long second;
+		private final String text;
+		private Prefix(long second, String text) {
+			this.second = second;
+			this.text = text;
+		}
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2004 Senunkan Shinryuu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Created on Oct 18, 2026
+ *
+ */
+package org.latticesoft.util.common;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * Normalizes the values used as keys so that the same value read from
+ * the database or passed by the caller in different types matches, such
+ * as an Integer, a Long or a BigDecimal of the same number. Two values
+ * have equal keys exactly when the typed comparison of {@link SortHelper}
+ * finds them equal.
+ */
+public final class KeyNormalizer {
+
+	private KeyNormalizer() {}
+
+	/**
+	 * Returns the normalized value. The numbers of the same value become
+	 * the same Long, or BigDecimal without trailing zeros when they are
+	 * not integral, so 1, 1.0 and 1.00 match and 1.5 and 1.50 match. The
+	 * infinities and NaN become a Double. The dates become a Date of the
+	 * same time, unless a Timestamp is more precise than milliseconds.
+	 * @param o the value
+	 * @return the key of the value
+	 */
+	public static Object normalize(Object o) {
+		if (o instanceof Long) {
+			return o;
+		} else if (o instanceof Integer || o instanceof Short || o instanceof Byte) {
+			return Long.valueOf(((Number)o).longValue());
+		} else if (o instanceof Number) {
+			Number n = (Number)o;
+			if (isSpecial(n)) {
+				return Double.valueOf(n.doubleValue());
+			}
+			BigDecimal bd = toBigDecimal(n).stripTrailingZeros();
+			if (bd.scale() <= 0) {
+				try {
+					return Long.valueOf(bd.longValueExact());
+				} catch (ArithmeticException e) {
+				}
+			}
+			return bd;
+		} else if (o instanceof Date) {
+			if (o instanceof Timestamp && getSubMillis((Date)o) != 0) {
+				return o;
+			}
+			return (o.getClass() == Date.class) ? o : new Date(((Date)o).getTime());
+		}
+		return o;
+	}
+
+	/**
+	 * @return true for the infinities and NaN of the floating point numbers
+	 */
+	static boolean isSpecial(Number n) {
+		if (n instanceof Double || n instanceof Float) {
+			double d = n.doubleValue();
+			return Double.isNaN(d) || Double.isInfinite(d);
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the exact value of the number. The floating point numbers
+	 * must not be special.
+	 */
+	static BigDecimal toBigDecimal(Number n) {
+		if (n instanceof BigDecimal) {
+			return (BigDecimal)n;
+		} else if (n instanceof BigInteger) {
+			return new BigDecimal((BigInteger)n);
+		} else if (n instanceof Double || n instanceof Float) {
+			return new BigDecimal(n.doubleValue());
+		} else if (n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte) {
+			return BigDecimal.valueOf(n.longValue());
+		}
+		try {
+			return new BigDecimal(n.toString());
+		} catch (NumberFormatException e) {
+			return new BigDecimal(n.doubleValue());
+		}
+	}
+
+	/**
+	 * @return the nanoseconds of a Timestamp below the millisecond, 0 for the other dates
+	 */
+	static int getSubMillis(Date d) {
+		return (d instanceof Timestamp) ? ((Timestamp)d).getNanos() % 1000000 : 0;
+	}
+}
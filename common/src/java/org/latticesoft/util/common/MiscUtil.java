@@ -30,13 +30,13 @@ import org.apache.commons.beanutils.MethodUtils;
 import org.apache.commons.beanutils.WrapDynaBean;
 import org.apache.commons.digester.Digester;
 import org.apache.commons.digester.xmlrules.DigesterLoader;
-import org.apache.commons.jexl.JexlHelper;
 import org.apache.commons.jexl.JexlContext;
 import org.apache.commons.jexl.Expression;
 import org.apache.commons.jexl.ExpressionFactory;
 import org.apache.commons.beanutils.*;
 import org.xml.sax.SAXException;
 import org.apache.xml.resolver.tools.CatalogResolver;
+import org.latticesoft.util.container.ConcurrentCache;
 
 public final class MiscUtil {
 
@@ -44,6 +44,7 @@ public final class MiscUtil {
 	private static final boolean USE_JEXL = false;
 	public static final String START = "${";
 	public static final String END = "}";
+	private static final ConcurrentCache expressions = new ConcurrentCache(4096);
 
 	private MiscUtil() {}
 
@@ -515,88 +516,52 @@ if (log.isDebugEnabled()) { log.debug("sKey: " + sKey); }
 			else return o;
 		}
 
-		// extract all the variables in the key
-		Collection c = StringUtil.extractParameter(sKey, paramStart, paramEnd);
-if (log.isDebugEnabled()) { log.debug("ParamSize: " + c.size()); }
+		// the variables of the key, parsed once per key
+		ParameterTemplate t = ParameterTemplate.compile(sKey, paramStart, paramEnd);
+if (log.isDebugEnabled()) { log.debug("ParamSize: " + t.size()); }
 
 		Object retVal = null;
 
-		if (c.size() == 0) {
+		if (t.size() == 0) {
 			// no valid variable found
 if (log.isDebugEnabled()) { log.debug("No param to extract"); }
 			return defaultValue;
 
-		} else if (c.size() == 1) {
-			// one parameter to extract
-			String s = (String)c.iterator().next();
-			Object o = null;
+		} else if (t.size() == 1 && t.isParamOnly()) {
+			// if the key contains only the variable
+			// e.g. ${var}
 			if (useJexl) {
-				o = MiscUtil.getParameterJexl(map, s, isObjectFirst);
+				retVal = MiscUtil.getParameterJexl(map, t.getParam(0), isObjectFirst);
 			} else {
-				o = MiscUtil.getParameter(map, s, isObjectFirst);
+				retVal = MiscUtil.getParameter(map, t.getParam(0), isObjectFirst);
 			}
 
-			if (sKey.length() == (paramStart + s + paramEnd).length()) {
-				// if the key contains only the variable
-				// e.g. ${var}
-				retVal = o;
-
-			} else {
-				// if the key contains variable and other string
-				// e.g. haha${var}
-				String replaceKey = paramStart + s + paramEnd;
-				String replaceValue = null;
+		} else {
+			// if the key contains variables and other string
+			// e.g. haha${var} => end result is a string
+			String[] values = new String[t.size()];
+			for (int i=0; i<values.length; i++) {
+				String s = t.getParam(i);
+				Object o = null;
+				if ((t.size() == 1) ? useJexl : USE_JEXL) {
+					o = MiscUtil.getParameterJexl(map, s, isObjectFirst);
+				} else {
+					o = MiscUtil.getParameter(map, s, isObjectFirst);
+				}
 				if (o != null) {
-					replaceValue = o.toString();
+					values[i] = o.toString();
 				}
-				if (replaceValue == null) {
+				if (values[i] == null) {
 					// add a check if the defaultValue is same as key we 
 					// we use a blank string instead this is to prevent
 					// cyclic resolution
 					if (defaultValue != null && defaultValue.equals(key)) {
 						defaultValue = "";
 					}
-					replaceValue = (defaultValue != null) ? defaultValue.toString() : "";
+					values[i] = (defaultValue != null) ? defaultValue.toString() : "";
 				}
-				StringBuffer sb = new StringBuffer(sKey);
-				StringUtil.replace(sb, replaceKey, replaceValue, true);
-				retVal = sb.toString();
 			}
-
-		} else {
-			// more than 1 parameter => end result is a string
-			StringBuffer sb = new StringBuffer(sKey);
-			Iterator iter = c.iterator();
-			String s = null;
-			Object o = null;
-			while (iter.hasNext()) {
-				s = (String)iter.next();
-				if (s != null) {
-					if (USE_JEXL) {
-						o = MiscUtil.getParameterJexl(map, s, isObjectFirst);
-					} else {
-						o = MiscUtil.getParameter(map, s, isObjectFirst);
-					}
-					String replaceKey = paramStart + s + paramEnd;
-					String replaceValue = null;
-					if (o != null) {
-						replaceValue = o.toString();
-					}
-					if (replaceValue == null) {
-						// add a check if the defaultValue is same as key we 
-						// we use a blank string instead this is to prevent
-						// cyclic resolution
-						if (defaultValue != null && defaultValue.equals(key)) {
-							defaultValue = "";
-						}
-						replaceValue = (defaultValue != null) ? defaultValue.toString() : "";
-					}
-					if (replaceKey != null && replaceValue != null) {
-						StringUtil.replace(sb, replaceKey, replaceValue, true);
-					}
-				}
-			}
-			retVal = sb.toString();
+			retVal = t.render(values);
 		}
 
 		// check that the retVal does not contain any variable.
@@ -625,10 +590,12 @@ if (log.isDebugEnabled()) { log.debug("No param to extract"); }
 	private static Object getParameterJexl(Map map, String expression, boolean isObjectFirst) {
 		Object retVal = null;
 		try {
-			JexlContext jc = JexlHelper.createContext();
-			jc.getVars().putAll(map);
-			Expression ex = ExpressionFactory.createExpression(expression);
-			retVal = ex.evaluate(jc);
+			Expression ex = (Expression)expressions.get(expression);
+			if (ex == null) {
+				ex = ExpressionFactory.createExpression(expression);
+				expressions.put(expression, ex);
+			}
+			retVal = ex.evaluate(new MapContext(map));
 		} catch (Exception e) {
 			if (log.isErrorEnabled()) { log.error(e); }
 			retVal = expression;
@@ -636,6 +603,27 @@ if (log.isDebugEnabled()) { log.debug("No param to extract"); }
 		return retVal;
 	}
 
+	/**
+	 * A JexlContext reading the variables straight from the map instead
+	 * of a copy. The expressions only read the variables, so the view is
+	 * unmodifiable.
+	 */
+	private static class MapContext implements JexlContext {
+		private Map vars;
+
+		private MapContext(Map map) {
+			this.vars = Collections.unmodifiableMap(map);
+		}
+
+		public Map getVars() {
+			return this.vars;
+		}
+
+		public void setVars(Map map) {
+			this.vars = map;
+		}
+	}
+
 	/**
 	 * Get the actual value held in the map
 	 * @param map the source map
@@ -1377,24 +1365,12 @@ if (log.isDebugEnabled()) { log.debug(e); }
 		return sb.toString();
 	}
 	
+	/**
+	 * Returns a unique id in the form of yyyyMMddHHmmss######.
+	 * @see IdGenerator#nextSysId()
+	 */
 	public static String getSysId() {
-		StringBuffer sb = new StringBuffer();
-		try {
-			SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMddHHmmss");
-			DecimalFormat df = new DecimalFormat("000000");
-			Random rnd = new Random(System.currentTimeMillis());
-			int theInt = rnd.nextInt(999999);
-			String s = sdf.format(new Timestamp(System.currentTimeMillis()));
-			sb.append(s);
-			s = df.format(theInt);
-			sb.append(s);
-		} catch (Exception e) {
-		}
-		try {
-			Thread.sleep(15);
-		} catch(Exception e) {
-		}
-		return sb.toString();
+		return IdGenerator.getInstance().nextSysId();
 	}
 
 	
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2004 Senunkan Shinryuu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Created on Oct 18, 2026
+ *
+ */
+package org.latticesoft.util.common;
+
+import java.util.*;
+
+/**
+ * Finds the first of a list of templates matching an input string.
+ * Each template is compiled once into a {@link TemplateMatcher}. The
+ * anchors of the templates, the literals any match contains, are
+ * looked up at most once per input and shared by the templates having
+ * the same anchor, so a template whose anchor is missing is skipped
+ * without scanning the input again.
+ */
+public class MultiTemplateMatcher {
+	private TemplateMatcher[] matchers;
+	private String[] anchors;
+	private int[] anchorIndex;
+	private int maxSize = 0;
+
+	/**
+	 * @param templates the templates in the order they are tried
+	 */
+	public MultiTemplateMatcher(List templates) {
+		this.matchers = new TemplateMatcher[templates.size()];
+		this.anchorIndex = new int[templates.size()];
+		List a = new ArrayList();
+		for (int i=0; i<this.matchers.length; i++) {
+			this.matchers[i] = TemplateMatcher.compile((String)templates.get(i));
+			this.maxSize = Math.max(this.maxSize, this.matchers[i].size());
+			String s = this.matchers[i].getAnchor();
+			if (s.length() == 0) {
+				this.anchorIndex[i] = -1;
+			} else {
+				int index = a.indexOf(s);
+				if (index < 0) {
+					index = a.size();
+					a.add(s);
+				}
+				this.anchorIndex[i] = index;
+			}
+		}
+		this.anchors = (String[])a.toArray(new String[a.size()]);
+	}
+
+	/** @return the number of templates */
+	public int size() {
+		return this.matchers.length;
+	}
+
+	/** @return the largest number of parameters of the templates */
+	public int getMaxSize() {
+		return this.maxSize;
+	}
+
+	/**
+	 * @param index the index of the template
+	 * @return the matcher of the template
+	 */
+	public TemplateMatcher getMatcher(int index) {
+		return this.matchers[index];
+	}
+
+	/**
+	 * Finds the first template with at least one value in the input.
+	 * @param input the input string
+	 * @param values the array receiving the values, of getMaxSize() elements at least
+	 * @param count the array receiving the number of values found, at index 0
+	 * @return the index of the template matched, -1 if none
+	 */
+	public int match(String input, String[] values, int[] count) {
+		if (input == null) {
+			return -1;
+		}
+		// 0 unknown, 1 found, 2 missing
+		byte[] found = (this.anchors.length == 0) ? null : new byte[this.anchors.length];
+		for (int i=0; i<this.matchers.length; i++) {
+			TemplateMatcher m = this.matchers[i];
+			if (m.size() == 0) {
+				continue;
+			}
+			int a = this.anchorIndex[i];
+			if (a >= 0) {
+				if (found[a] == 0) {
+					found[a] = (byte)((input.indexOf(this.anchors[a]) < 0) ? 2 : 1);
+				}
+				if (found[a] == 2) {
+					continue;
+				}
+			}
+			int n = m.match(input, values);
+			if (n > 0) {
+				count[0] = n;
+				return i;
+			}
+		}
+		return -1;
+	}
+}
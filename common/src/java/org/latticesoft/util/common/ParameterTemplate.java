@@ -0,0 +1,171 @@
+/*
+ * Copyright 2004 Senunkan Shinryuu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Created on Oct 18, 2026
+ *
+ */
+package org.latticesoft.util.common;
+
+import org.latticesoft.util.container.ConcurrentCache;
+
+/**
+ * A string with parameters such as "${tempDir}/file${index}.txt"
+ * parsed once into its literal and parameter segments. The parameters
+ * are found the same way as {@link StringUtil#extractParameter}: a
+ * parameter runs from the start string to the next end string, and
+ * parameters do not nest. The templates are cached by source, start
+ * and end strings.
+ */
+public final class ParameterTemplate {
+	private static final ConcurrentCache cache = new ConcurrentCache(4096);
+	private String source;
+	private String start;
+	private String end;
+	private String[] literals;
+	private String[] params;
+
+	private ParameterTemplate(String source, String start, String end) {
+		this.source = source;
+		this.start = start;
+		this.end = end;
+		java.util.List lits = new java.util.ArrayList();
+		java.util.List names = new java.util.ArrayList();
+		int pos = 0;
+		while (true) {
+			int index1 = source.indexOf(start, pos);
+			int index2 = (index1 < 0) ? -1 : source.indexOf(end, index1 + start.length());
+			if (index1 < 0 || index2 < 0) {
+				break;
+			}
+			lits.add(source.substring(pos, index1));
+			names.add(source.substring(index1 + start.length(), index2));
+			pos = index2 + end.length();
+		}
+		lits.add(source.substring(pos));
+		this.literals = (String[])lits.toArray(new String[lits.size()]);
+		this.params = (String[])names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * Returns the parsed template of the source string.
+	 * @param source the string with parameters
+	 * @param start the string starting a parameter, e.g. "${"
+	 * @param end the string ending a parameter, e.g. "}"
+	 * @return the template
+	 */
+	public static ParameterTemplate compile(String source, String start, String end) {
+		Key key = new Key(source, start, end);
+		ParameterTemplate t = (ParameterTemplate)cache.get(key);
+		if (t == null) {
+			t = new ParameterTemplate(source, start, end);
+			cache.put(key, t);
+		}
+		return t;
+	}
+
+	/** @return Returns the source string. */
+	public String getSource() { return (this.source); }
+
+	/** @return the number of parameters */
+	public int size() {
+		return this.params.length;
+	}
+
+	/**
+	 * @param index the index of the parameter
+	 * @return the name of the parameter, without the start and end strings
+	 */
+	public String getParam(int index) {
+		return this.params[index];
+	}
+
+	/**
+	 * @param index the index of the literal, from 0 to size()
+	 * @return the literal before the parameter of the index, the last
+	 * one being the literal after the last parameter
+	 */
+	public String getLiteral(int index) {
+		return this.literals[index];
+	}
+
+	/**
+	 * @return true if the source is a single parameter without any literal
+	 */
+	public boolean isParamOnly() {
+		return this.params.length == 1 && this.literals[0].length() == 0 && this.literals[1].length() == 0;
+	}
+
+	/**
+	 * Builds the string with the parameters replaced by the values.
+	 * @param values the values of the parameters in order
+	 * @return the string
+	 */
+	public String render(String[] values) {
+		if (this.params.length == 0) {
+			return this.source;
+		}
+		int length = 0;
+		for (int i=0; i<this.literals.length; i++) {
+			length += this.literals[i].length();
+		}
+		for (int i=0; i<values.length; i++) {
+			length += (values[i] == null) ? 0 : values[i].length();
+		}
+		StringBuffer sb = new StringBuffer(length);
+		sb.append(this.literals[0]);
+		for (int i=0; i<this.params.length; i++) {
+			if (values[i] != null) {
+				sb.append(values[i]);
+			}
+			sb.append(this.literals[i + 1]);
+		}
+		return sb.toString();
+	}
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("[ParameterTemplate|");
+		sb.append(this.source);
+		sb.append("|params:");
+		sb.append(java.util.Arrays.asList(this.params));
+		sb.append("]");
+		return sb.toString();
+	}
+
+	/** The key of a template in the cache. */
+	private static class Key {
+		private String source;
+		private String start;
+		private String end;
+		private int hash;
+
+		private Key(String source, String start, String end) {
+			this.source = source;
+			this.start = start;
+			this.end = end;
+			this.hash = (source.hashCode() * 31 + start.hashCode()) * 31 + end.hashCode();
+		}
+
+		public int hashCode() {
+			return this.hash;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) return false;
+			Key k = (Key)o;
+			return this.source.equals(k.source) && this.start.equals(k.start) && this.end.equals(k.end);
+		}
+	}
+}
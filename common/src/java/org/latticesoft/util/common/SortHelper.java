@@ -1,16 +1,43 @@
 package org.latticesoft.util.common;
 
+import java.beans.*;
+import java.lang.reflect.Method;
+import java.math.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.Serializable;
+import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.beanutils.WrapDynaBean;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+/**
+ * Sorts and splits lists of beans according to the attributes added.
+ * Each attribute sorts ascending unless it is followed by " desc".
+ * By default the values of the attributes are concatenated into strings
+ * which are compared, each run of attributes with the same direction
+ * together. In the typed mode the values are compared one by one with
+ * their natural ordering. The typed sort extracts the values of each
+ * element once before sorting, through getters kept in a ClassValue, and
+ * sorts in parallel from parallelThreshold elements.
+ * <p>
+ * The list can also be grouped by the values of the attributes in a
+ * single pass without sorting. See {@link #group(List)}.
+ * </p>
+ */
 public class SortHelper implements Comparator, Serializable, List {
 
 	public static final long serialVersionUID = 20061003103940L;
 	private List sortOrders = new ArrayList();
 	private static final Log log = LogFactory.getLog(SortHelper.class);
+	private static final ClassValue getters = new ClassValue() {
+		protected Object computeValue(Class c) {
+			return findGetters(c);
+		}
+	};
+	private boolean typed = false;
+	private int parallelThreshold = 1000000;
+	private transient volatile Orders orders = null;
 	
 	public SortHelper(){}
 	public SortHelper(Collection c){
@@ -75,11 +102,220 @@ public class SortHelper implements Comparator, Serializable, List {
 		}
 		return false;
 	}
+
+	public boolean addOrder(String attribute, boolean ascending) {
+		if (attribute != null) {
+			return this.add(ascending ? attribute : attribute + " desc");
+		}
+		return false;
+	}
+
+	/** @return Returns the typed. */
+	public boolean isTyped() { return (this.typed); }
+	/** @param typed The typed to set. */
+	public void setTyped(boolean typed) { this.typed = typed; }
+	/** @return Returns the parallelThreshold. */
+	public int getParallelThreshold() { return (this.parallelThreshold); }
+	/** @param parallelThreshold The parallelThreshold to set. 0 never sorts in parallel. */
+	public void setParallelThreshold(int parallelThreshold) { this.parallelThreshold = parallelThreshold; }
+
+	/**
+	 * The attributes and directions parsed from the sort orders.
+	 */
+	private static final class Orders {
+		private List source;
+		private String[] attributes;
+		private boolean[] ascending;
+
+		private Orders(List source) {
+			this.source = source;
+			this.attributes = new String[source.size()];
+			this.ascending = new boolean[source.size()];
+			for (int i=0; i<this.attributes.length; i++) {
+				String s = String.valueOf(source.get(i)).trim();
+				String lower = s.toLowerCase();
+				this.ascending[i] = true;
+				if (lower.endsWith(" desc")) {
+					s = s.substring(0, s.length() - 5).trim();
+					this.ascending[i] = false;
+				} else if (lower.endsWith(" asc")) {
+					s = s.substring(0, s.length() - 4).trim();
+				}
+				this.attributes[i] = s;
+			}
+		}
+	}
+
+	private Orders getOrders() {
+		Orders o = this.orders;
+		if (o == null || !o.source.equals(this.sortOrders)) {
+			o = new Orders(new ArrayList(this.sortOrders));
+			this.orders = o;
+		}
+		return o;
+	}
+
+	/**
+	 * Returns the readable properties of the class.
+	 */
+	private static Map findGetters(Class c) {
+		Map m = new HashMap();
+		try {
+			PropertyDescriptor[] pd = BeanUtil.getPropertyDescriptors(c);
+			for (int i=0; i<pd.length; i++) {
+				Method g = pd[i].getReadMethod();
+				if (g != null && !(pd[i] instanceof IndexedPropertyDescriptor)) {
+					try { g.setAccessible(true); } catch (Exception e) {}
+					m.put(pd[i].getName(), g);
+				}
+			}
+		} catch (IntrospectionException e) {
+			if (log.isDebugEnabled()) { log.debug(e); }
+		}
+		return m;
+	}
+
+	/**
+	 * Returns the value of the attribute of the object. Beans are read
+	 * through the cached getters and the others through PropertyUtils.
+	 */
+	static Object getValue(Object o, String attribute) {
+		try {
+			if (o instanceof Map) {
+				return ((Map)o).get(attribute);
+			}
+			Method g = (Method)((Map)getters.get(o.getClass())).get(attribute);
+			if (g != null) {
+				return g.invoke(o, (Object[])null);
+			}
+			return PropertyUtils.getProperty(o, attribute);
+		} catch (Exception e) {
+			if (log.isDebugEnabled()) { log.debug(e); }
+		}
+		return null;
+	}
+
+	/**
+	 * Compares two values with a total order. Nulls come first, then the
+	 * numbers compared exactly by value whatever their class, then the
+	 * dates compared by time, to the nanosecond of a Timestamp, whatever
+	 * their class, then the other values by class name. The values of the same class are compared with their
+	 * natural ordering, or their string when they have none.
+	 */
+	static int compareValue(Object v1, Object v2) {
+		if (v1 == v2) {
+			return 0;
+		} else if (v1 == null) {
+			return -1;
+		} else if (v2 == null) {
+			return 1;
+		}
+		boolean n1 = v1 instanceof Number;
+		boolean n2 = v2 instanceof Number;
+		if (n1 && n2) {
+			return compareNumber((Number)v1, (Number)v2);
+		} else if (n1 != n2) {
+			return n1 ? -1 : 1;
+		}
+		boolean d1 = v1 instanceof Date;
+		boolean d2 = v2 instanceof Date;
+		if (d1 && d2) {
+			long t1 = ((Date)v1).getTime();
+			long t2 = ((Date)v2).getTime();
+			if (t1 != t2) {
+				return (t1 < t2) ? -1 : 1;
+			}
+			int s1 = KeyNormalizer.getSubMillis((Date)v1);
+			int s2 = KeyNormalizer.getSubMillis((Date)v2);
+			return (s1 < s2) ? -1 : ((s1 == s2) ? 0 : 1);
+		} else if (d1 != d2) {
+			return d1 ? -1 : 1;
+		}
+		Class c1 = v1.getClass();
+		Class c2 = v2.getClass();
+		if (c1 != c2) {
+			int c = c1.getName().compareTo(c2.getName());
+			if (c != 0) {
+				return c;
+			}
+		} else if (v1 instanceof Comparable) {
+			return ((Comparable)v1).compareTo(v2);
+		}
+		return v1.toString().compareTo(v2.toString());
+	}
+
+	/**
+	 * Compares the numbers by value. The infinities and NaN of the
+	 * floating point numbers come after all the others, in the order
+	 * of Double.compare, and -0.0 equals 0.
+	 */
+	private static int compareNumber(Number v1, Number v2) {
+		int s1 = special(v1);
+		int s2 = special(v2);
+		if (s1 != 0 || s2 != 0) {
+			return (s1 < s2) ? -1 : ((s1 == s2) ? 0 : 1);
+		}
+		if (v1.getClass() == v2.getClass() && (v1 instanceof Integer || v1 instanceof Long
+				|| v1 instanceof Short || v1 instanceof Byte || v1 instanceof BigInteger)) {
+			return ((Comparable)v1).compareTo(v2);
+		}
+		return KeyNormalizer.toBigDecimal(v1).compareTo(KeyNormalizer.toBigDecimal(v2));
+	}
+
+	/**
+	 * @return -1 for -Infinity, 1 for Infinity, 2 for NaN, otherwise 0
+	 */
+	private static int special(Number n) {
+		if (n instanceof Double || n instanceof Float) {
+			double d = n.doubleValue();
+			if (Double.isNaN(d)) {
+				return 2;
+			} else if (Double.isInfinite(d)) {
+				return (d > 0) ? 1 : -1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Extracts the values of the attributes of the element. The element
+	 * itself is kept in the last slot.
+	 */
+	private static Object[] extractKey(Object o, String[] attributes) {
+		Object[] key = new Object[attributes.length + 1];
+		key[attributes.length] = o;
+		if (o != null) {
+			for (int i=0; i<attributes.length; i++) {
+				key[i] = getValue(o, attributes[i]);
+			}
+		}
+		return key;
+	}
+
+	private static int compareKey(Object[] k1, Object[] k2, boolean[] ascending) {
+		int n = ascending.length;
+		if (k1[n] == null || k2[n] == null) {
+			return (k1[n] == null) ? ((k2[n] == null) ? 0 : -1) : 1;
+		}
+		for (int i=0; i<n; i++) {
+			int c = compareValue(k1[i], k2[i]);
+			if (c != 0) {
+				return ascending[i] ? c : -c;
+			}
+		}
+		return 0;
+	}
 	
 	public int compare(Object o1, Object o2) {
 		if (this.sortOrders == null || this.sortOrders.size() == 0) {
 			return 0;
 		}
+		if (this.typed) {
+			Orders orders = this.getOrders();
+			return compareKey(extractKey(o1, orders.attributes), extractKey(o2, orders.attributes), orders.ascending);
+		}
+		Orders orders = this.getOrders();
+		String[] attributes = orders.attributes;
 		if (o1 == null && o2 == null) {
 			return 0;
 		} else if (o1 != null && o2 == null) {
@@ -91,8 +327,16 @@ public class SortHelper implements Comparator, Serializable, List {
 			StringBuffer sb2 = new StringBuffer();
 			WrapDynaBean bean1 = new WrapDynaBean(o1);
 			WrapDynaBean bean2 = new WrapDynaBean(o2);
-			for (int i=0; i<this.sortOrders.size(); i++) {
-				String attribute = (String)this.sortOrders.get(i);
+			for (int i=0; i<attributes.length; i++) {
+				if (i > 0 && orders.ascending[i] != orders.ascending[i-1]) {
+					int c = sb1.toString().compareTo(sb2.toString());
+					if (c != 0) {
+						return orders.ascending[i-1] ? c : -c;
+					}
+					sb1.setLength(0);
+					sb2.setLength(0);
+				}
+				String attribute = attributes[i];
 				try {
 					Object value1 = bean1.get(attribute);
 					Object value2 = bean2.get(attribute);
@@ -102,7 +346,8 @@ public class SortHelper implements Comparator, Serializable, List {
 					if (log.isDebugEnabled()) { log.debug(e); }
 				}
 			}
-			return sb1.toString().compareTo(sb2.toString());
+			int c = sb1.toString().compareTo(sb2.toString());
+			return orders.ascending[attributes.length-1] ? c : -c;
 		}
 		return 0;
 	}
@@ -128,11 +373,172 @@ public class SortHelper implements Comparator, Serializable, List {
 	 * @param l the list to be sorted
 	 */
 	public void sort(List l) {
-		if (l != null) {
+		if (l == null) {
+			return;
+		}
+		if (!this.typed) {
 			Collections.sort(l, this);
+			return;
+		}
+		final Orders orders = this.getOrders();
+		if (orders.attributes.length == 0) {
+			return;
+		}
+		Object[][] keys = new Object[l.size()][];
+		Iterator iter = l.iterator();
+		for (int i=0; i<keys.length; i++) {
+			keys[i] = extractKey(iter.next(), orders.attributes);
+		}
+		Comparator c = new Comparator() {
+			public int compare(Object o1, Object o2) {
+				return compareKey((Object[])o1, (Object[])o2, orders.ascending);
+			}
+		};
+		if (this.parallelThreshold > 0 && keys.length >= this.parallelThreshold) {
+			Arrays.parallelSort(keys, c);
+		} else {
+			Arrays.sort(keys, c);
+		}
+		int n = orders.attributes.length;
+		ListIterator li = l.listIterator();
+		for (int i=0; i<keys.length; i++) {
+			li.next();
+			li.set(keys[i][n]);
 		}
 	}
 	
+	/**
+	 * The values of the attributes of a group, compared by equals once
+	 * normalized by {@link KeyNormalizer}, so that the values equal in
+	 * the typed sort, such as an Integer 1 and a Double 1.0 or a Date and
+	 * a Timestamp of the same time, fall in the same group.
+	 */
+	public static final class GroupKey implements Serializable {
+		public static final long serialVersionUID = 20261018103940L;
+		private Object[] values;
+		private Object[] keys;
+		private int hash;
+
+		private GroupKey(Object[] values) {
+			this.values = values;
+			this.keys = new Object[values.length];
+			for (int i=0; i<values.length; i++) {
+				this.keys[i] = KeyNormalizer.normalize(values[i]);
+			}
+			this.hash = Arrays.hashCode(this.keys);
+		}
+		/** @return Returns the number of values. */
+		public int size() { return (this.values.length); }
+		/** @return Returns the value of the attribute at the index. */
+		public Object get(int index) { return (this.values[index]); }
+		public int hashCode() { return this.hash; }
+		public boolean equals(Object o) {
+			if (o == this) {
+				return true;
+			}
+			if (!(o instanceof GroupKey)) {
+				return false;
+			}
+			GroupKey k = (GroupKey)o;
+			return (this.hash == k.hash && Arrays.equals(this.keys, k.keys));
+		}
+		public String toString() {
+			StringBuffer sb = new StringBuffer();
+			sb.append("[GroupKey");
+			for (int i=0; i<this.values.length; i++) {
+				sb.append("|").append(this.values[i]);
+			}
+			sb.append("]");
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * Groups the elements by the values of the sort attributes in a
+	 * single pass. Unlike split the list does not need to be sorted.
+	 * The map returned is keyed by {@link GroupKey} in the order the
+	 * groups are first found and each group keeps the order of the list.
+	 * The list is grouped in parallel from parallelThreshold elements.
+	 */
+	public Map group(List l) {
+		int parallelism = 1;
+		if (l != null && this.parallelThreshold > 0 && l.size() >= this.parallelThreshold) {
+			parallelism = Runtime.getRuntime().availableProcessors();
+		}
+		return this.group(l, parallelism);
+	}
+
+	/**
+	 * Groups the elements with the parallelism given. Each thread groups
+	 * a range of the list and the partial maps are merged in the order
+	 * of the ranges.
+	 */
+	public Map group(List l, int parallelism) {
+		Map map = new LinkedHashMap();
+		if (l == null || l.size() == 0 || this.sortOrders.isEmpty()) {
+			return map;
+		}
+		final String[] attributes = this.getOrders().attributes;
+		int size = l.size();
+		parallelism = Math.max(1, Math.min(parallelism, size));
+		if (parallelism == 1) {
+			groupRange(l, attributes, map);
+			return map;
+		}
+		List futures = new ArrayList(parallelism);
+		for (int i=0; i<parallelism; i++) {
+			final List range = l.subList((int)((long)size * i / parallelism), (int)((long)size * (i + 1) / parallelism));
+			futures.add(ForkJoinPool.commonPool().submit(new Callable() {
+				public Object call() {
+					return groupRange(range, attributes, new LinkedHashMap());
+				}
+			}));
+		}
+		for (int i=0; i<futures.size(); i++) {
+			Map partial = null;
+			try {
+				partial = (Map)((Future)futures.get(i)).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted in grouping");
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Failed in grouping", e.getCause());
+			}
+			Iterator iter = partial.entrySet().iterator();
+			while (iter.hasNext()) {
+				Map.Entry entry = (Map.Entry)iter.next();
+				List group = (List)map.get(entry.getKey());
+				if (group == null) {
+					map.put(entry.getKey(), entry.getValue());
+				} else {
+					group.addAll((List)entry.getValue());
+				}
+			}
+		}
+		return map;
+	}
+
+	private static Map groupRange(List l, String[] attributes, Map map) {
+		Iterator iter = l.iterator();
+		while (iter.hasNext()) {
+			Object o = iter.next();
+			Object[] values = new Object[attributes.length];
+			if (o != null) {
+				for (int i=0; i<attributes.length; i++) {
+					values[i] = getValue(o, attributes[i]);
+				}
+			}
+			GroupKey key = new GroupKey(values);
+			List group = (List)map.get(key);
+			if (group == null) {
+				group = new ArrayList();
+				map.put(key, group);
+			}
+			group.add(o);
+		}
+		return map;
+	}
+
 	/**
 	 * Split the list into the separate list according
 	 * the sort attributes
@@ -142,7 +548,8 @@ public class SortHelper implements Comparator, Serializable, List {
 	}
 	/**
 	 * Split the list into the separate list according
-	 * the sort attributes
+	 * the sort attributes. The direction of the attributes only
+	 * applies to the sort of the list before it is split.
 	 */
 	public Map split(List l, boolean preSortList) {
 		
@@ -161,6 +568,7 @@ public class SortHelper implements Comparator, Serializable, List {
 		if (this.sortOrders.isEmpty()) {
 			return map;
 		}
+		String[] attributes = this.getOrders().attributes;
 		// Sort the existing list
 		if (preSortList) {
 			this.sort(l);
@@ -177,8 +585,8 @@ public class SortHelper implements Comparator, Serializable, List {
 			try {
 				// current key
 				currKey.clear();
-				for (int j=0; j<this.sortOrders.size(); j++) {
-					String attribute = (String)this.sortOrders.get(j);
+				for (int j=0; j<attributes.length; j++) {
+					String attribute = attributes[j];
 					Object value = bean.get(attribute);
 					if (value != null) {
 						currKey.add(attribute+value);
@@ -769,72 +769,15 @@ if (log.isDebugEnabled()) {
 	 * System.out.println(map.get("name")); // John
 	 * System.out.println(map.get("self")); // Peter
 	 * </code>
+	 * The template is compiled once, see {@link TemplateMatcher}.
 	 * @param template the template string
 	 * @param template the input string
 	 */
 	public static Map extractParameterValue(String input, String template, String start, String end) {
-		Map map = new HashMap();
 		if (template == null || input == null || start == null || end == null) {
-			return map;
-		}
-		Collection c = StringUtil.extractParameter(template, start, end);
-		if (c == null || c.size() == 0) {
-			return map;
-		}
-		ArrayList param = null;
-		if (c instanceof ArrayList) {
-			param = (ArrayList)c;
-		} else {
-			param = new ArrayList();
-			param.addAll(c);
-		}
-		String[] envelop = new String[c.size() + 1];
-		int prevIndex = 0;
-		int currIndex = -1;
-		int i = 0;
-		for (i=0; i<param.size(); i++) {
-			String s = (String)param.get(i);
-			currIndex = template.indexOf(s, prevIndex);
-			currIndex -= start.length();
-			if (currIndex > template.length()) {
-				continue;
-			}
-			envelop[i] = template.substring(prevIndex, currIndex);
-			prevIndex = currIndex + start.length() + s.length() + end.length();
-		}
-		if (prevIndex > 0) {
-			envelop[i] = template.substring(prevIndex, template.length());
-		}
-		prevIndex = 0;
-		for (i=1; i<envelop.length; i++) {
-			if (envelop[i] == null || envelop[i-1] == null) {
-				break;
-			}
-			prevIndex = input.indexOf(envelop[i-1], prevIndex);
-			if (prevIndex > input.length() || prevIndex < 0) {
-				break;
-			}
-			prevIndex += envelop[i-1].length();
-			if (envelop[i].equals("")) {
-				if (i == envelop.length - 1) {
-					currIndex = input.length();
-				} else {
-					currIndex = input.indexOf(envelop[i+1], prevIndex);
-				}
-			} else {
-				currIndex = input.indexOf(envelop[i], prevIndex);
-			}
-			if (currIndex < 0 || currIndex > input.length()) {
-				break;
-			}
-			String key = (String)param.get(i-1);
-			String value = input.substring(prevIndex, currIndex);
-			if (key != null && value != null) {
-				map.put(key, value);
-			}
+			return new HashMap();
 		}
-		
-		return map;
+		return TemplateMatcher.compile(template, start, end).matchMap(input);
 	}
 	
 	public static Map extractParameterValue(String input, String template) {
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2004 Senunkan Shinryuu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Created on Oct 18, 2026
+ *
+ */
+package org.latticesoft.util.common;
+
+import java.util.*;
+import org.latticesoft.util.container.ConcurrentCache;
+
+/**
+ * Extracts the values of the parameters of a template from an input
+ * string, as {@link StringUtil#extractParameterValue(String, String)}
+ * does, with the template parsed once. The literals between the
+ * parameters are the anchors searched in the input; the value of a
+ * parameter is the text between its anchors.
+ * <code>
+ * TemplateMatcher m = TemplateMatcher.compile("How are you? ${name}. My name is ${self}");
+ * String[] values = new String[m.size()];
+ * int n = m.match("How are you? John. My name is Peter", values);
+ * // n == 2, values == {"John", "Peter"}
+ * </code>
+ * The matchers are immutable and cached by template.
+ */
+public final class TemplateMatcher {
+	private static final ConcurrentCache cache = new ConcurrentCache(1024);
+	private ParameterTemplate template;
+	private String[] literals;
+	private String[] params;
+	private String anchor;
+
+	private TemplateMatcher(ParameterTemplate template) {
+		this.template = template;
+		this.params = new String[template.size()];
+		this.literals = new String[template.size() + 1];
+		for (int i=0; i<this.literals.length; i++) {
+			this.literals[i] = template.getLiteral(i);
+		}
+		for (int i=0; i<this.params.length; i++) {
+			this.params[i] = template.getParam(i);
+		}
+		// the literals around the first value are needed for any match
+		this.anchor = this.literals[0];
+		if (this.params.length > 0) {
+			String s = this.literals[1];
+			if (s.length() == 0 && this.params.length > 1) {
+				s = this.literals[2];
+			}
+			if (s.length() > this.anchor.length()) {
+				this.anchor = s;
+			}
+		}
+	}
+
+	/**
+	 * Returns the matcher of the template with ${ and } parameters.
+	 * @param template the template
+	 * @return the matcher
+	 */
+	public static TemplateMatcher compile(String template) {
+		return compile(template, MiscUtil.START, MiscUtil.END);
+	}
+
+	/**
+	 * Returns the matcher of the template.
+	 * @param template the template
+	 * @param start the string starting a parameter
+	 * @param end the string ending a parameter
+	 * @return the matcher
+	 */
+	public static TemplateMatcher compile(String template, String start, String end) {
+		ParameterTemplate t = ParameterTemplate.compile(template, start, end);
+		TemplateMatcher m = (TemplateMatcher)cache.get(t);
+		if (m == null) {
+			m = new TemplateMatcher(t);
+			cache.put(t, m);
+		}
+		return m;
+	}
+
+	/** @return Returns the template. */
+	public String getTemplate() { return (this.template.getSource()); }
+
+	/** @return the number of parameters */
+	public int size() {
+		return this.params.length;
+	}
+
+	/**
+	 * @param index the index of the parameter
+	 * @return the name of the parameter
+	 */
+	public String getParam(int index) {
+		return this.params[index];
+	}
+
+	/**
+	 * @return the longest of the literals around the first parameter,
+	 * which any input with at least one value found contains
+	 */
+	public String getAnchor() {
+		return (this.anchor);
+	}
+
+	/**
+	 * Extracts the values of the parameters from the input. The values
+	 * are found from the first parameter on, and the search stops at the
+	 * first anchor missing from the input.
+	 * @param input the input string
+	 * @param values the array receiving the values, of size() elements at least
+	 * @return the number of values found, the values of the first
+	 * parameters being set
+	 */
+	public int match(String input, String[] values) {
+		if (input == null) {
+			return 0;
+		}
+		String[] lit = this.literals;
+		int n = lit.length - 1;
+		int prevIndex = 0;
+		int currIndex = -1;
+		int count = 0;
+		for (int i=1; i<=n; i++) {
+			prevIndex = input.indexOf(lit[i-1], prevIndex);
+			if (prevIndex < 0) {
+				break;
+			}
+			prevIndex += lit[i-1].length();
+			if (lit[i].length() == 0) {
+				currIndex = (i == n) ? input.length() : input.indexOf(lit[i+1], prevIndex);
+			} else {
+				currIndex = input.indexOf(lit[i], prevIndex);
+			}
+			if (currIndex < 0) {
+				break;
+			}
+			values[i-1] = input.substring(prevIndex, currIndex);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Extracts the values of the parameters from the input into a map.
+	 * @param input the input string
+	 * @return the values by parameter name
+	 * @see #match(String, String[])
+	 */
+	public Map matchMap(String input) {
+		Map map = new HashMap();
+		if (this.params.length == 0) {
+			return map;
+		}
+		String[] values = new String[this.params.length];
+		int count = this.match(input, values);
+		for (int i=0; i<count; i++) {
+			map.put(this.params[i], values[i]);
+		}
+		return map;
+	}
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("[TemplateMatcher|");
+		sb.append(this.template.getSource());
+		sb.append("]");
+		return sb.toString();
+	}
+}
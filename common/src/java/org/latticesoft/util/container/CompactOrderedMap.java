@@ -0,0 +1,487 @@
+/*
+ * Copyright 2004 Senunkan Shinryuu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Created on Oct 18, 2026
+ *
+ */
+package org.latticesoft.util.container;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * <p>An insertion ordered map which stores each key once. The entries
+ * are kept in insertion order in compact parallel arrays, and a single
+ * open addressing table of ints maps a hash to the position of its
+ * entry. Every operation probes the table once.</p>
+ * <p>A remove leaves a hole in the entry arrays which is skipped by the
+ * iteration and reclaimed when the arrays are full, so remove is
+ * constant time. Replacing the value of a key keeps its position.
+ * Unlike {@link OrderedMap}, the keySet, values and entrySet are all
+ * in insertion order.</p>
+ * <p>The positions can be walked without creating any object:</p>
+ * <code>
+ * for (int i = map.first(); i >= 0; i = map.next(i)) {
+ *     Object key = map.keyAt(i);
+ *     Object value = map.valueAt(i);
+ * }
+ * </code>
+ * <p>The map is not synchronized.</p>
+ */
+public class CompactOrderedMap extends AbstractMap implements Serializable {
+
+	public static final long serialVersionUID = 1;
+
+	private static final Object NULL_KEY = new Object();
+	private static final Object REMOVED = new Object();
+	private static final int EMPTY = 0;
+	private static final int DELETED = -1;
+
+	/** The entry position + 1 of each slot, EMPTY or DELETED */
+	private transient int[] table;
+	private transient Object[] keys;
+	private transient Object[] values;
+	private transient int[] hashes;
+	/** The number of entry positions used including the holes */
+	private transient int used = 0;
+	private transient int size = 0;
+	private transient int modCount = 0;
+	private transient Set keySet;
+	private transient Collection valueCollection;
+	private transient Set entrySet;
+
+	/** Default constructor */
+	public CompactOrderedMap() {
+		this(8);
+	}
+
+	/**
+	 * Constructs the object
+	 * @param capacity the number of entries expected
+	 */
+	public CompactOrderedMap(int capacity) {
+		int n = 4;
+		while (n < capacity) {
+			n <<= 1;
+		}
+		this.allocate(n);
+	}
+
+	/**
+	 * Constructs the object with the entries of the map
+	 * @param map the entries to copy
+	 */
+	public CompactOrderedMap(Map map) {
+		this(map.size());
+		this.putAll(map);
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new Object[capacity];
+		this.values = new Object[capacity];
+		this.hashes = new int[capacity];
+		this.table = new int[capacity * 2];
+	}
+
+	private static int hash(Object key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private static Object mask(Object key) {
+		return (key == null) ? NULL_KEY : key;
+	}
+
+	/**
+	 * @return the table slot of the key or -1 if absent
+	 */
+	private int find(Object key, int hash) {
+		int mask = this.table.length - 1;
+		int i = hash & mask;
+		while (true) {
+			int slot = this.table[i];
+			if (slot == EMPTY) {
+				return -1;
+			}
+			if (slot != DELETED) {
+				int e = slot - 1;
+				if (this.hashes[e] == hash && (this.keys[e] == key || key.equals(this.keys[e]))) {
+					return i;
+				}
+			}
+			i = (i + 1) & mask;
+		}
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	public boolean containsKey(Object key) {
+		Object k = mask(key);
+		return this.find(k, hash(k)) >= 0;
+	}
+
+	public Object get(Object key) {
+		Object k = mask(key);
+		int i = this.find(k, hash(k));
+		return (i < 0) ? null : this.values[this.table[i] - 1];
+	}
+
+	/**
+	 * Adds the pair at the end of the order, or replaces the value of
+	 * the key in place.
+	 * @return the previous value
+	 */
+	public Object put(Object key, Object value) {
+		Object k = mask(key);
+		int hash = hash(k);
+		int mask = this.table.length - 1;
+		int i = hash & mask;
+		int free = -1;
+		while (true) {
+			int slot = this.table[i];
+			if (slot == EMPTY) {
+				break;
+			}
+			if (slot == DELETED) {
+				if (free < 0) {
+					free = i;
+				}
+			} else {
+				int e = slot - 1;
+				if (this.hashes[e] == hash && (this.keys[e] == k || k.equals(this.keys[e]))) {
+					Object old = this.values[e];
+					this.values[e] = value;
+					return old;
+				}
+			}
+			i = (i + 1) & mask;
+		}
+		if (this.used == this.keys.length) {
+			this.rebuild(this.size >= this.keys.length / 2 ? this.keys.length * 2 : this.keys.length);
+			this.insert(k, hash, value, -1);
+		} else {
+			this.insert(k, hash, value, (free >= 0) ? free : i);
+		}
+		return null;
+	}
+
+	/**
+	 * Appends the entry. The slot is looked up again if it is negative.
+	 */
+	private void insert(Object k, int hash, Object value, int slot) {
+		if (slot < 0) {
+			int mask = this.table.length - 1;
+			slot = hash & mask;
+			while (this.table[slot] > 0) {
+				slot = (slot + 1) & mask;
+			}
+		}
+		int e = this.used++;
+		this.keys[e] = k;
+		this.values[e] = value;
+		this.hashes[e] = hash;
+		this.table[slot] = e + 1;
+		this.size++;
+		this.modCount++;
+	}
+
+	/**
+	 * Compacts the entries into arrays of the capacity given and
+	 * rebuilds the table.
+	 */
+	private void rebuild(int capacity) {
+		Object[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+		int[] oldHashes = this.hashes;
+		int oldUsed = this.used;
+		this.allocate(capacity);
+		int mask = this.table.length - 1;
+		int n = 0;
+		for (int e=0; e<oldUsed; e++) {
+			if (oldKeys[e] == REMOVED) {
+				continue;
+			}
+			this.keys[n] = oldKeys[e];
+			this.values[n] = oldValues[e];
+			this.hashes[n] = oldHashes[e];
+			int i = oldHashes[e] & mask;
+			while (this.table[i] != EMPTY) {
+				i = (i + 1) & mask;
+			}
+			this.table[i] = n + 1;
+			n++;
+		}
+		this.used = n;
+	}
+
+	public Object remove(Object key) {
+		Object k = mask(key);
+		int i = this.find(k, hash(k));
+		if (i < 0) {
+			return null;
+		}
+		int e = this.table[i] - 1;
+		Object old = this.values[e];
+		this.table[i] = DELETED;
+		this.keys[e] = REMOVED;
+		this.values[e] = null;
+		this.size--;
+		this.modCount++;
+		return old;
+	}
+
+	public void putAll(Map m) {
+		Iterator iter = m.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry entry = (Map.Entry)iter.next();
+			this.put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	public void clear() {
+		java.util.Arrays.fill(this.table, EMPTY);
+		java.util.Arrays.fill(this.keys, 0, this.used, null);
+		java.util.Arrays.fill(this.values, 0, this.used, null);
+		this.used = 0;
+		this.size = 0;
+		this.modCount++;
+	}
+
+	/**
+	 * @return the first position in the order, -1 if empty
+	 */
+	public int first() {
+		return this.next(-1);
+	}
+
+	/**
+	 * @param position the current position
+	 * @return the position after the one given, -1 if none
+	 */
+	public int next(int position) {
+		for (int e=position+1; e<this.used; e++) {
+			if (this.keys[e] != REMOVED) {
+				return e;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the key at the position
+	 */
+	public Object keyAt(int position) {
+		Object k = this.keys[position];
+		return (k == NULL_KEY) ? null : k;
+	}
+
+	/**
+	 * @return the value at the position
+	 */
+	public Object valueAt(int position) {
+		return this.values[position];
+	}
+
+	/**
+	 * Returns the values in insertion order.
+	 * @return the list of values
+	 */
+	public List valuesList() {
+		List l = new ArrayList(this.size);
+		for (int e=this.first(); e>=0; e=this.next(e)) {
+			l.add(this.values[e]);
+		}
+		return l;
+	}
+
+	/**
+	 * Iterates over the values in insertion order.
+	 */
+	public Iterator iterator() {
+		return new PositionIterator(PositionIterator.VALUE);
+	}
+
+	public Set keySet() {
+		if (this.keySet == null) {
+			this.keySet = new AbstractSet() {
+				public Iterator iterator() { return new PositionIterator(PositionIterator.KEY); }
+				public int size() { return size; }
+				public boolean contains(Object o) { return containsKey(o); }
+				public boolean remove(Object o) {
+					int before = size;
+					CompactOrderedMap.this.remove(o);
+					return size != before;
+				}
+				public void clear() { CompactOrderedMap.this.clear(); }
+			};
+		}
+		return this.keySet;
+	}
+
+	public Collection values() {
+		if (this.valueCollection == null) {
+			this.valueCollection = new AbstractCollection() {
+				public Iterator iterator() { return new PositionIterator(PositionIterator.VALUE); }
+				public int size() { return size; }
+				public void clear() { CompactOrderedMap.this.clear(); }
+			};
+		}
+		return this.valueCollection;
+	}
+
+	public Set entrySet() {
+		if (this.entrySet == null) {
+			this.entrySet = new AbstractSet() {
+				public Iterator iterator() { return new PositionIterator(PositionIterator.ENTRY); }
+				public int size() { return size; }
+				public void clear() { CompactOrderedMap.this.clear(); }
+			};
+		}
+		return this.entrySet;
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(this.size);
+		for (int e=this.first(); e>=0; e=this.next(e)) {
+			out.writeObject(this.keyAt(e));
+			out.writeObject(this.values[e]);
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		int n = in.readInt();
+		int capacity = 4;
+		while (capacity < n) {
+			capacity <<= 1;
+		}
+		this.allocate(capacity);
+		for (int i=0; i<n; i++) {
+			Object key = in.readObject();
+			this.put(key, in.readObject());
+		}
+	}
+
+	/**
+	 * Iterates over the positions in order. The entries returned write
+	 * through to the map.
+	 */
+	private class PositionIterator implements Iterator {
+		private static final int KEY = 0;
+		private static final int VALUE = 1;
+		private static final int ENTRY = 2;
+		private int type;
+		private int next;
+		private int last = -1;
+		private int expectedModCount = modCount;
+
+		private PositionIterator(int type) {
+			this.type = type;
+			this.next = first();
+		}
+
+		public boolean hasNext() {
+			return this.next >= 0;
+		}
+
+		public Object next() {
+			if (modCount != this.expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (this.next < 0) {
+				throw new NoSuchElementException();
+			}
+			this.last = this.next;
+			this.next = CompactOrderedMap.this.next(this.next);
+			if (this.type == KEY) {
+				return keyAt(this.last);
+			} else if (this.type == VALUE) {
+				return values[this.last];
+			}
+			return new PositionEntry(this.last);
+		}
+
+		public void remove() {
+			if (this.last < 0) {
+				throw new IllegalStateException();
+			}
+			if (modCount != this.expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			CompactOrderedMap.this.remove(keyAt(this.last));
+			this.last = -1;
+			this.expectedModCount = modCount;
+		}
+	}
+
+	private class PositionEntry implements Map.Entry {
+		private int position;
+		private Object key;
+
+		private PositionEntry(int position) {
+			this.position = position;
+			this.key = keyAt(position);
+		}
+
+		public Object getKey() { return this.key; }
+
+		public Object getValue() {
+			return (keys[this.position] == mask(this.key)) ? values[this.position] : get(this.key);
+		}
+
+		public Object setValue(Object value) {
+			return put(this.key, value);
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry e = (Map.Entry)o;
+			Object v = this.getValue();
+			return (this.key == null ? e.getKey() == null : this.key.equals(e.getKey())) &&
+				(v == null ? e.getValue() == null : v.equals(e.getValue()));
+		}
+
+		public int hashCode() {
+			Object v = this.getValue();
+			return (this.key == null ? 0 : this.key.hashCode()) ^ (v == null ? 0 : v.hashCode());
+		}
+
+		public String toString() {
+			return this.key + "=" + this.getValue();
+		}
+	}
+}
@@ -0,0 +1,816 @@
+/*
+ * Copyright 2004 Senunkan Shinryuu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Created on Oct 18, 2026
+ *
+ */
+package org.latticesoft.util.container;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * <p>A thread safe bounded cache which can be shared by many threads,
+ * unlike the {@link ResetMap} family.</p>
+ * <p>The keys are spread over segments. Each segment keeps its entries
+ * in a ConcurrentHashMap so a get never takes a lock. The get only
+ * records the access in a small lossy buffer which is replayed on the
+ * eviction order when the segment lock is free. The writes take the
+ * lock of their segment only.</p>
+ * <p>Two admission policies are available. With {@link #ADMISSION_SLRU}
+ * the entries enter a probation segment and move to a protected
+ * segment when hit again, and the victim is the least recently used
+ * entry of the probation segment. {@link #ADMISSION_TINYLFU} adds a
+ * small admission window in front of the segmented LRU, and an entry
+ * leaving the window only replaces the probation victim if a frequency
+ * sketch shows it is used more often (W-TinyLFU).</p>
+ * <p>Each entry may have its own time to live. {@link #get(Object, Loader)}
+ * loads a missing value once per key, the other threads asking for the
+ * same key wait for that load. Null keys and values are not supported.</p>
+ * <code>
+ * ConcurrentCache cache = new ConcurrentCache(100000);
+ * cache.setDefaultTimeToLive(5 * 60 * 1000);
+ * Object value = cache.get(key, loader);
+ * </code>
+ */
+public class ConcurrentCache extends AbstractMap {
+
+	private static final Log log = LogFactory.getLog(ConcurrentCache.class);
+
+	public static final int ADMISSION_SLRU = 1;
+	public static final int ADMISSION_TINYLFU = 2;
+
+	private static final int WINDOW = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+	private static final int REMOVED = -1;
+	private static final int READ_BUFFER_SIZE = 32;
+
+	private Segment[] segments;
+	private int segmentMask;
+	private int maxSize;
+	private int admission;
+	private long defaultTimeToLive = 0;
+	private EvictionListener evictionListener;
+	private ConcurrentMap loading = new ConcurrentHashMap();
+	private Set entrySet;
+
+	private LongAdder hitCount = new LongAdder();
+	private LongAdder missCount = new LongAdder();
+	private LongAdder loadCount = new LongAdder();
+	private LongAdder loadFailureCount = new LongAdder();
+	private LongAdder evictionCount = new LongAdder();
+	private LongAdder expiredCount = new LongAdder();
+
+	/**
+	 * Loads the value of a key missing from the cache.
+	 */
+	public interface Loader {
+		/**
+		 * @return the value of the key, null if there is none
+		 */
+		public Object load(Object key) throws Exception;
+	}
+
+	/**
+	 * Constructs a W-TinyLFU cache with 16 segments.
+	 * @param maxSize the maximum number of entries
+	 */
+	public ConcurrentCache(int maxSize) {
+		this(maxSize, 16, ADMISSION_TINYLFU);
+	}
+
+	/**
+	 * Constructs the cache.
+	 * @param maxSize the maximum number of entries
+	 * @param concurrencyLevel the number of segments, rounded up to a power of 2
+	 * @param admission ADMISSION_SLRU or ADMISSION_TINYLFU
+	 */
+	public ConcurrentCache(int maxSize, int concurrencyLevel, int admission) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+		}
+		this.maxSize = maxSize;
+		this.admission = admission;
+		int count = 1;
+		while (count < concurrencyLevel && count < 1024 && count * 2 <= maxSize) {
+			count <<= 1;
+		}
+		this.segments = new Segment[count];
+		this.segmentMask = count - 1;
+		// the first segments take the remainder so the sizes sum up to maxSize
+		int segmentSize = maxSize / count;
+		int remainder = maxSize % count;
+		for (int i=0; i<count; i++) {
+			this.segments[i] = new Segment(i < remainder ? segmentSize + 1 : segmentSize);
+		}
+	}
+
+	/** @return Returns the maximum number of entries. */
+	public int getMaxSize() { return (this.maxSize); }
+
+	/** @return Returns the admission policy. */
+	public int getAdmission() { return (this.admission); }
+
+	/** @return Returns the time to live in milliseconds of the entries put without one, 0 for ever. */
+	public long getDefaultTimeToLive() { return (this.defaultTimeToLive); }
+	/** @param defaultTimeToLive The time to live in milliseconds of the entries put without one, 0 for ever. */
+	public void setDefaultTimeToLive(long defaultTimeToLive) { this.defaultTimeToLive = defaultTimeToLive; }
+
+	/** @return Returns the evictionListener. */
+	public EvictionListener getEvictionListener() { return (this.evictionListener); }
+	/** @param evictionListener The evictionListener to set. It is called outside the segment locks. */
+	public void setEvictionListener(EvictionListener evictionListener) { this.evictionListener = evictionListener; }
+
+	/** @return Returns the number of gets which found a value. */
+	public long getHitCount() { return this.hitCount.sum(); }
+	/** @return Returns the number of gets which found no value. */
+	public long getMissCount() { return this.missCount.sum(); }
+	/** @return Returns the number of values loaded. */
+	public long getLoadCount() { return this.loadCount.sum(); }
+	/** @return Returns the number of loads which failed. */
+	public long getLoadFailureCount() { return this.loadFailureCount.sum(); }
+	/** @return Returns the number of entries evicted for the size limit. */
+	public long getEvictionCount() { return this.evictionCount.sum(); }
+	/** @return Returns the number of entries expired. */
+	public long getExpiredCount() { return this.expiredCount.sum(); }
+
+	/**
+	 * @return the ratio of the hits over all the gets, 0 if there is none
+	 */
+	public double getHitRatio() {
+		long hit = this.hitCount.sum();
+		long total = hit + this.missCount.sum();
+		return (total == 0) ? 0 : ((double)hit / total);
+	}
+
+	/**
+	 * @return the statistics of the cache keyed by name
+	 */
+	public Map getStatistics() {
+		Map map = new HashMap();
+		map.put("size", Integer.valueOf(this.size()));
+		map.put("maxSize", Integer.valueOf(this.maxSize));
+		map.put("hitCount", Long.valueOf(this.getHitCount()));
+		map.put("missCount", Long.valueOf(this.getMissCount()));
+		map.put("loadCount", Long.valueOf(this.getLoadCount()));
+		map.put("loadFailureCount", Long.valueOf(this.getLoadFailureCount()));
+		map.put("evictionCount", Long.valueOf(this.getEvictionCount()));
+		map.put("expiredCount", Long.valueOf(this.getExpiredCount()));
+		map.put("hitRatio", Double.valueOf(this.getHitRatio()));
+		return map;
+	}
+
+	/**
+	 * Resets the statistics.
+	 */
+	public void resetStatistics() {
+		this.hitCount.reset();
+		this.missCount.reset();
+		this.loadCount.reset();
+		this.loadFailureCount.reset();
+		this.evictionCount.reset();
+		this.expiredCount.reset();
+	}
+
+	private Segment segmentFor(Object key) {
+		return this.segments[FrequencySketch.spread(key.hashCode()) & this.segmentMask];
+	}
+
+	public int size() {
+		long size = 0;
+		for (int i=0; i<this.segments.length; i++) {
+			size += this.segments[i].map.size();
+		}
+		return (int)Math.min(size, Integer.MAX_VALUE);
+	}
+
+	public boolean isEmpty() {
+		for (int i=0; i<this.segments.length; i++) {
+			if (!this.segments[i].map.isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean containsKey(Object key) {
+		return this.peek(key) != null;
+	}
+
+	/**
+	 * Returns the value of the key. The statistics are updated.
+	 * @return the value or null if absent or expired
+	 */
+	public Object get(Object key) {
+		if (key == null) {
+			return null;
+		}
+		Segment segment = this.segmentFor(key);
+		Node node = (Node)segment.map.get(key);
+		if (node == null) {
+			this.missCount.increment();
+			return null;
+		}
+		Object value = node.value;
+		if (node.isExpired(System.currentTimeMillis())) {
+			segment.expire(node);
+			this.missCount.increment();
+			return null;
+		}
+		segment.recordRead(node);
+		this.hitCount.increment();
+		return value;
+	}
+
+	/**
+	 * Returns the value of the key without recording the access or the
+	 * statistics.
+	 * @return the value or null if absent or expired
+	 */
+	public Object peek(Object key) {
+		if (key == null) {
+			return null;
+		}
+		Node node = (Node)this.segmentFor(key).map.get(key);
+		if (node == null || node.isExpired(System.currentTimeMillis())) {
+			return null;
+		}
+		return node.value;
+	}
+
+	/**
+	 * Returns the value of the key, loading it when missing. Only one
+	 * thread loads a given key, the others wait for its value.
+	 * @param key the key
+	 * @param loader loads the value when missing
+	 * @return the value or null if the loader returns null
+	 * @throws Exception the exception thrown by the loader
+	 */
+	public Object get(final Object key, final Loader loader) throws Exception {
+		Object value = this.get(key);
+		if (value != null) {
+			return value;
+		}
+		FutureTask task = new FutureTask(new Callable() {
+			public Object call() throws Exception {
+				return loader.load(key);
+			}
+		});
+		FutureTask existing = (FutureTask)this.loading.putIfAbsent(key, task);
+		if (existing == null) {
+			try {
+				value = this.peek(key);
+				if (value != null) {
+					return value;
+				}
+				task.run();
+				value = this.await(task);
+				this.loadCount.increment();
+				if (value != null) {
+					this.put(key, value);
+				}
+				return value;
+			} catch (Exception e) {
+				this.loadFailureCount.increment();
+				throw e;
+			} finally {
+				this.loading.remove(key, task);
+			}
+		}
+		return this.await(existing);
+	}
+
+	private Object await(FutureTask task) throws Exception {
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			Throwable t = e.getCause();
+			if (t instanceof Exception) {
+				throw (Exception)t;
+			} else if (t instanceof Error) {
+				throw (Error)t;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Puts the value with the default time to live.
+	 * @return the previous value
+	 */
+	public Object put(Object key, Object value) {
+		return this.put(key, value, this.defaultTimeToLive);
+	}
+
+	/**
+	 * Puts the value with its own time to live.
+	 * @param timeToLive the time in milliseconds the entry is kept, 0 for ever
+	 * @return the previous value
+	 */
+	public Object put(Object key, Object value, long timeToLive) {
+		if (key == null || value == null) {
+			throw new NullPointerException("Null key or value");
+		}
+		long expireAt = (timeToLive > 0) ? System.currentTimeMillis() + timeToLive : 0;
+		return this.segmentFor(key).put(key, value, expireAt);
+	}
+
+	public Object remove(Object key) {
+		if (key == null) {
+			return null;
+		}
+		return this.segmentFor(key).remove(key);
+	}
+
+	public void clear() {
+		for (int i=0; i<this.segments.length; i++) {
+			this.segments[i].clear();
+		}
+	}
+
+	/**
+	 * Removes all the expired entries.
+	 * @return the number of entries removed
+	 */
+	public int purge() {
+		int count = 0;
+		long now = System.currentTimeMillis();
+		for (int i=0; i<this.segments.length; i++) {
+			Iterator iter = this.segments[i].map.values().iterator();
+			while (iter.hasNext()) {
+				Node node = (Node)iter.next();
+				if (node.isExpired(now) && this.segments[i].expire(node)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns a weakly consistent view of the entries which are not expired.
+	 */
+	public Set entrySet() {
+		if (this.entrySet == null) {
+			this.entrySet = new EntrySet();
+		}
+		return this.entrySet;
+	}
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("[ConcurrentCache|size:");
+		sb.append(this.size());
+		sb.append("|maxSize:");
+		sb.append(this.maxSize);
+		sb.append("|hit:");
+		sb.append(this.getHitCount());
+		sb.append("|miss:");
+		sb.append(this.getMissCount());
+		sb.append("|eviction:");
+		sb.append(this.getEvictionCount());
+		sb.append("]");
+		return sb.toString();
+	}
+
+	private void notify(List evicted, int cause) {
+		if (evicted == null || this.evictionListener == null) {
+			return;
+		}
+		for (int i=0; i<evicted.size(); i++) {
+			Node node = (Node)evicted.get(i);
+			try {
+				this.evictionListener.evicted(node.key, node.value, cause);
+			} catch (Exception e) {
+				if (log.isErrorEnabled()) {
+					log.error("Exception in eviction listener", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * An entry of the cache, also a node of one of the eviction queues.
+	 * The links and the queue are guarded by the segment lock. Setting
+	 * the value of an entry puts it into the cache.
+	 */
+	private class Node implements Map.Entry {
+		private final Object key;
+		private volatile Object value;
+		private volatile long expireAt;
+		private int queue = WINDOW;
+		private Node before;
+		private Node after;
+
+		private Node(Object key, Object value, long expireAt) {
+			this.key = key;
+			this.value = value;
+			this.expireAt = expireAt;
+		}
+
+		private boolean isExpired(long now) {
+			long t = this.expireAt;
+			return t != 0 && now >= t;
+		}
+
+		public Object getKey() { return this.key; }
+		public Object getValue() { return this.value; }
+		public Object setValue(Object value) {
+			Object old = this.value;
+			put(this.key, value);
+			return old;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry e = (Map.Entry)o;
+			return this.key.equals(e.getKey()) && this.value.equals(e.getValue());
+		}
+
+		public int hashCode() {
+			return this.key.hashCode() ^ this.value.hashCode();
+		}
+
+		public String toString() {
+			return this.key + "=" + this.value;
+		}
+	}
+
+	/**
+	 * A doubly linked list of nodes from the least to the most recently used.
+	 */
+	private static class NodeQueue {
+		private Node head;
+		private Node tail;
+		private int size = 0;
+
+		private void add(Node node) {
+			node.before = this.tail;
+			node.after = null;
+			if (this.tail == null) {
+				this.head = node;
+			} else {
+				this.tail.after = node;
+			}
+			this.tail = node;
+			this.size++;
+		}
+
+		private void remove(Node node) {
+			if (node.before == null) {
+				this.head = node.after;
+			} else {
+				node.before.after = node.after;
+			}
+			if (node.after == null) {
+				this.tail = node.before;
+			} else {
+				node.after.before = node.before;
+			}
+			node.before = null;
+			node.after = null;
+			this.size--;
+		}
+
+		private void moveToTail(Node node) {
+			if (this.tail != node) {
+				this.remove(node);
+				this.add(node);
+			}
+		}
+
+		private void clear() {
+			this.head = null;
+			this.tail = null;
+			this.size = 0;
+		}
+	}
+
+	private class Segment {
+		private final ReentrantLock lock = new ReentrantLock();
+		private final ConcurrentHashMap map;
+		private final NodeQueue window = new NodeQueue();
+		private final NodeQueue probation = new NodeQueue();
+		private final NodeQueue protect = new NodeQueue();
+		private final AtomicReferenceArray readBuffer = new AtomicReferenceArray(READ_BUFFER_SIZE);
+		private final AtomicInteger readCount = new AtomicInteger();
+		private final FrequencySketch sketch;
+		private final int maxSize;
+		private final int windowMax;
+		private final int protectedMax;
+
+		private Segment(int maxSize) {
+			this.maxSize = maxSize;
+			this.map = new ConcurrentHashMap(Math.min(maxSize, 1 << 16));
+			if (admission == ADMISSION_TINYLFU) {
+				this.sketch = new FrequencySketch(maxSize);
+				this.windowMax = Math.max(1, maxSize / 100);
+			} else {
+				this.sketch = null;
+				this.windowMax = 0;
+			}
+			this.protectedMax = (maxSize - this.windowMax) * 4 / 5;
+		}
+
+		/**
+		 * Records a read without locking. The buffer is lossy, a slot may
+		 * be overwritten before it is drained.
+		 */
+		private void recordRead(Node node) {
+			int i = this.readCount.getAndIncrement();
+			this.readBuffer.lazySet(i & (READ_BUFFER_SIZE - 1), node);
+			if ((i & (READ_BUFFER_SIZE - 1)) == READ_BUFFER_SIZE - 1 && this.lock.tryLock()) {
+				try {
+					this.drainReads();
+				} finally {
+					this.lock.unlock();
+				}
+			}
+		}
+
+		/** Replays the reads recorded. Called with the lock held. */
+		private void drainReads() {
+			for (int i=0; i<READ_BUFFER_SIZE; i++) {
+				Node node = (Node)this.readBuffer.getAndSet(i, null);
+				if (node != null) {
+					this.onAccess(node);
+				}
+			}
+		}
+
+		private void onAccess(Node node) {
+			if (node.queue == REMOVED) {
+				return;
+			}
+			if (this.sketch != null) {
+				this.sketch.increment(node.key);
+			}
+			if (node.queue == WINDOW) {
+				this.window.moveToTail(node);
+			} else if (node.queue == PROBATION) {
+				this.probation.remove(node);
+				node.queue = PROTECTED;
+				this.protect.add(node);
+				if (this.protect.size > this.protectedMax) {
+					Node demoted = this.protect.head;
+					this.protect.remove(demoted);
+					demoted.queue = PROBATION;
+					this.probation.add(demoted);
+				}
+			} else {
+				this.protect.moveToTail(node);
+			}
+		}
+
+		private Object put(Object key, Object value, long expireAt) {
+			Object old = null;
+			List replaced = null;
+			List evicted = null;
+			List expired = null;
+			this.lock.lock();
+			try {
+				this.drainReads();
+				Node node = (Node)this.map.get(key);
+				if (node != null) {
+					old = node.value;
+					node.value = value;
+					node.expireAt = expireAt;
+					this.onAccess(node);
+					if (old != value) {
+						replaced = new ArrayList(1);
+						replaced.add(new Node(key, old, 0));
+					}
+				} else {
+					node = new Node(key, value, expireAt);
+					this.map.put(key, node);
+					if (this.sketch != null) {
+						this.sketch.increment(key);
+					}
+					if (this.windowMax > 0) {
+						node.queue = WINDOW;
+						this.window.add(node);
+					} else {
+						node.queue = PROBATION;
+						this.probation.add(node);
+					}
+					Node candidate = null;
+					if (this.window.size > this.windowMax) {
+						candidate = this.window.head;
+						this.window.remove(candidate);
+						candidate.queue = PROBATION;
+						this.probation.add(candidate);
+					}
+					long now = System.currentTimeMillis();
+					while (this.map.size() > this.maxSize) {
+						Node victim = this.victim();
+						if (candidate != null && candidate != victim && candidate.queue == PROBATION
+								&& !victim.isExpired(now)
+								&& this.sketch.frequency(candidate.key) <= this.sketch.frequency(victim.key)) {
+							victim = candidate;
+						}
+						if (victim == candidate) {
+							candidate = null;
+						}
+						this.unlink(victim);
+						this.map.remove(victim.key, victim);
+						if (victim.isExpired(now)) {
+							if (expired == null) { expired = new ArrayList(); }
+							expired.add(victim);
+						} else {
+							if (evicted == null) { evicted = new ArrayList(); }
+							evicted.add(victim);
+						}
+					}
+				}
+			} finally {
+				this.lock.unlock();
+			}
+			if (evicted != null) {
+				evictionCount.add(evicted.size());
+			}
+			if (expired != null) {
+				expiredCount.add(expired.size());
+			}
+			ConcurrentCache.this.notify(replaced, EvictionListener.CAUSE_REPLACED);
+			ConcurrentCache.this.notify(evicted, EvictionListener.CAUSE_SIZE);
+			ConcurrentCache.this.notify(expired, EvictionListener.CAUSE_EXPIRED);
+			return old;
+		}
+
+		private Node victim() {
+			if (this.probation.head != null) {
+				return this.probation.head;
+			} else if (this.protect.head != null) {
+				return this.protect.head;
+			}
+			return this.window.head;
+		}
+
+		private void unlink(Node node) {
+			if (node.queue == WINDOW) {
+				this.window.remove(node);
+			} else if (node.queue == PROBATION) {
+				this.probation.remove(node);
+			} else if (node.queue == PROTECTED) {
+				this.protect.remove(node);
+			}
+			node.queue = REMOVED;
+		}
+
+		private Object remove(Object key) {
+			this.lock.lock();
+			try {
+				Node node = (Node)this.map.remove(key);
+				if (node == null) {
+					return null;
+				}
+				this.unlink(node);
+				return node.value;
+			} finally {
+				this.lock.unlock();
+			}
+		}
+
+		/**
+		 * Removes the node if it is still the entry of its key.
+		 * @return true if removed
+		 */
+		private boolean expire(Node node) {
+			boolean removed = false;
+			this.lock.lock();
+			try {
+				if (node.queue != REMOVED && this.map.remove(node.key, node)) {
+					this.unlink(node);
+					removed = true;
+				}
+			} finally {
+				this.lock.unlock();
+			}
+			if (removed) {
+				expiredCount.increment();
+				if (evictionListener != null) {
+					List list = new ArrayList(1);
+					list.add(node);
+					ConcurrentCache.this.notify(list, EvictionListener.CAUSE_EXPIRED);
+				}
+			}
+			return removed;
+		}
+
+		private void clear() {
+			this.lock.lock();
+			try {
+				Iterator iter = this.map.values().iterator();
+				while (iter.hasNext()) {
+					((Node)iter.next()).queue = REMOVED;
+				}
+				this.map.clear();
+				this.window.clear();
+				this.probation.clear();
+				this.protect.clear();
+				for (int i=0; i<READ_BUFFER_SIZE; i++) {
+					this.readBuffer.set(i, null);
+				}
+			} finally {
+				this.lock.unlock();
+			}
+		}
+	}
+
+	private class EntrySet extends AbstractSet {
+		public int size() {
+			return ConcurrentCache.this.size();
+		}
+
+		public void clear() {
+			ConcurrentCache.this.clear();
+		}
+
+		public Iterator iterator() {
+			return new EntryIterator();
+		}
+	}
+
+	private class EntryIterator implements Iterator {
+		private int segment = 0;
+		private Iterator current = null;
+		private Node next = null;
+		private Node last = null;
+		private long now = System.currentTimeMillis();
+
+		private EntryIterator() {
+			this.advance();
+		}
+
+		private void advance() {
+			this.next = null;
+			while (this.next == null) {
+				if (this.current != null && this.current.hasNext()) {
+					Node node = (Node)this.current.next();
+					if (!node.isExpired(this.now)) {
+						this.next = node;
+					}
+				} else if (this.segment < segments.length) {
+					this.current = segments[this.segment++].map.values().iterator();
+				} else {
+					return;
+				}
+			}
+		}
+
+		public boolean hasNext() {
+			return this.next != null;
+		}
+
+		public Object next() {
+			if (this.next == null) {
+				throw new NoSuchElementException();
+			}
+			this.last = this.next;
+			this.advance();
+			return this.last;
+		}
+
+		public void remove() {
+			if (this.last == null) {
+				throw new IllegalStateException();
+			}
+			ConcurrentCache.this.remove(this.last.key);
+			this.last = null;
+		}
+	}
+}
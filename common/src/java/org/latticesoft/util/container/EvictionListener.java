@@ -0,0 +1,42 @@
+/*
+ * Copyright 2004 Senunkan Shinryuu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Created on Oct 18, 2026
+ *
+ */
+package org.latticesoft.util.container;
+
+/**
+ * Notified when an entry leaves a cache for any reason other than an
+ * explicit remove or clear.
+ */
+public interface EvictionListener {
+	/** The entry count limit has been exceeded */
+	public static final int CAUSE_SIZE = 1;
+	/** The weight limit has been exceeded */
+	public static final int CAUSE_WEIGHT = 2;
+	/** The entry has expired */
+	public static final int CAUSE_EXPIRED = 3;
+	/** The value has been replaced */
+	public static final int CAUSE_REPLACED = 4;
+
+	/**
+	 * Called after the entry is removed from the cache.
+	 * @param key the key of the entry
+	 * @param value the value of the entry
+	 * @param cause one of the CAUSE constants
+	 */
+	public void evicted(Object key, Object value, int cause);
+}
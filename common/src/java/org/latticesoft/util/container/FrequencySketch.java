@@ -0,0 +1,108 @@
+/*
+ * Copyright 2004 Senunkan Shinryuu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Created on Oct 18, 2026
+ *
+ */
+package org.latticesoft.util.container;
+
+/**
+ * A count-min sketch of 4 bit counters estimating how often a key has
+ * been seen. The counters are halved once the number of increments
+ * reaches ten times the capacity so that the old history fades away.
+ * The sketch is not synchronized.
+ */
+class FrequencySketch {
+	private static final long[] SEEDS = {
+		0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private long[] table;
+	private int mask;
+	private int sampleSize;
+	private int additions = 0;
+
+	/**
+	 * @param capacity the number of entries expected
+	 */
+	FrequencySketch(int capacity) {
+		int size = 16;
+		while (size < capacity && size < (1 << 30)) {
+			size <<= 1;
+		}
+		this.table = new long[size];
+		this.mask = size - 1;
+		this.sampleSize = (capacity <= 0) ? 160 : (int)Math.min(10L * capacity, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @return the estimated frequency of the key, at most 15
+	 */
+	int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int min = 15;
+		for (int i=0; i<4; i++) {
+			int h = this.rehash(hash, i);
+			int count = (int)((this.table[h & this.mask] >>> this.offset(h)) & 0xfL);
+			if (count < min) {
+				min = count;
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * Increments the counters of the key.
+	 */
+	void increment(Object key) {
+		int hash = spread(key.hashCode());
+		boolean added = false;
+		for (int i=0; i<4; i++) {
+			int h = this.rehash(hash, i);
+			int index = h & this.mask;
+			int offset = this.offset(h);
+			if (((this.table[index] >>> offset) & 0xfL) != 0xfL) {
+				this.table[index] += (1L << offset);
+				added = true;
+			}
+		}
+		if (added && ++this.additions >= this.sampleSize) {
+			this.reset();
+		}
+	}
+
+	private void reset() {
+		for (int i=0; i<this.table.length; i++) {
+			this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+		}
+		this.additions = this.additions >>> 1;
+	}
+
+	private int rehash(int hash, int i) {
+		long h = (hash + SEEDS[i]) * SEEDS[i];
+		h += (h >>> 32);
+		return (int)h;
+	}
+
+	private int offset(int h) {
+		return ((h >>> 24) & 0xf) << 2;
+	}
+
+	static int spread(int h) {
+		h ^= (h >>> 17);
+		h *= 0xed5ad4bb;
+		h ^= (h >>> 11);
+		return h;
+	}
+}
@@ -24,6 +24,8 @@ import org.apache.commons.logging.Log;
 
 /**
  * This is an implementation of the Least Recently Used algorithm.
+ * The recent hits are scanned every maxCount gets, so for large maps
+ * use {@link LinkedLRUMap} which evicts in constant time.
  */
 public class LRUMap extends ResetMap {
 
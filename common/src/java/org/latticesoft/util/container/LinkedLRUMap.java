@@ -0,0 +1,530 @@
+/*
+ * Copyright 2004 Senunkan Shinryuu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Created on Oct 18, 2026
+ *
+ */
+package org.latticesoft.util.container;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * <p>A least recently used map. The entries are the nodes of a doubly
+ * linked list ordered from the least to the most recently used, and a
+ * hash index maps each key to its node. A get moves the node to the
+ * tail of the list, and the eviction removes the head, so get, put and
+ * evict are all constant time.</p>
+ * <p>The map can be limited by the number of entries and by the total
+ * weight of the entries as computed by a {@link Weigher}. An entry may
+ * also expire a fixed time after its last access or after it was
+ * written. Expired entries are removed when they are accessed or when
+ * they reach the head of the list; {@link #purge()} removes all of
+ * them at once. The {@link EvictionListener} is told of every entry
+ * evicted or expired.</p>
+ * <p>The iteration order is from the least to the most recently used
+ * and iterating does not change the order. As a get reorders the
+ * entries, it is a structural modification like in an access ordered
+ * LinkedHashMap: a get during an iteration makes the iterator fail
+ * fast. Use {@link #peek(Object)} to read while iterating. The map is
+ * not synchronized.</p>
+ * <code>
+ * LinkedLRUMap map = new LinkedLRUMap(100000);
+ * map.setMaxWeight(64 * 1024 * 1024);
+ * map.setWeigher(weigher);
+ * map.setExpireAfterAccess(10 * 60 * 1000);
+ * </code>
+ */
+public class LinkedLRUMap extends AbstractMap implements Serializable {
+
+	public static final long serialVersionUID = 1;
+
+	private transient Map index = new HashMap();
+	/** The least recently used node */
+	private transient Node head;
+	/** The most recently used node */
+	private transient Node tail;
+	private transient int modCount = 0;
+	private transient Set entrySet;
+	private long weight = 0;
+
+	protected int maxCount = -1;
+	protected long maxWeight = -1;
+	protected long expireAfterAccess = -1;
+	protected long expireAfterWrite = -1;
+	protected boolean processOff = false;
+	protected transient Weigher weigher;
+	protected transient EvictionListener evictionListener;
+
+	/** Default constructor. The map is not limited. */
+	public LinkedLRUMap() {
+	}
+
+	/**
+	 * Constructs the object
+	 * @param maxCount the maximum number of entries
+	 */
+	public LinkedLRUMap(int maxCount) {
+		this.setMaxCount(maxCount);
+	}
+
+	/**
+	 * Constructs the object
+	 * @param maxCount the maximum number of entries
+	 * @param expireAfterAccess the time in milliseconds an entry is kept after its last access
+	 */
+	public LinkedLRUMap(int maxCount, long expireAfterAccess) {
+		this.setMaxCount(maxCount);
+		this.setExpireAfterAccess(expireAfterAccess);
+	}
+
+	/** @return Returns the maximum number of entries, -1 if not limited. */
+	public int getMaxCount() { return (this.maxCount); }
+	/** @param maxCount The maximum number of entries, -1 if not limited. */
+	public void setMaxCount(int maxCount) {
+		this.maxCount = maxCount;
+		this.trim();
+	}
+
+	/** @return Returns the maximum total weight, -1 if not limited. */
+	public long getMaxWeight() { return (this.maxWeight); }
+	/** @param maxWeight The maximum total weight, -1 if not limited. */
+	public void setMaxWeight(long maxWeight) {
+		this.maxWeight = maxWeight;
+		this.trim();
+	}
+
+	/** @return Returns the time in milliseconds an entry is kept after its last access. */
+	public long getExpireAfterAccess() { return (this.expireAfterAccess); }
+	/** @param expireAfterAccess The time in milliseconds an entry is kept after its last access, -1 for ever. */
+	public void setExpireAfterAccess(long expireAfterAccess) { this.expireAfterAccess = expireAfterAccess; }
+
+	/** @return Returns the time in milliseconds an entry is kept after it is written. */
+	public long getExpireAfterWrite() { return (this.expireAfterWrite); }
+	/** @param expireAfterWrite The time in milliseconds an entry is kept after it is written, -1 for ever. */
+	public void setExpireAfterWrite(long expireAfterWrite) { this.expireAfterWrite = expireAfterWrite; }
+
+	/** Gets the process off flag */
+	public boolean getProcessOff() { return (this.processOff); }
+	/** Sets the process off flag. When set, a get does not change the order of the entries. */
+	public void setProcessOff(boolean processOff) { this.processOff = processOff; }
+
+	/** @return Returns the weigher. */
+	public Weigher getWeigher() { return (this.weigher); }
+	/** @param weigher The weigher to set. Without a weigher each entry weighs 1. */
+	public void setWeigher(Weigher weigher) { this.weigher = weigher; }
+
+	/** @return Returns the evictionListener. */
+	public EvictionListener getEvictionListener() { return (this.evictionListener); }
+	/** @param evictionListener The evictionListener to set. */
+	public void setEvictionListener(EvictionListener evictionListener) { this.evictionListener = evictionListener; }
+
+	/** @return Returns the total weight of the entries. */
+	public long getWeight() { return (this.weight); }
+
+	public int size() {
+		return this.index.size();
+	}
+
+	public boolean isEmpty() {
+		return this.index.isEmpty();
+	}
+
+	public boolean containsKey(Object key) {
+		Node node = (Node)this.index.get(key);
+		if (node == null) {
+			return false;
+		}
+		if (this.isExpired(node, this.now())) {
+			this.evict(node, EvictionListener.CAUSE_EXPIRED);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the value of the key and marks it as the most recently used.
+	 * Moving the entry is a structural modification of the map.
+	 * @return the value or null if absent or expired
+	 */
+	public Object get(Object key) {
+		Node node = (Node)this.index.get(key);
+		if (node == null) {
+			return null;
+		}
+		long now = this.now();
+		if (this.isExpired(node, now)) {
+			this.evict(node, EvictionListener.CAUSE_EXPIRED);
+			return null;
+		}
+		if (!this.processOff) {
+			node.accessed = now;
+			this.moveToTail(node);
+		}
+		return node.value;
+	}
+
+	/**
+	 * Returns the value of the key without changing the order of the entries.
+	 * @return the value or null if absent
+	 */
+	public Object peek(Object key) {
+		Node node = (Node)this.index.get(key);
+		return (node == null) ? null : node.value;
+	}
+
+	public Object put(Object key, Object value) {
+		long now = this.now();
+		int w = this.weigh(key, value);
+		Node node = (Node)this.index.get(key);
+		Object old = null;
+		if (node != null) {
+			node.accessed = now;
+			this.moveToTail(node);
+			old = this.replace(node, value, w, now);
+		} else {
+			node = new Node(key, value, w, now);
+			this.index.put(key, node);
+			this.linkLast(node);
+			this.weight += w;
+		}
+		this.modCount++;
+		this.expireHead(now);
+		this.trim();
+		return old;
+	}
+
+	/**
+	 * Replaces the value of a node without moving it nor trimming.
+	 * @return the old value
+	 */
+	private Object replace(Node node, Object value, int w, long now) {
+		Object old = node.value;
+		this.weight += w - node.weight;
+		node.value = value;
+		node.weight = w;
+		node.written = now;
+		if (old != value && this.evictionListener != null) {
+			this.evictionListener.evicted(node.key, old, EvictionListener.CAUSE_REPLACED);
+		}
+		return old;
+	}
+
+	public Object remove(Object key) {
+		Node node = (Node)this.index.remove(key);
+		if (node == null) {
+			return null;
+		}
+		this.unlink(node);
+		this.weight -= node.weight;
+		this.modCount++;
+		return node.value;
+	}
+
+	public void putAll(Map m) {
+		Iterator iter = m.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry e = (Map.Entry)iter.next();
+			this.put(e.getKey(), e.getValue());
+		}
+	}
+
+	public void clear() {
+		this.index.clear();
+		this.head = null;
+		this.tail = null;
+		this.weight = 0;
+		this.modCount++;
+	}
+
+	/**
+	 * Removes all the expired entries.
+	 * @return the number of entries removed
+	 */
+	public int purge() {
+		if (this.expireAfterAccess < 0 && this.expireAfterWrite < 0) {
+			return 0;
+		}
+		long now = this.now();
+		int count = 0;
+		Node node = this.head;
+		while (node != null) {
+			Node next = node.after;
+			if (this.isExpired(node, now)) {
+				this.evict(node, EvictionListener.CAUSE_EXPIRED);
+				count++;
+			}
+			node = next;
+		}
+		return count;
+	}
+
+	public Set entrySet() {
+		if (this.entrySet == null) {
+			this.entrySet = new EntrySet();
+		}
+		return this.entrySet;
+	}
+
+	/**
+	 * Evicts the least recently used entries until the limits are met.
+	 */
+	protected void trim() {
+		while (this.head != null) {
+			if (this.maxCount >= 0 && this.index.size() > this.maxCount) {
+				this.evict(this.head, EvictionListener.CAUSE_SIZE);
+			} else if (this.maxWeight >= 0 && this.weight > this.maxWeight) {
+				this.evict(this.head, EvictionListener.CAUSE_WEIGHT);
+			} else {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Removes the expired entries from the head of the list. The head is
+	 * the least recently accessed so the check stops at the first live entry.
+	 */
+	private void expireHead(long now) {
+		while (this.head != null && this.isExpired(this.head, now)) {
+			this.evict(this.head, EvictionListener.CAUSE_EXPIRED);
+		}
+	}
+
+	private void evict(Node node, int cause) {
+		this.index.remove(node.key);
+		this.unlink(node);
+		this.weight -= node.weight;
+		this.modCount++;
+		if (this.evictionListener != null) {
+			this.evictionListener.evicted(node.key, node.value, cause);
+		}
+	}
+
+	private boolean isExpired(Node node, long now) {
+		if (this.expireAfterAccess >= 0 && now - node.accessed >= this.expireAfterAccess) {
+			return true;
+		}
+		if (this.expireAfterWrite >= 0 && now - node.written >= this.expireAfterWrite) {
+			return true;
+		}
+		return false;
+	}
+
+	private long now() {
+		if (this.expireAfterAccess < 0 && this.expireAfterWrite < 0) {
+			return 0;
+		}
+		return System.currentTimeMillis();
+	}
+
+	private int weigh(Object key, Object value) {
+		if (this.weigher == null) {
+			return 1;
+		}
+		return this.weigher.weigh(key, value);
+	}
+
+	private void linkLast(Node node) {
+		node.before = this.tail;
+		node.after = null;
+		if (this.tail == null) {
+			this.head = node;
+		} else {
+			this.tail.after = node;
+		}
+		this.tail = node;
+	}
+
+	private void unlink(Node node) {
+		if (node.before == null) {
+			this.head = node.after;
+		} else {
+			node.before.after = node.after;
+		}
+		if (node.after == null) {
+			this.tail = node.before;
+		} else {
+			node.after.before = node.before;
+		}
+		node.before = null;
+		node.after = null;
+	}
+
+	private void moveToTail(Node node) {
+		if (this.tail != node) {
+			this.unlink(node);
+			this.linkLast(node);
+			this.modCount++;
+		}
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(this.index.size());
+		for (Node node = this.head; node != null; node = node.after) {
+			out.writeObject(node.key);
+			out.writeObject(node.value);
+			out.writeInt(node.weight);
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.index = new HashMap();
+		this.weight = 0;
+		int size = in.readInt();
+		long now = System.currentTimeMillis();
+		for (int i=0; i<size; i++) {
+			Object key = in.readObject();
+			Object value = in.readObject();
+			Node node = new Node(key, value, in.readInt(), now);
+			this.index.put(key, node);
+			this.linkLast(node);
+			this.weight += node.weight;
+		}
+	}
+
+	/**
+	 * The node of the list is also the entry of the map. Setting the
+	 * value of an entry is like a put except that the entry keeps its
+	 * place, so that it can be done while iterating.
+	 */
+	private class Node implements Map.Entry {
+		private Object key;
+		private Object value;
+		private int weight;
+		private long accessed;
+		private long written;
+		private Node before;
+		private Node after;
+
+		private Node(Object key, Object value, int weight, long now) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+			this.accessed = now;
+			this.written = now;
+		}
+
+		public Object getKey() { return this.key; }
+		public Object getValue() { return this.value; }
+		public Object setValue(Object value) {
+			if (index.get(this.key) != this) {
+				// no longer in the map
+				Object old = this.value;
+				this.value = value;
+				return old;
+			}
+			Object old = replace(this, value, weigh(this.key, value), now());
+			trim();
+			return old;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry e = (Map.Entry)o;
+			return (this.key == null ? e.getKey() == null : this.key.equals(e.getKey())) &&
+				(this.value == null ? e.getValue() == null : this.value.equals(e.getValue()));
+		}
+
+		public int hashCode() {
+			return (this.key == null ? 0 : this.key.hashCode()) ^ (this.value == null ? 0 : this.value.hashCode());
+		}
+
+		public String toString() {
+			return this.key + "=" + this.value;
+		}
+	}
+
+	private class EntrySet extends AbstractSet {
+		public int size() {
+			return index.size();
+		}
+
+		public void clear() {
+			LinkedLRUMap.this.clear();
+		}
+
+		public boolean contains(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Node node = (Node)index.get(((Map.Entry)o).getKey());
+			return node != null && node.equals(o);
+		}
+
+		public boolean remove(Object o) {
+			if (!this.contains(o)) {
+				return false;
+			}
+			LinkedLRUMap.this.remove(((Map.Entry)o).getKey());
+			return true;
+		}
+
+		public Iterator iterator() {
+			return new EntryIterator();
+		}
+	}
+
+	/**
+	 * Iterates from the least to the most recently used entry.
+	 */
+	private class EntryIterator implements Iterator {
+		private Node next = head;
+		private Node last = null;
+		private int expectedModCount = modCount;
+
+		public boolean hasNext() {
+			return this.next != null;
+		}
+
+		public Object next() {
+			if (modCount != this.expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (this.next == null) {
+				throw new NoSuchElementException();
+			}
+			this.last = this.next;
+			this.next = this.next.after;
+			return this.last;
+		}
+
+		public void remove() {
+			if (this.last == null) {
+				throw new IllegalStateException();
+			}
+			if (modCount != this.expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			LinkedLRUMap.this.remove(this.last.key);
+			this.last = null;
+			this.expectedModCount = modCount;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2004 Senunkan Shinryuu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Created on Oct 18, 2026
+ *
+ */
+package org.latticesoft.util.container;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A simple benchmark of the ordered maps. Each round puts, gets,
+ * iterates and removes the same keys in every map and prints the
+ * average time per operation. The first rounds warm up the JIT.
+ * <p>Usage: OrderedMapBenchmark [entries] [rounds]</p>
+ */
+public class OrderedMapBenchmark {
+
+	private static Object sink;
+
+	public static void main(String args[]) {
+		int entries = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+		String[] keys = new String[entries];
+		for (int i=0; i<entries; i++) {
+			keys[i] = "key" + i;
+		}
+		for (int r=0; r<rounds; r++) {
+			boolean print = (r >= rounds / 2);
+			run("OrderedMap", new OrderedMap(), keys, print);
+			run("CompactOrderedMap", new CompactOrderedMap(), keys, print);
+		}
+	}
+
+	private static void run(String name, Map map, String[] keys, boolean print) {
+		int n = keys.length;
+		long t0 = System.nanoTime();
+		for (int i=0; i<n; i++) {
+			map.put(keys[i], keys[i]);
+		}
+		long t1 = System.nanoTime();
+		for (int i=0; i<n; i++) {
+			sink = map.get(keys[i]);
+		}
+		long t2 = System.nanoTime();
+		Iterator iter = map.keySet().iterator();
+		while (iter.hasNext()) {
+			sink = map.get(iter.next());
+		}
+		long t3 = System.nanoTime();
+		for (int i=0; i<n; i+=2) {
+			map.remove(keys[i]);
+		}
+		long t4 = System.nanoTime();
+		if (print) {
+			StringBuffer sb = new StringBuffer();
+			sb.append(name);
+			sb.append(" ns/op put:");
+			sb.append((t1 - t0) / n);
+			sb.append(" get:");
+			sb.append((t2 - t1) / n);
+			sb.append(" iterate:");
+			sb.append((t3 - t2) / n);
+			sb.append(" remove:");
+			sb.append((t4 - t3) * 2 / n);
+			System.out.println(sb.toString());
+		}
+	}
+}
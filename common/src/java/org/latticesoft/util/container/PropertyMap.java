@@ -16,6 +16,7 @@
 package org.latticesoft.util.container;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.io.*;
 import org.latticesoft.util.common.*;
 import org.apache.commons.logging.Log;
@@ -65,6 +66,13 @@ import org.apache.commons.logging.LogFactory;
  * If the direct value is desired, please use the get(name) method instead.
  * </p>
  * <p>
+ * <h1>Memoization</h1>
+ * When memoize is set (or ~memoize=true in the file) the resolved
+ * value of each key is kept until the PropertyMap changes through its
+ * own methods. Changes made through the map returned by getMap(), or
+ * to the beans held in the map, are not seen until then.
+ * </p>
+ * <p>
  * In additional, the PropertyMap convieniently provides a singleton
  * implementation for applications like a system wide properties.
  * <code>
@@ -83,6 +91,10 @@ public class PropertyMap implements Map, Data, Serializable {
 	private String paramEnd = "}";
 	private boolean useJexl = true;
 	private boolean parseObjectFirst = true;
+	private boolean memoize = false;
+	private transient Map resolved = null;
+	private transient AtomicLong version = new AtomicLong();
+	private static final Object NULL = new Object();
 	private static PropertyMap instance;
 	public static final String DEFAULT_DATE_FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
 
@@ -174,11 +186,31 @@ if (log.isDebugEnabled()) { log.debug(this.map); }
 	/** @return Returns the useJexl. */
 	public boolean isUseJexl() { return (this.useJexl); }
 	/** @param useJexl The useJexl to set. */
-	public void setUseJexl(boolean useJexl) { this.useJexl = useJexl; }
+	public void setUseJexl(boolean useJexl) { this.useJexl = useJexl; this.changed(); }
 	/** @return Returns the parseObjectFirst.*/
 	public boolean isParseObjectFirst() { return (this.parseObjectFirst); }
 	/** @param parseObjectFirst The parseObjectFirst to set. */
-	public void setParseObjectFirst(boolean parseObjectFirst) { this.parseObjectFirst = parseObjectFirst; }
+	public void setParseObjectFirst(boolean parseObjectFirst) { this.parseObjectFirst = parseObjectFirst; this.changed(); }
+	/** @return Returns the memoize. */
+	public boolean isMemoize() { return (this.memoize); }
+	/** @param memoize Keeps the resolved values until the map changes. */
+	public void setMemoize(boolean memoize) { this.memoize = memoize; this.changed(); }
+
+	/**
+	 * Drops the resolved values kept. Called on every change of the map.
+	 */
+	public void changed() {
+		this.version.incrementAndGet();
+		Map m = this.resolved;
+		if (m != null) {
+			m.clear();
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.version = new AtomicLong();
+	}
 
 	/**
 	 * Creates a singleton. This method loads values into the map by
@@ -258,6 +290,7 @@ if (log.isDebugEnabled()) { log.debug(this.map); }
 	public void read(InputStream is, boolean closeMap) {
 		try {
 			FileUtil.loadMap(is, this.map, closeMap);
+			this.changed();
 			// after loading the map we need to decrypt certain keys
 			this.init();
 
@@ -313,6 +346,9 @@ if (log.isDebugEnabled()) { log.debug(this.map); }
 		if (this.map.containsKey("~parseObjectFirst")) {
 			this.setParseObjectFirst(this.getBoolean("~parseObjectFirst"));
 		}
+		if (this.map.containsKey("~memoize")) {
+			this.setMemoize(this.getBoolean("~memoize"));
+		}
 
 		Map keys = this.getSubMap("~");
 		String keyWrapped = (String)keys.get("keyWrapped");
@@ -417,12 +453,12 @@ if (log.isDebugEnabled()) { log.debug(this.map); }
 	/** Gets the starting parameter string */
 	public String getParamStart() { return (this.paramStart); }
 	/** Returns the starting parameter string */
-	public void setParamStart(String paramStart) { this.paramStart = paramStart; }
+	public void setParamStart(String paramStart) { this.paramStart = paramStart; this.changed(); }
 
 	/** Get the ending parameter string */
 	public String getParamEnd() { return (this.paramEnd); }
 	/** Returns the ending parameter string */
-	public void setParamEnd(String paramEnd) { this.paramEnd = paramEnd; }
+	public void setParamEnd(String paramEnd) { this.paramEnd = paramEnd; this.changed(); }
 
 	/**
 	 * returns the internal map.
@@ -432,7 +468,7 @@ if (log.isDebugEnabled()) { log.debug(this.map); }
 	}
 
 	/** @see Map#clear */
-	public void clear() { this.map.clear(); }
+	public void clear() { this.map.clear(); this.changed(); }
 	/** @see Map#containsKey */
 	public boolean containsKey(Object key) { return this.map.containsKey(key); }
 	/** @see Map#containsValue */
@@ -450,11 +486,19 @@ if (log.isDebugEnabled()) { log.debug(this.map); }
 	/** @see Map#keySet */
 	public Set keySet() { return this.map.keySet(); }
 	/** @see Map#put */
-	public Object put(Object key, Object value) { return this.map.put(key, value); }
+	public Object put(Object key, Object value) {
+		Object o = this.map.put(key, value);
+		this.changed();
+		return o;
+	}
 	/** @see Map#putAll */
-	public void putAll(Map t) { this.map.putAll(t); }
+	public void putAll(Map t) { this.map.putAll(t); this.changed(); }
 	/** @see Map#remove */
-	public Object remove(Object key) { return this.map.remove(key); }
+	public Object remove(Object key) {
+		Object o = this.map.remove(key);
+		this.changed();
+		return o;
+	}
 	/** @see Map#size */
 	public int size() { return this.map.size(); }
 	/** @see Map#values */
@@ -738,7 +782,11 @@ if (log.isDebugEnabled()) { log.debug(this.map); }
 		if (key instanceof String) {
 			String s = (String)key;
 			if (s.indexOf(this.paramStart) > -1) {
-				o = MiscUtil.resolve(map, s, null, paramStart, paramEnd, parseObjectFirst, useJexl);
+				if (this.memoize) {
+					o = this.resolveMemoized(s);
+				} else {
+					o = MiscUtil.resolve(map, s, null, paramStart, paramEnd, parseObjectFirst, useJexl);
+				}
 			}
 		}
 		if (o == null && map.containsKey(key)) {
@@ -747,6 +795,26 @@ if (log.isDebugEnabled()) { log.debug(this.map); }
 		return o;
 	}
 
+	/**
+	 * Resolves the key, or returns the value resolved before if the map
+	 * has not changed since.
+	 */
+	private Object resolveMemoized(String s) {
+		Map m = this.resolved;
+		if (m == null) {
+			m = new java.util.concurrent.ConcurrentHashMap();
+			this.resolved = m;
+		}
+		Object[] entry = (Object[])m.get(s);
+		long v = this.version.get();
+		if (entry != null && ((Long)entry[0]).longValue() == v) {
+			return (entry[1] == NULL) ? null : entry[1];
+		}
+		Object o = MiscUtil.resolve(map, s, null, paramStart, paramEnd, parseObjectFirst, useJexl);
+		m.put(s, new Object[] {Long.valueOf(v), (o == null) ? NULL : o});
+		return o;
+	}
+
 	/**
 	 * Sets an Object value
 	 * @param key the key of the attribute
@@ -778,7 +846,7 @@ if (log.isDebugEnabled()) { log.debug(this.map); }
 	 */
 	public void setMap(Object key, Map value) {
 		if (key == null) return;
-		this.map.put(key, value);
+		this.put(key, value);
 	}
 	
 	/**
@@ -810,7 +878,7 @@ if (log.isDebugEnabled()) { log.debug(this.map); }
 	 */
 	public void setList(Object key, List value) {
 		if (key == null) return;
-		this.map.put(key, value);
+		this.put(key, value);
 	}
 	
 	
@@ -826,7 +894,7 @@ if (log.isDebugEnabled()) { log.debug(this.map); }
 	 */
 	public void setCollection(Object key, Collection value) {
 		if (key == null) return;
-		this.map.put(key, value);
+		this.put(key, value);
 	}
 	
 	public Object loadObject(Object key) {
@@ -18,6 +18,9 @@
  */
 package org.latticesoft.util.convert;
 
+import java.beans.*;
+import java.lang.invoke.*;
+import java.lang.reflect.Method;
 import java.util.*;
 
 import org.latticesoft.util.common.*;
@@ -67,8 +70,11 @@ import org.apache.commons.logging.LogFactory;
  * hoho : haha
  * hoho : haha
  * </code>
+ * The templates are compiled once into a {@link MultiTemplateMatcher}
+ * and the values found are set straight through the setters of the
+ * bean, resolved once per bean class.
  */
-public class BeanParser implements Converter {
+public class BeanParser implements Converter, Cloneable {
 
 	private static final Log log = LogFactory.getLog(BeanParser.class);
 	private String startFlag;
@@ -77,6 +83,14 @@ public class BeanParser implements Converter {
 	private ArrayList ignore = new ArrayList();
 	private boolean active = false;
 	private Object bean = null;
+	private List compiledTemplates = null;
+	private MultiTemplateMatcher matcher = null;
+	private Class boundClass = null;
+	private MethodHandle[][] setters = null;
+	private Class[][] types = null;
+	private String[] values = null;
+	private int[] count = new int[1];
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
 
 	public String getEndFlag() { return (this.endFlag); }
 	public void setEndFlag(String endFlag) { this.endFlag = endFlag; }
@@ -87,6 +101,25 @@ public class BeanParser implements Converter {
 	public Object getBean() { return (this.bean); }
 	public void setBean(Object bean) { this.bean = bean; }
 	
+	/**
+	 * Returns a copy of the parser for another thread. The compiled
+	 * templates and setters are shared while the active flag and the
+	 * buffers of the values found are the copy's own.
+	 */
+	public Object clone() {
+		try {
+			BeanParser b = (BeanParser)super.clone();
+			b.templates = new ArrayList(this.templates);
+			b.ignore = new ArrayList(this.ignore);
+			b.active = false;
+			b.values = (this.matcher == null) ? null : new String[this.matcher.getMaxSize()];
+			b.count = new int[1];
+			return b;
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e.getMessage());
+		}
+	}
+
 	public boolean addTemplate(String s) {
 		if (s != null) {
 			return this.templates.add(s);
@@ -135,17 +168,11 @@ if (log.isDebugEnabled()) { log.debug(line); }
 			if (ignoreFlag) return null;
 
 			// check for templates and populate the bean accordingly
-			for (int i=0; i<templates.size(); i++) {
-				String template = (String)templates.get(i);
-				Map map = StringUtil.extractParameterValue(line, template);
-if (log.isDebugEnabled()) { log.debug(map); }
-				if (map.size() == 0) {
-					continue;
-				} else {
-					try { BeanUtils.populate(bean, map); } catch (Exception e) {}
-					populated = true;
-					break;
-				}
+			this.compile();
+			int index = this.matcher.match(line, this.values, this.count);
+			if (index >= 0) {
+				this.populate(index, this.count[0]);
+				populated = true;
 			}
 			// check for inactive mode
 			if (endFlag != null && line.indexOf(this.endFlag) > -1) {
@@ -156,6 +183,97 @@ if (log.isDebugEnabled()) { log.debug(map); }
 		else return null;
 	}
 	
+	/**
+	 * Compiles the templates again when they have changed.
+	 */
+	private void compile() {
+		if (this.matcher == null || !this.templates.equals(this.compiledTemplates)) {
+			this.compiledTemplates = new ArrayList(this.templates);
+			this.matcher = new MultiTemplateMatcher(this.compiledTemplates);
+			this.values = new String[this.matcher.getMaxSize()];
+			this.boundClass = null;
+		}
+		if (this.bean == null) {
+			return;
+		}
+		if (this.boundClass != this.bean.getClass()) {
+			this.bind(this.bean.getClass());
+		}
+	}
+
+	/**
+	 * Resolves the setters of the parameters of each template.
+	 */
+	private void bind(Class c) {
+		Map pd = new HashMap();
+		try {
+			PropertyDescriptor[] d = Introspector.getBeanInfo(c).getPropertyDescriptors();
+			for (int i=0; i<d.length; i++) {
+				if (d[i].getWriteMethod() != null && !(d[i] instanceof IndexedPropertyDescriptor)) {
+					pd.put(d[i].getName(), d[i]);
+				}
+			}
+		} catch (IntrospectionException e) {
+			if (log.isErrorEnabled()) { log.error(e); }
+		}
+		this.setters = new MethodHandle[this.matcher.size()][];
+		this.types = new Class[this.matcher.size()][];
+		for (int i=0; i<this.matcher.size(); i++) {
+			TemplateMatcher m = this.matcher.getMatcher(i);
+			this.setters[i] = new MethodHandle[m.size()];
+			this.types[i] = new Class[m.size()];
+			for (int j=0; j<m.size(); j++) {
+				PropertyDescriptor d = (PropertyDescriptor)pd.get(m.getParam(j));
+				if (d != null) {
+					this.setters[i][j] = unreflect(d.getWriteMethod());
+					this.types[i][j] = d.getPropertyType();
+				}
+			}
+		}
+		this.boundClass = c;
+	}
+
+	private static MethodHandle unreflect(Method m) {
+		try {
+			return MethodHandles.publicLookup().unreflect(m).asType(SETTER_TYPE);
+		} catch (IllegalAccessException e) {
+			try {
+				m.setAccessible(true);
+				return MethodHandles.lookup().unreflect(m).asType(SETTER_TYPE);
+			} catch (Exception ex) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Sets the values found by the template into the bean. The values
+	 * are converted by ConvertUtils as BeanUtils.populate does.
+	 */
+	private void populate(int index, int n) {
+		if (this.bean == null) {
+			// nothing to set, as BeanUtils.populate does with a null bean
+			Arrays.fill(this.values, 0, n, null);
+			return;
+		}
+		TemplateMatcher m = this.matcher.getMatcher(index);
+		for (int j=0; j<n; j++) {
+			MethodHandle setter = this.setters[index][j];
+			try {
+				if (setter == null) {
+					BeanUtils.setProperty(this.bean, m.getParam(j), this.values[j]);
+				} else {
+					Class type = this.types[index][j];
+					Object value = (type == String.class) ? this.values[j] : ConvertUtils.convert(this.values[j], type);
+					setter.invokeExact(this.bean, value);
+				}
+			} catch (Throwable t) {
+				if (log.isDebugEnabled()) { log.debug("Unable to set " + m.getParam(j), t); }
+			}
+			this.values[j] = null;
+		}
+	}
+
 	/**
 	* Converts the class in a string form
 	* @returns the class in a string form.
@@ -19,9 +19,14 @@
 package org.latticesoft.util.resource;
 
 import java.io.*;
+import java.lang.reflect.Method;
+import java.net.URL;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import org.latticesoft.util.common.*;
+import org.latticesoft.util.convert.BeanParser;
 import org.latticesoft.util.convert.Converter;
 import org.latticesoft.command.*;
 import org.apache.commons.logging.Log;
@@ -32,6 +37,20 @@ import org.apache.commons.logging.LogFactory;
  * based on certain rules. The rules are much like xml jax parser in which
  * certain event occurs and and the object variable is extracted from the
  * string and populated into the bean's attribute.
+ * <p>
+ * When workers is set and a new bean is instantiated for each line,
+ * the data is parsed in a pipeline. A reader streams the lines in
+ * batches into a bounded queue and the workers parse them, each with
+ * its own copy of the parsers. The beans are handed to the sink, or
+ * collected into the list returned, in the order of the lines unless
+ * ordered is false. The reader blocks when queueSize batches are in
+ * flight so the memory used does not grow with the size of the data.
+ * The parsers must treat the lines independently as each worker only
+ * sees a part of them, so a BeanParser with a start or end flag is
+ * parsed by a single worker with the parsers themselves, as are the
+ * lines handed to a sink when workers is 0. A parser which can not be
+ * cloned is shared and called by one worker at a time.
+ * </p>
  */
 public class DataDownloader implements Command {
 
@@ -52,6 +71,14 @@ public class DataDownloader implements Command {
 	private String beanClassName = null;
 	private Class beanClass = null;
 	private Map defaultBeanAttribute = new HashMap();
+
+	private int workers = 0;
+	private int queueSize = 64;
+	private int batchSize = 256;
+	private boolean ordered = true;
+	private Command sink = null;
+	private long lineCount = 0;
+	private long elapsed = 0;
 	
 
 	public DataDownloader() {}
@@ -97,6 +124,38 @@ public class DataDownloader implements Command {
 	/** @param beanClassName The beanClassName to set. */
 	public void setBeanClassName(String beanClassName) { this.beanClassName = beanClassName; }
 
+	/** @return Returns the workers. */
+	public int getWorkers() { return (this.workers); }
+	/** @param workers The workers to set. 0 parses on the calling thread, or on one worker with a sink. */
+	public void setWorkers(int workers) { this.workers = workers; }
+	/** @return Returns the queueSize. */
+	public int getQueueSize() { return (this.queueSize); }
+	/** @param queueSize The queueSize to set. */
+	public void setQueueSize(int queueSize) { this.queueSize = queueSize; }
+	/** @return Returns the batchSize. */
+	public int getBatchSize() { return (this.batchSize); }
+	/** @param batchSize The batchSize to set. */
+	public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+	/** @return Returns the ordered. */
+	public boolean isOrdered() { return (this.ordered); }
+	/** @param ordered The ordered to set. */
+	public void setOrdered(boolean ordered) { this.ordered = ordered; }
+	/** @return Returns the sink. */
+	public Command getSink() { return (this.sink); }
+	/** @param sink The sink to set. */
+	public void setSink(Command sink) { this.sink = sink; }
+	/** @return Returns the number of lines read by the last execution. */
+	public long getLineCount() { return (this.lineCount); }
+	/** @return Returns the milliseconds taken by the last execution. */
+	public long getElapsed() { return (this.elapsed); }
+	/** @return Returns the lines parsed per second by the last execution. */
+	public double getThroughput() {
+		if (this.elapsed <= 0) {
+			return this.lineCount;
+		}
+		return this.lineCount * 1000d / this.elapsed;
+	}
+
 	/** @return Returns the defaultBeanAttribute. */
 	public Map getDefaultBeanAttribute() { return (this.defaultBeanAttribute); }
 	/** @return Returns the parsers. */
@@ -125,13 +184,20 @@ public class DataDownloader implements Command {
 	// ==================================================
 	public Object execute(Object o) throws CommandException {
 		Object data = null;
+		long start = System.currentTimeMillis();
 		try {
 			this.configureProxy();
-			Collection c = this.download();
-			data = this.parseData(c);
+			if (this.mode == MODE_INSTANTIATE_NEW_BEAN && (this.workers > 0 || this.sink != null)) {
+				data = this.parsePipelined();
+			} else {
+				Collection c = this.download();
+				data = this.parseData(c);
+			}
 		} catch (Exception e) {
 			if (log.isErrorEnabled()) { log.error(e); }
 		}
+		this.elapsed = System.currentTimeMillis() - start;
+if (log.isInfoEnabled()) { log.info("Parsed " + this.lineCount + " lines in " + this.elapsed + "ms (" + (long)this.getThroughput() + " lines/s)"); }
 		return data;
 	}
 
@@ -179,10 +245,7 @@ if (log.isInfoEnabled()) { log.info("Download from " + this.url); }
 		ArrayList a = new ArrayList();
 		int lineCount = 0;
 		try {
-			if (beanClass == null) {
-				beanClass = Class.forName(this.beanClassName);
-			}
-			if (beanClass == null) {
+			if (!this.resolveBeanClass()) {
 				return null;
 			}
 			if (mode == MODE_SINGLETON_BEAN) {
@@ -214,9 +277,7 @@ if (log.isDebugEnabled()) { log.debug("Parsing data : " + c.size()); }
 if (log.isDebugEnabled()) { log.debug(o); }
 					if (o instanceof Converter) {
 						Converter conv = (Converter)o;
-						Map map = new HashMap();
-						map.put("bean", bean);
-						MiscUtil.populateObject(conv, map);
+						setBean(conv, bean);
 						o = conv.convert(line);
 						if (o != null && this.mode == MODE_INSTANTIATE_NEW_BEAN) {
 							a.add(bean);
@@ -229,6 +290,7 @@ if (log.isDebugEnabled()) { log.debug(o); }
 		} finally {
 			FileUtil.closeFileIterator(iter);
 		}
+		this.lineCount = lineCount;
 		if (this.mode == MODE_INSTANTIATE_NEW_BEAN) {
 			return a;
 		} else {
@@ -236,4 +298,297 @@ if (log.isDebugEnabled()) { log.debug(o); }
 		}
 	}
 
+	/**
+	 * Checks if a parser keeps a state across the lines, which the
+	 * workers of the pipeline can not share.
+	 */
+	private boolean isStateful() {
+		for (int i=0; i<this.parsers.size(); i++) {
+			Object o = this.parsers.get(i);
+			if (o instanceof BeanParser) {
+				BeanParser p = (BeanParser)o;
+				if (p.getStartFlag() != null || p.getEndFlag() != null) {
+if (log.isInfoEnabled()) { log.info("Parsing sequentially for the flags of " + p); }
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private boolean resolveBeanClass() throws ClassNotFoundException {
+		if (beanClass == null && beanClassName != null) {
+			beanClass = Class.forName(this.beanClassName);
+		}
+		return (beanClass != null);
+	}
+
+	/**
+	 * Sets the bean to be populated by the converter. The BeanParser
+	 * is set directly and the others through BeanUtils.
+	 */
+	private static void setBean(Converter conv, Object bean) {
+		if (conv instanceof BeanParser) {
+			((BeanParser)conv).setBean(bean);
+		} else {
+			Map map = new HashMap();
+			map.put("bean", bean);
+			MiscUtil.populateObject(conv, map);
+		}
+	}
+
+	/**
+	 * Copies the converter for a worker through its public clone method.
+	 * @return the copy or null if the converter has to be shared
+	 */
+	private static Converter copyParser(Converter conv) {
+		if (!(conv instanceof Cloneable)) {
+			return null;
+		}
+		try {
+			Method m = conv.getClass().getMethod("clone", new Class[0]);
+			return (Converter)m.invoke(conv, new Object[0]);
+		} catch (Exception e) {
+if (log.isDebugEnabled()) { log.debug("Unable to copy " + conv, e); }
+			return null;
+		}
+	}
+
+	private BufferedReader openReader() throws IOException {
+		if (!this.useFile) {
+if (log.isInfoEnabled()) { log.info("Streaming from " + this.url); }
+			return new BufferedReader(new InputStreamReader(new URL(this.url).openStream()));
+		}
+		if (this.fileOutput == null) {
+			return null;
+		}
+		this.download();
+if (log.isDebugEnabled()) { log.debug("Reading from  : " + this.fileOutput); }
+		return new BufferedReader(new FileReader(this.fileOutput));
+	}
+
+	/**
+	 * Parses the data in a pipeline of a reader and the workers. The
+	 * data is parsed by a single worker when a parser keeps a state
+	 * across the lines or when workers is 0.
+	 * @return the list of beans parsed, or the number of beans handed
+	 * to the sink when there is one
+	 */
+	public Object parsePipelined() {
+		boolean sequential = (this.workers <= 0 || this.isStateful());
+		BufferedReader reader = null;
+		try {
+			if (!this.resolveBeanClass()) {
+				return null;
+			}
+			reader = this.openReader();
+			if (reader == null) {
+				return null;
+			}
+			return new Pipeline(sequential).run(reader);
+		} catch (Exception e) {
+			if (log.isErrorEnabled()) { log.error(e); }
+			return null;
+		} finally {
+			if (reader != null) {
+				try { reader.close(); } catch (Exception e) {}
+			}
+		}
+	}
+
+	/**
+	 * A batch of lines numbered in the order read.
+	 */
+	private static class Batch {
+		private long seq;
+		private String[] lines;
+		private int size;
+
+		private Batch(long seq, String[] lines, int size) {
+			this.seq = seq;
+			this.lines = lines;
+			this.size = size;
+		}
+	}
+
+	private static final Batch END = new Batch(-1, null, 0);
+
+	/**
+	 * A single run of the pipeline. The reader runs on the calling
+	 * thread. A batch holds a permit from the time it is read until its
+	 * beans are delivered, including the time it waits for the batches
+	 * before it when ordered. A sequential run has a single worker which
+	 * uses the parsers themselves so their state carries across the lines.
+	 */
+	private class Pipeline {
+		private boolean sequential;
+		private int workerCount;
+		private int batch = Math.max(1, batchSize);
+		private BlockingQueue queue = new ArrayBlockingQueue(Math.max(1, queueSize));
+		private Semaphore permits;
+		private Map pending = new HashMap();
+		private long next = 0;
+		private List result = new ArrayList();
+		private long delivered = 0;
+		private AtomicLong lines = new AtomicLong();
+
+		private Pipeline(boolean sequential) {
+			this.sequential = sequential;
+			this.workerCount = sequential ? 1 : Math.max(1, workers);
+			this.permits = new Semaphore(Math.max(1, queueSize) + this.workerCount);
+		}
+
+		private Object run(BufferedReader reader) throws InterruptedException {
+			ExecutorService pool = Executors.newFixedThreadPool(this.workerCount);
+			for (int i=0; i<this.workerCount; i++) {
+				pool.execute(new Runnable() {
+					public void run() {
+						work();
+					}
+				});
+			}
+			try {
+				this.read(reader);
+			} finally {
+				for (int i=0; i<this.workerCount; i++) {
+					this.queue.put(END);
+				}
+				pool.shutdown();
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				lineCount = this.lines.get();
+			}
+			if (sink != null) {
+				return Long.valueOf(this.delivered);
+			}
+			return this.result;
+		}
+
+		private void read(BufferedReader reader) throws InterruptedException {
+			long seq = 0;
+			String[] buf = new String[this.batch];
+			int n = 0;
+			String line = null;
+			try {
+				while ((line = reader.readLine()) != null) {
+					buf[n++] = line;
+					if (n == this.batch) {
+						this.put(new Batch(seq++, buf, n));
+						buf = new String[this.batch];
+						n = 0;
+					}
+				}
+			} catch (IOException e) {
+				if (log.isErrorEnabled()) { log.error("Exception in reading line " + this.lines.get(), e); }
+			}
+			if (n > 0) {
+				this.put(new Batch(seq++, buf, n));
+			}
+		}
+
+		private void put(Batch b) throws InterruptedException {
+			this.permits.acquire();
+			this.lines.addAndGet(b.size);
+			this.queue.put(b);
+		}
+
+		private void work() {
+			Converter[] conv = new Converter[parsers.size()];
+			boolean[] shared = new boolean[conv.length];
+			for (int i=0; i<conv.length; i++) {
+				Object o = parsers.get(i);
+				if (o instanceof Converter && this.sequential) {
+					conv[i] = (Converter)o;
+				} else if (o instanceof Converter) {
+					conv[i] = copyParser((Converter)o);
+					if (conv[i] == null) {
+						conv[i] = (Converter)o;
+						shared[i] = true;
+					}
+				}
+			}
+			try {
+				while (true) {
+					Batch b = (Batch)this.queue.take();
+					if (b == END) {
+						break;
+					}
+					List beans = new ArrayList(b.size);
+					for (int i=0; i<b.size; i++) {
+						this.parse(conv, shared, b.lines[i], beans);
+					}
+					this.deliver(b.seq, beans);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private void parse(Converter[] conv, boolean[] shared, String line, List beans) {
+			if (line == null) return;
+			line = line.trim();
+			if (line.length() == 0) {
+				return;
+			}
+			try {
+				Object bean = beanClass.newInstance();
+				if (!defaultBeanAttribute.isEmpty()) {
+					MiscUtil.populateObject(bean, defaultBeanAttribute);
+				}
+				for (int i=0; i<conv.length; i++) {
+					if (conv[i] == null) {
+						continue;
+					}
+					Object o = null;
+					if (shared[i]) {
+						synchronized (conv[i]) {
+							setBean(conv[i], bean);
+							o = conv[i].convert(line);
+						}
+					} else {
+						setBean(conv[i], bean);
+						o = conv[i].convert(line);
+					}
+					if (o != null) {
+						beans.add(bean);
+					}
+				}
+			} catch (Exception e) {
+				if (log.isErrorEnabled()) { log.error("Exception in parsing " + line, e); }
+			}
+		}
+
+		/**
+		 * Hands the beans of a batch to the sink. When ordered, the
+		 * batches completed early are kept until those before them are
+		 * delivered.
+		 */
+		private synchronized void deliver(long seq, List beans) {
+			if (!ordered) {
+				this.emit(beans);
+				return;
+			}
+			this.pending.put(Long.valueOf(seq), beans);
+			while ((beans = (List)this.pending.remove(Long.valueOf(this.next))) != null) {
+				this.emit(beans);
+				this.next++;
+			}
+		}
+
+		private void emit(List beans) {
+			if (sink == null) {
+				this.result.addAll(beans);
+			} else {
+				for (int i=0; i<beans.size(); i++) {
+					try {
+						sink.execute(beans.get(i));
+					} catch (Exception e) {
+						if (log.isErrorEnabled()) { log.error("Exception in sink", e); }
+					}
+				}
+			}
+			this.delivered += beans.size();
+			this.permits.release();
+		}
+	}
+
 }
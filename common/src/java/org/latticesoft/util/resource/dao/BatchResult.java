@@ -0,0 +1,90 @@
+/*
+ * Copyright 2004 Senunkan Shinryuu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Created on Oct 18, 2026
+ *
+ */
+package org.latticesoft.util.resource.dao;
+
+import java.io.Serializable;
+
+/**
+ * The result of one chunk of a bulk write.
+ * @see QueryService#executeBulk(java.util.Collection)
+ */
+public class BatchResult implements Serializable {
+	public static final long serialVersionUID = 20261018;
+	private int chunk;
+	private int offset;
+	private int size;
+	private int[] counts;
+	private int attempts;
+	private Exception error;
+
+	public BatchResult(int chunk, int offset, int size) {
+		this.chunk = chunk;
+		this.offset = offset;
+		this.size = size;
+	}
+
+	/** @return Returns the index of the chunk. */
+	public int getChunk() { return (this.chunk); }
+
+	/** @return Returns the index of the first row of the chunk. */
+	public int getOffset() { return (this.offset); }
+
+	/** @return Returns the number of rows of the chunk. */
+	public int getSize() { return (this.size); }
+
+	/** @return Returns the update counts of the rows, null if the chunk failed. */
+	public int[] getCounts() { return (this.counts); }
+	/** @param counts The counts to set. */
+	public void setCounts(int[] counts) { this.counts = counts; }
+
+	/** @return Returns the number of times the chunk was tried. */
+	public int getAttempts() { return (this.attempts); }
+	/** @param attempts The attempts to set. */
+	public void setAttempts(int attempts) { this.attempts = attempts; }
+
+	/** @return Returns the error of the last attempt, null if committed. */
+	public Exception getError() { return (this.error); }
+	/** @param error The error to set. */
+	public void setError(Exception error) { this.error = error; }
+
+	/** @return true if the chunk was committed */
+	public boolean isSuccess() {
+		return this.error == null && this.counts != null;
+	}
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("[BatchResult|chunk:");
+		sb.append(this.chunk);
+		sb.append("|offset:");
+		sb.append(this.offset);
+		sb.append("|size:");
+		sb.append(this.size);
+		sb.append("|attempts:");
+		sb.append(this.attempts);
+		sb.append("|success:");
+		sb.append(this.isSuccess());
+		if (this.error != null) {
+			sb.append("|error:");
+			sb.append(this.error.getMessage());
+		}
+		sb.append("]");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2004 Senunkan Shinryuu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Created on Oct 18, 2026
+ *
+ */
+package org.latticesoft.util.resource.dao;
+
+/**
+ * A service whose results may be cached by the {@link ResultCache}.
+ * The tables tie the queries to the updates: running an update
+ * service invalidates the cached results of the queries on the
+ * same tables.
+ */
+public interface Cacheable {
+	/**
+	 * @return the tables read or written by the service, comma separated
+	 */
+	String getTables();
+	/**
+	 * @return the maximum number of results cached, 0 for no caching
+	 */
+	int getCacheSize();
+	/**
+	 * @return the time to live of the results in milliseconds, 0 for no expiry
+	 */
+	long getCacheTimeToLive();
+	/**
+	 * Returns the values of the input of the service which make up
+	 * the key of the result.
+	 * @param data the data of the call
+	 * @return the values or null if the result can not be cached
+	 */
+	Object[] getInputValues(Object data);
+	/**
+	 * Tells if the last execution failed. The services log and swallow
+	 * the SQLException so their result is then empty rather than missing
+	 * and must not be cached.
+	 * @return true if the last execution of this instance failed
+	 */
+	boolean isFailed();
+}
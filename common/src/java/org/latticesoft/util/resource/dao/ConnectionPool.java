@@ -0,0 +1,880 @@
+/*
+ * Copyright 2004 Senunkan Shinryuu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Created on Oct 18, 2026
+ *
+ */
+package org.latticesoft.util.resource.dao;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sql.*;
+import org.latticesoft.util.resource.DatabaseUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * <p>A pooling DataSource. The physical connections are opened through
+ * the JDBC driver and url, or through another DataSource, and handed
+ * out wrapped in a proxy whose close returns the connection to the
+ * pool.</p>
+ * <p>A borrower waits at most maxWait milliseconds when maxTotal
+ * connections are in use. The idle connections are validated on borrow
+ * with the validation query, or with Connection.isValid when there is
+ * none. A background evictor closes the connections idle longer than
+ * idleTimeout down to minIdle, closes the connections older than
+ * maxLifetime and opens new ones up to minIdle. At most maxIdle
+ * connections are kept idle.</p>
+ * <p>A returned connection is rolled back. If the borrower has changed
+ * its readOnly, transactionIsolation, catalog or holdability, these are
+ * set back to the values the connection was opened with.</p>
+ * <p>The statements of a borrowed connection are wrapped too, and the
+ * ones left open are closed when the connection is returned. Their
+ * getConnection, and getStatement of their ResultSets, return the
+ * wrappers. Each physical connection keeps a {@link StatementCache} of
+ * statementCacheSize prepared statements. Closing a prepared statement
+ * of a pooled connection puts it back in the cache.</p>
+ */
+public class ConnectionPool implements DataSource {
+
+	private static final Log log = LogFactory.getLog(ConnectionPool.class);
+	private String driver;
+	private String url;
+	private String user;
+	private String password;
+	private DataSource dataSource;
+	private int minIdle = 0;
+	private int maxIdle = 8;
+	private int maxTotal = 8;
+	private long maxWait = 30000;
+	private String validationQuery;
+	private int validationTimeout = 5;
+	private boolean testOnBorrow = true;
+	private long idleTimeout = 600000;
+	private long maxLifetime = 1800000;
+	private long evictionInterval = 60000;
+	private int statementCacheSize = 32;
+	private int loginTimeout = 0;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition available = lock.newCondition();
+	private LinkedList idle = new LinkedList();
+	private Set connections = new HashSet();
+	private int total = 0;
+	private volatile boolean closed = false;
+	private volatile boolean evictorStarted = false;
+	private Timer evictor;
+
+	private AtomicLong createdCount = new AtomicLong();
+	private AtomicLong destroyedCount = new AtomicLong();
+	private AtomicLong borrowCount = new AtomicLong();
+	private AtomicLong waitCount = new AtomicLong();
+	private AtomicLong waitTime = new AtomicLong();
+	private AtomicLong timeoutCount = new AtomicLong();
+	private AtomicLong validationFailureCount = new AtomicLong();
+	private AtomicLong statementHitCount = new AtomicLong();
+	private AtomicLong statementMissCount = new AtomicLong();
+
+	public ConnectionPool() {
+	}
+
+	/**
+	 * Constructs a pool opening the connections with the driver.
+	 */
+	public ConnectionPool(String driver, String url, String user, String password) {
+		this.driver = driver;
+		this.url = url;
+		this.user = user;
+		this.password = password;
+	}
+
+	/** @return Returns the driver. */
+	public String getDriver() { return (this.driver); }
+	/** @param driver The driver to set. */
+	public void setDriver(String driver) { this.driver = driver; }
+
+	/** @return Returns the url. */
+	public String getUrl() { return (this.url); }
+	/** @param url The url to set. */
+	public void setUrl(String url) { this.url = url; }
+
+	/** @return Returns the user. */
+	public String getUser() { return (this.user); }
+	/** @param user The user to set. */
+	public void setUser(String user) { this.user = user; }
+
+	/** @return Returns the password. */
+	public String getPassword() { return (this.password); }
+	/** @param password The password to set. */
+	public void setPassword(String password) { this.password = password; }
+
+	/** @return Returns the dataSource opening the physical connections. */
+	public DataSource getDataSource() { return (this.dataSource); }
+	/** @param dataSource The dataSource opening the physical connections instead of the driver. */
+	public void setDataSource(DataSource dataSource) { this.dataSource = dataSource; }
+
+	/** @return Returns the minIdle. */
+	public int getMinIdle() { return (this.minIdle); }
+	/** @param minIdle The minIdle to set. */
+	public void setMinIdle(int minIdle) { this.minIdle = minIdle; }
+
+	/** @return Returns the maxIdle. */
+	public int getMaxIdle() { return (this.maxIdle); }
+	/** @param maxIdle The maxIdle to set. */
+	public void setMaxIdle(int maxIdle) { this.maxIdle = maxIdle; }
+
+	/** @return Returns the maxTotal. */
+	public int getMaxTotal() { return (this.maxTotal); }
+	/** @param maxTotal The maxTotal to set. */
+	public void setMaxTotal(int maxTotal) { this.maxTotal = maxTotal; }
+
+	/** @return Returns the maximum time in milliseconds to wait for a connection, negative for ever. */
+	public long getMaxWait() { return (this.maxWait); }
+	/** @param maxWait The maximum time in milliseconds to wait for a connection, negative for ever. */
+	public void setMaxWait(long maxWait) { this.maxWait = maxWait; }
+
+	/** @return Returns the validationQuery. */
+	public String getValidationQuery() { return (this.validationQuery); }
+	/** @param validationQuery The validationQuery to set. */
+	public void setValidationQuery(String validationQuery) { this.validationQuery = validationQuery; }
+
+	/** @return Returns the validationTimeout in seconds. */
+	public int getValidationTimeout() { return (this.validationTimeout); }
+	/** @param validationTimeout The validationTimeout in seconds to set. */
+	public void setValidationTimeout(int validationTimeout) { this.validationTimeout = validationTimeout; }
+
+	/** @return Returns the testOnBorrow. */
+	public boolean isTestOnBorrow() { return (this.testOnBorrow); }
+	/** @param testOnBorrow The testOnBorrow to set. */
+	public void setTestOnBorrow(boolean testOnBorrow) { this.testOnBorrow = testOnBorrow; }
+
+	/** @return Returns the idleTimeout in milliseconds. */
+	public long getIdleTimeout() { return (this.idleTimeout); }
+	/** @param idleTimeout The idleTimeout in milliseconds to set, 0 to keep the idle connections. */
+	public void setIdleTimeout(long idleTimeout) { this.idleTimeout = idleTimeout; }
+
+	/** @return Returns the maxLifetime in milliseconds. */
+	public long getMaxLifetime() { return (this.maxLifetime); }
+	/** @param maxLifetime The maxLifetime in milliseconds to set, 0 for no limit. */
+	public void setMaxLifetime(long maxLifetime) { this.maxLifetime = maxLifetime; }
+
+	/** @return Returns the evictionInterval in milliseconds. */
+	public long getEvictionInterval() { return (this.evictionInterval); }
+	/** @param evictionInterval The evictionInterval in milliseconds to set before the first borrow, 0 to disable the evictor. */
+	public void setEvictionInterval(long evictionInterval) { this.evictionInterval = evictionInterval; }
+
+	/** @return Returns the statementCacheSize. */
+	public int getStatementCacheSize() { return (this.statementCacheSize); }
+	/** @param statementCacheSize The number of statements cached per connection, 0 to disable. */
+	public void setStatementCacheSize(int statementCacheSize) { this.statementCacheSize = statementCacheSize; }
+
+	/** @return Returns the number of connections in use. */
+	public int getActiveCount() {
+		this.lock.lock();
+		try {
+			return this.total - this.idle.size();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/** @return Returns the number of idle connections. */
+	public int getIdleCount() {
+		this.lock.lock();
+		try {
+			return this.idle.size();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the statistics of the pool keyed by name
+	 */
+	public Map getStatistics() {
+		long hit = this.statementHitCount.get();
+		long miss = this.statementMissCount.get();
+		int active = 0;
+		int idleCount = 0;
+		this.lock.lock();
+		try {
+			active = this.total - this.idle.size();
+			idleCount = this.idle.size();
+			Iterator iter = this.connections.iterator();
+			while (iter.hasNext()) {
+				PooledConnection pc = (PooledConnection)iter.next();
+				if (pc.statements != null) {
+					hit += pc.statements.getHitCount();
+					miss += pc.statements.getMissCount();
+				}
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		long borrow = this.borrowCount.get();
+		long wait = this.waitCount.get();
+		Map map = new HashMap();
+		map.put("activeCount", Integer.valueOf(active));
+		map.put("idleCount", Integer.valueOf(idleCount));
+		map.put("createdCount", Long.valueOf(this.createdCount.get()));
+		map.put("destroyedCount", Long.valueOf(this.destroyedCount.get()));
+		map.put("borrowCount", Long.valueOf(borrow));
+		map.put("waitCount", Long.valueOf(wait));
+		map.put("averageWaitTime", Long.valueOf(wait == 0 ? 0 : this.waitTime.get() / wait));
+		map.put("timeoutCount", Long.valueOf(this.timeoutCount.get()));
+		map.put("validationFailureCount", Long.valueOf(this.validationFailureCount.get()));
+		map.put("statementHitCount", Long.valueOf(hit));
+		map.put("statementMissCount", Long.valueOf(miss));
+		return map;
+	}
+
+	/**
+	 * Borrows a connection from the pool. Closing the connection returns
+	 * it to the pool.
+	 * @throws SQLException if no connection can be opened or the wait times out
+	 */
+	public Connection getConnection() throws SQLException {
+		long start = System.currentTimeMillis();
+		boolean waited = false;
+		if (!this.evictorStarted) {
+			this.startEvictor();
+		}
+		while (true) {
+			PooledConnection pc = null;
+			boolean create = false;
+			this.lock.lock();
+			try {
+				while (true) {
+					if (this.closed) {
+						throw new SQLException("Connection pool is closed");
+					}
+					pc = (PooledConnection)this.idle.pollFirst();
+					if (pc != null) {
+						break;
+					}
+					if (this.total < this.maxTotal) {
+						this.total++;
+						create = true;
+						break;
+					}
+					waited = true;
+					if (this.maxWait < 0) {
+						this.available.await();
+					} else {
+						long remaining = start + this.maxWait - System.currentTimeMillis();
+						if (remaining <= 0) {
+							this.timeoutCount.incrementAndGet();
+							throw new SQLException("Timeout waiting for a connection after " + this.maxWait + " ms");
+						}
+						this.available.await(remaining, TimeUnit.MILLISECONDS);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted waiting for a connection");
+			} finally {
+				this.lock.unlock();
+			}
+			if (create) {
+				try {
+					pc = this.create();
+				} catch (SQLException e) {
+					this.lock.lock();
+					try {
+						this.total--;
+						this.available.signal();
+					} finally {
+						this.lock.unlock();
+					}
+					throw e;
+				}
+			} else if (!this.validate(pc)) {
+				this.validationFailureCount.incrementAndGet();
+				this.destroy(pc, true);
+				continue;
+			}
+			this.borrowCount.incrementAndGet();
+			if (waited) {
+				this.waitCount.incrementAndGet();
+				this.waitTime.addAndGet(System.currentTimeMillis() - start);
+			}
+			return pc.borrow();
+		}
+	}
+
+	/**
+	 * Opens a connection which is not pooled.
+	 */
+	public Connection getConnection(String username, String password) throws SQLException {
+		if (this.dataSource != null) {
+			return this.dataSource.getConnection(username, password);
+		}
+		return DatabaseUtil.getConnectionFromJDBC(this.driver, this.url, username, password);
+	}
+
+	/**
+	 * Closes the pool. The idle connections are closed at once and the
+	 * connections in use when they are returned.
+	 */
+	public void close() {
+		List list = null;
+		this.lock.lock();
+		try {
+			this.closed = true;
+			list = new ArrayList(this.idle);
+			this.idle.clear();
+			this.total -= list.size();
+			this.available.signalAll();
+		} finally {
+			this.lock.unlock();
+		}
+		this.stopEvictor();
+		for (int i=0; i<list.size(); i++) {
+			this.destroy((PooledConnection)list.get(i), false);
+		}
+	}
+
+	private PooledConnection create() throws SQLException {
+		Connection conn = null;
+		if (this.dataSource != null) {
+			if (this.loginTimeout > 0) {
+				this.dataSource.setLoginTimeout(this.loginTimeout);
+			}
+			conn = this.dataSource.getConnection();
+		} else if (this.loginTimeout > 0) {
+			// the DriverManager only has a global login timeout, set for
+			// the time of the connect and shared by the pools
+			synchronized (DriverManager.class) {
+				int old = DriverManager.getLoginTimeout();
+				DriverManager.setLoginTimeout(this.loginTimeout);
+				try {
+					conn = DatabaseUtil.getConnectionFromJDBC(this.driver, this.url, this.user, this.password);
+				} finally {
+					DriverManager.setLoginTimeout(old);
+				}
+			}
+		} else {
+			conn = DatabaseUtil.getConnectionFromJDBC(this.driver, this.url, this.user, this.password);
+		}
+		if (conn == null) {
+			throw new SQLException("Unable to open a connection to " + this.url);
+		}
+		PooledConnection pc = new PooledConnection(conn);
+		pc.saveState();
+		this.lock.lock();
+		try {
+			this.connections.add(pc);
+		} finally {
+			this.lock.unlock();
+		}
+		this.createdCount.incrementAndGet();
+		if (log.isDebugEnabled()) { log.debug("Opened connection " + conn); }
+		return pc;
+	}
+
+	private boolean isExpired(PooledConnection pc, long now) {
+		return this.maxLifetime > 0 && now - pc.created >= this.maxLifetime;
+	}
+
+	private boolean validate(PooledConnection pc) {
+		if (this.isExpired(pc, System.currentTimeMillis())) {
+			return false;
+		}
+		if (!this.testOnBorrow) {
+			return true;
+		}
+		Statement stmt = null;
+		try {
+			if (this.validationQuery != null) {
+				stmt = pc.conn.createStatement();
+				if (this.validationTimeout > 0) {
+					stmt.setQueryTimeout(this.validationTimeout);
+				}
+				stmt.execute(this.validationQuery);
+				return true;
+			}
+			return pc.conn.isValid(this.validationTimeout);
+		} catch (AbstractMethodError e) {
+			// drivers older than JDBC 4 do not have isValid
+			try {
+				return !pc.conn.isClosed();
+			} catch (SQLException sqle) {
+				return false;
+			}
+		} catch (Exception e) {
+			if (log.isWarnEnabled()) { log.warn("Connection failed validation: " + e); }
+			return false;
+		} finally {
+			DatabaseUtil.closeStatement(stmt);
+		}
+	}
+
+	/**
+	 * Returns a connection to the pool, or closes it when it is broken,
+	 * too old or not needed.
+	 */
+	private void release(PooledConnection pc) {
+		boolean keep = !pc.broken && !this.closed && !this.isExpired(pc, System.currentTimeMillis());
+		if (keep) {
+			try {
+				if (!pc.conn.getAutoCommit()) {
+					pc.conn.rollback();
+					pc.conn.setAutoCommit(true);
+				}
+				pc.conn.clearWarnings();
+				if (pc.dirty) {
+					pc.restoreState();
+				}
+			} catch (SQLException e) {
+				keep = false;
+			}
+		}
+		this.lock.lock();
+		try {
+			if (keep && !this.closed && this.idle.size() < this.maxIdle) {
+				pc.lastUsed = System.currentTimeMillis();
+				this.idle.addFirst(pc);
+				this.available.signal();
+				return;
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		this.destroy(pc, true);
+	}
+
+	private void destroy(PooledConnection pc, boolean counted) {
+		this.lock.lock();
+		try {
+			if (counted) {
+				this.total--;
+			}
+			this.connections.remove(pc);
+			this.available.signal();
+		} finally {
+			this.lock.unlock();
+		}
+		if (pc.statements != null) {
+			this.statementHitCount.addAndGet(pc.statements.getHitCount());
+			this.statementMissCount.addAndGet(pc.statements.getMissCount());
+			pc.statements.close();
+		}
+		DatabaseUtil.closeConnection(pc.conn);
+		this.destroyedCount.incrementAndGet();
+	}
+
+	/**
+	 * Starts the evictor once, on the first borrow.
+	 */
+	private synchronized void startEvictor() {
+		if (this.evictorStarted) {
+			return;
+		}
+		this.evictorStarted = true;
+		if (this.evictionInterval <= 0 || this.closed) {
+			return;
+		}
+		this.evictor = new Timer("ConnectionPool evictor", true);
+		this.evictor.schedule(new TimerTask() {
+			public void run() {
+				try {
+					evict();
+				} catch (Exception e) {
+					if (log.isErrorEnabled()) { log.error("Exception in evictor", e); }
+				}
+			}
+		}, this.evictionInterval, this.evictionInterval);
+	}
+
+	private synchronized void stopEvictor() {
+		this.evictorStarted = true;
+		if (this.evictor != null) {
+			this.evictor.cancel();
+			this.evictor = null;
+		}
+	}
+
+	/**
+	 * Closes the idle connections which are expired or idle too long
+	 * and opens new ones up to minIdle.
+	 */
+	public void evict() {
+		List list = new ArrayList();
+		long now = System.currentTimeMillis();
+		this.lock.lock();
+		try {
+			Iterator iter = this.idle.descendingIterator();
+			while (iter.hasNext()) {
+				PooledConnection pc = (PooledConnection)iter.next();
+				boolean tooLong = this.idleTimeout > 0 && now - pc.lastUsed >= this.idleTimeout
+					&& this.idle.size() > this.minIdle;
+				if (tooLong || this.isExpired(pc, now)) {
+					iter.remove();
+					list.add(pc);
+				}
+			}
+		} finally {
+			this.lock.unlock();
+		}
+		for (int i=0; i<list.size(); i++) {
+			this.destroy((PooledConnection)list.get(i), true);
+		}
+		while (true) {
+			this.lock.lock();
+			try {
+				if (this.closed || this.idle.size() >= this.minIdle || this.total >= this.maxTotal) {
+					break;
+				}
+				this.total++;
+			} finally {
+				this.lock.unlock();
+			}
+			PooledConnection pc = null;
+			try {
+				pc = this.create();
+			} catch (SQLException e) {
+				if (log.isErrorEnabled()) { log.error("Unable to fill the pool", e); }
+				this.lock.lock();
+				try {
+					this.total--;
+				} finally {
+					this.lock.unlock();
+				}
+				break;
+			}
+			pc.lastUsed = System.currentTimeMillis();
+			this.lock.lock();
+			try {
+				this.idle.addLast(pc);
+				this.available.signal();
+			} finally {
+				this.lock.unlock();
+			}
+		}
+	}
+
+	/** @return Returns the time in seconds to wait when opening a physical connection, 0 for the default. */
+	public int getLoginTimeout() {
+		return this.loginTimeout;
+	}
+
+	/** @param seconds The time in seconds to wait when opening a physical connection, 0 for the default. */
+	public void setLoginTimeout(int seconds) {
+		this.loginTimeout = seconds;
+	}
+
+	public PrintWriter getLogWriter() throws SQLException {
+		return null;
+	}
+
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		// no impl
+	}
+
+	public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	public boolean isWrapperFor(Class c) throws SQLException {
+		return c != null && c.isInstance(this);
+	}
+
+	public Object unwrap(Class c) throws SQLException {
+		if (this.isWrapperFor(c)) {
+			return this;
+		}
+		throw new SQLException("Not a wrapper for " + c);
+	}
+
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("[ConnectionPool|url:");
+		sb.append(this.url);
+		sb.append("|total:");
+		sb.append(this.total);
+		sb.append("|maxTotal:");
+		sb.append(this.maxTotal);
+		sb.append("]");
+		return sb.toString();
+	}
+
+	/**
+	 * A physical connection of the pool.
+	 */
+	private class PooledConnection {
+		private Connection conn;
+		private StatementCache statements;
+		private long created = System.currentTimeMillis();
+		private long lastUsed = created;
+		private volatile boolean broken = false;
+		private volatile boolean dirty = false;
+		private boolean readOnly;
+		private int transactionIsolation = -1;
+		private String catalog;
+		private int holdability = -1;
+
+		private PooledConnection(Connection conn) {
+			this.conn = conn;
+			if (statementCacheSize > 0) {
+				this.statements = new StatementCache(statementCacheSize);
+			}
+		}
+
+		/**
+		 * Records the state the connection is opened with. A value the
+		 * driver does not report is not restored.
+		 */
+		private void saveState() {
+			try { this.readOnly = this.conn.isReadOnly(); } catch (Exception e) {}
+			try { this.transactionIsolation = this.conn.getTransactionIsolation(); } catch (Exception e) {}
+			try { this.catalog = this.conn.getCatalog(); } catch (Exception e) {}
+			try { this.holdability = this.conn.getHoldability(); } catch (Exception e) {}
+		}
+
+		/**
+		 * Sets back the state changed by a borrower.
+		 */
+		private void restoreState() throws SQLException {
+			if (this.conn.isReadOnly() != this.readOnly) {
+				this.conn.setReadOnly(this.readOnly);
+			}
+			if (this.transactionIsolation >= 0 && this.conn.getTransactionIsolation() != this.transactionIsolation) {
+				this.conn.setTransactionIsolation(this.transactionIsolation);
+			}
+			if (this.catalog != null && !this.catalog.equals(this.conn.getCatalog())) {
+				this.conn.setCatalog(this.catalog);
+			}
+			if (this.holdability > 0 && this.conn.getHoldability() != this.holdability) {
+				this.conn.setHoldability(this.holdability);
+			}
+			this.dirty = false;
+		}
+
+		private Connection borrow() {
+			return (Connection)Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+				new Class[] { Connection.class }, new ConnectionHandler(this));
+		}
+	}
+
+	/**
+	 * The handler of the connection given to a borrower. It is only valid
+	 * until closed, so a borrower can not use the connection after
+	 * returning it.
+	 */
+	private class ConnectionHandler implements InvocationHandler {
+		private PooledConnection pc;
+		private boolean closed = false;
+		private List statements = new ArrayList();
+
+		private ConnectionHandler(PooledConnection pc) {
+			this.pc = pc;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("equals")) {
+				return Boolean.valueOf(proxy == args[0]);
+			} else if (name.equals("hashCode")) {
+				return Integer.valueOf(System.identityHashCode(proxy));
+			} else if (name.equals("toString")) {
+				return "Pooled " + this.pc.conn;
+			}
+			synchronized (this) {
+				if (name.equals("close")) {
+					this.close();
+					return null;
+				} else if (name.equals("isClosed")) {
+					return Boolean.valueOf(this.closed || this.pc.conn.isClosed());
+				}
+				if (this.closed) {
+					throw new SQLException("Connection is closed");
+				}
+			}
+			if (name.equals("setReadOnly") || name.equals("setTransactionIsolation")
+					|| name.equals("setCatalog") || name.equals("setHoldability")) {
+				this.pc.dirty = true;
+			}
+			if (name.equals("isWrapperFor") && args[0] == StatementCache.class) {
+				return Boolean.valueOf(this.pc.statements != null);
+			} else if (name.equals("unwrap") && args[0] == StatementCache.class && this.pc.statements != null) {
+				return this.pc.statements;
+			}
+			if (name.equals("createStatement") || name.equals("prepareStatement") || name.equals("prepareCall")) {
+				Object key = null;
+				Statement stmt = null;
+				if (name.equals("prepareStatement") && this.pc.statements != null) {
+					key = this.statementKey(args);
+					if (key != null) {
+						stmt = this.pc.statements.take(key);
+					}
+				}
+				if (stmt == null) {
+					stmt = (Statement)this.call(method, args);
+				}
+				StatementHandler handler = new StatementHandler(this, key, stmt, proxy);
+				synchronized (this) {
+					this.statements.add(handler);
+				}
+				return Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+					new Class[] { method.getReturnType() }, handler);
+			}
+			return this.call(method, args);
+		}
+
+		/**
+		 * @return the key of the statement if it can be cached
+		 */
+		private Object statementKey(Object[] args) {
+			if (args.length == 1) {
+				return args[0];
+			} else if (args.length == 3 && args[1] instanceof Integer && args[2] instanceof Integer) {
+				return args[0] + "|" + args[1] + "|" + args[2];
+			}
+			return null;
+		}
+
+		private Object call(Method method, Object[] args) throws Throwable {
+			try {
+				return method.invoke(this.pc.conn, args);
+			} catch (InvocationTargetException e) {
+				Throwable t = e.getTargetException();
+				if (t instanceof SQLException) {
+					String state = ((SQLException)t).getSQLState();
+					if (state != null && state.startsWith("08")) {
+						this.pc.broken = true;
+					}
+				}
+				throw t;
+			}
+		}
+
+		private void close() {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			List list = new ArrayList(this.statements);
+			for (int i=0; i<list.size(); i++) {
+				((StatementHandler)list.get(i)).close();
+			}
+			this.statements.clear();
+			release(this.pc);
+		}
+	}
+
+	/**
+	 * The handler of a statement of a borrowed connection. Closing a
+	 * prepared statement with a key puts it back in the cache of its
+	 * connection, the other statements are closed.
+	 */
+	private class StatementHandler implements InvocationHandler {
+		private ConnectionHandler owner;
+		private Object key;
+		private Statement stmt;
+		private Object connection;
+		private boolean closed = false;
+
+		private StatementHandler(ConnectionHandler owner, Object key, Statement stmt, Object connection) {
+			this.owner = owner;
+			this.key = key;
+			this.stmt = stmt;
+			this.connection = connection;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("equals")) {
+				return Boolean.valueOf(proxy == args[0]);
+			} else if (name.equals("hashCode")) {
+				return Integer.valueOf(System.identityHashCode(proxy));
+			} else if (name.equals("toString")) {
+				return "Pooled " + this.stmt;
+			} else if (name.equals("close")) {
+				synchronized (this.owner) {
+					this.owner.statements.remove(this);
+				}
+				this.close();
+				return null;
+			} else if (name.equals("isClosed")) {
+				return Boolean.valueOf(this.closed);
+			} else if (name.equals("getConnection")) {
+				return this.connection;
+			}
+			if (this.closed) {
+				throw new SQLException("Statement is closed");
+			}
+			Object o = null;
+			try {
+				o = method.invoke(this.stmt, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+			if (o instanceof ResultSet) {
+				return Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+					new Class[] { ResultSet.class }, new ResultSetHandler((ResultSet)o, proxy));
+			}
+			return o;
+		}
+
+		private synchronized void close() {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			if (this.key == null || this.owner.pc.broken) {
+				DatabaseUtil.closeStatement(this.stmt);
+			} else {
+				this.owner.pc.statements.release(this.key, (PreparedStatement)this.stmt);
+			}
+		}
+	}
+
+	/**
+	 * The handler of a ResultSet of a borrowed statement, so that its
+	 * getStatement returns the borrowed statement.
+	 */
+	private static class ResultSetHandler implements InvocationHandler {
+		private ResultSet rs;
+		private Object statement;
+
+		private ResultSetHandler(ResultSet rs, Object statement) {
+			this.rs = rs;
+			this.statement = statement;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("equals")) {
+				return Boolean.valueOf(proxy == args[0]);
+			} else if (name.equals("hashCode")) {
+				return Integer.valueOf(System.identityHashCode(proxy));
+			} else if (name.equals("getStatement")) {
+				return this.statement;
+			}
+			try {
+				return method.invoke(this.rs, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+	}
+}
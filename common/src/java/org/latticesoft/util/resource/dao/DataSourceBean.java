@@ -26,6 +26,14 @@ import org.latticesoft.util.resource.DatabaseUtil;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+/**
+ * A DataSource configured by the bean properties. The connection is
+ * taken from the wrapped DataSource, JNDI, ODBC or the JDBC driver in
+ * this order. When pooled is set, the JDBC driver connections are
+ * borrowed from a {@link ConnectionPool} configured by the pool
+ * properties of the bean. Once closed, the bean gives no more
+ * connections.
+ */
 public class DataSourceBean implements DataSource {
 
 	private static final Log log = LogFactory.getLog(DataSourceBean.class);
@@ -37,6 +45,17 @@ public class DataSourceBean implements DataSource {
 	private String dsn;
 	private String jndi;
 	private int timeout;
+	private boolean pooled = false;
+	private int maxTotal = 8;
+	private int minIdle = 0;
+	private int maxIdle = 8;
+	private long maxWait = 30000;
+	private String validationQuery;
+	private long idleTimeout = 600000;
+	private long maxLifetime = 1800000;
+	private int statementCacheSize = 32;
+	private ConnectionPool pool;
+	private volatile boolean closed = false;
 	
 	/** @return Returns the dataSource. */
 	public DataSource getDataSource() { return (this.dataSource); }
@@ -73,7 +92,87 @@ public class DataSourceBean implements DataSource {
 	/** @param user The user to set. */
 	public void setUser(String user) { this.user = user; }
 
+	/** @return Returns the pooled. */
+	public boolean isPooled() { return (this.pooled); }
+	/** @param pooled The pooled to set. */
+	public void setPooled(boolean pooled) { this.pooled = pooled; }
+
+	/** @return Returns the maxTotal. */
+	public int getMaxTotal() { return (this.maxTotal); }
+	/** @param maxTotal The maxTotal to set. */
+	public void setMaxTotal(int maxTotal) { this.maxTotal = maxTotal; }
+
+	/** @return Returns the minIdle. */
+	public int getMinIdle() { return (this.minIdle); }
+	/** @param minIdle The minIdle to set. */
+	public void setMinIdle(int minIdle) { this.minIdle = minIdle; }
+
+	/** @return Returns the maxIdle. */
+	public int getMaxIdle() { return (this.maxIdle); }
+	/** @param maxIdle The maxIdle to set. */
+	public void setMaxIdle(int maxIdle) { this.maxIdle = maxIdle; }
+
+	/** @return Returns the maxWait. */
+	public long getMaxWait() { return (this.maxWait); }
+	/** @param maxWait The maxWait to set. */
+	public void setMaxWait(long maxWait) { this.maxWait = maxWait; }
+
+	/** @return Returns the validationQuery. */
+	public String getValidationQuery() { return (this.validationQuery); }
+	/** @param validationQuery The validationQuery to set. */
+	public void setValidationQuery(String validationQuery) { this.validationQuery = validationQuery; }
+
+	/** @return Returns the idleTimeout in milliseconds. */
+	public long getIdleTimeout() { return (this.idleTimeout); }
+	/** @param idleTimeout The idleTimeout in milliseconds to set. */
+	public void setIdleTimeout(long idleTimeout) { this.idleTimeout = idleTimeout; }
+
+	/** @return Returns the maxLifetime in milliseconds. */
+	public long getMaxLifetime() { return (this.maxLifetime); }
+	/** @param maxLifetime The maxLifetime in milliseconds to set. */
+	public void setMaxLifetime(long maxLifetime) { this.maxLifetime = maxLifetime; }
+
+	/** @return Returns the statementCacheSize. */
+	public int getStatementCacheSize() { return (this.statementCacheSize); }
+	/** @param statementCacheSize The statementCacheSize to set. */
+	public void setStatementCacheSize(int statementCacheSize) { this.statementCacheSize = statementCacheSize; }
+
+	/**
+	 * Returns the pool of the JDBC connections, creating it on the first call.
+	 * @return the pool or null if not pooled, the driver is not set or the bean is closed
+	 */
+	public synchronized ConnectionPool getPool() {
+		if (this.pool == null && !this.closed && this.pooled && this.url != null && this.driver != null) {
+			ConnectionPool cp = new ConnectionPool(this.driver, this.url, this.user, this.password);
+			cp.setMaxTotal(this.maxTotal);
+			cp.setMinIdle(this.minIdle);
+			cp.setMaxIdle(this.maxIdle);
+			cp.setMaxWait(this.maxWait);
+			cp.setValidationQuery(this.validationQuery);
+			cp.setIdleTimeout(this.idleTimeout);
+			cp.setMaxLifetime(this.maxLifetime);
+			cp.setStatementCacheSize(this.statementCacheSize);
+			cp.setLoginTimeout(this.timeout);
+			this.pool = cp;
+		}
+		return this.pool;
+	}
+
+	/**
+	 * Closes the pool if any. The later calls to getConnection fail.
+	 */
+	public synchronized void close() {
+		this.closed = true;
+		if (this.pool != null) {
+			this.pool.close();
+			this.pool = null;
+		}
+	}
+
 	public Connection getConnection() throws SQLException {
+		if (this.closed) {
+			throw new SQLException("DataSource is closed");
+		}
 		Connection conn = null;
 		try {
 			if (this.dataSource != null) {
@@ -97,7 +196,12 @@ public class DataSourceBean implements DataSource {
 					log.debug("Connection using driver: " + driver + ":" + url + ":" + user + ":" + password);
 				}
 				//conn = DatabaseUtil.getConnection(driver, url, user, password);
-				conn = DatabaseUtil.getConnectionFromJDBC(driver, url, user, password);
+				ConnectionPool cp = this.getPool();
+				if (cp != null) {
+					conn = cp.getConnection();
+				} else {
+					conn = DatabaseUtil.getConnectionFromJDBC(driver, url, user, password);
+				}
 			}
 		} catch (Exception e) {
 			if (log.isErrorEnabled()) { log.error(e); }
@@ -141,5 +245,9 @@ public class DataSourceBean implements DataSource {
 		return null;
 	}
 
+	public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
 	
 }
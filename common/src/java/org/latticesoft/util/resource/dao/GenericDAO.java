@@ -19,16 +19,25 @@
 package org.latticesoft.util.resource.dao;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.sql.*;
 import javax.sql.*;
 import org.latticesoft.command.*;
 import org.latticesoft.util.common.*;
 import org.latticesoft.util.container.*;
-import org.latticesoft.util.resource.DatabaseUtil;
 import org.apache.commons.beanutils.*;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+/**
+ * A collection of services run on the connections of a DataSource.
+ * The services are templates: each call binds the service to its own
+ * connection with {@link Service#bind(Connection)}, so one GenericDAO
+ * may be used by many threads at once. The services may also be run
+ * asynchronously on a bounded executor. The results of the
+ * {@link Cacheable} services with a cacheSize are kept in the
+ * {@link ResultCache} of the DAO.
+ */
 public class GenericDAO implements Collection {
 	
 	private static Map map = new HashMap();
@@ -36,6 +45,19 @@ public class GenericDAO implements Collection {
 	private boolean closeConnection = true;
 	private DataSource dataSource = null;
 	private Map services = new OrderedMap();
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private int queueSize = 1000;
+	private ExecutorService executor = null;
+	private ResultCache resultCache = new ResultCache();
+	private static final ClassValue templates = new ClassValue() {
+		protected Object computeValue(Class c) {
+			try {
+				return Boolean.valueOf(!c.getMethod("bind", new Class[] { Connection.class }).isDefault());
+			} catch (NoSuchMethodException e) {
+				return Boolean.FALSE;
+			}
+		}
+	};
 	
 	public synchronized static GenericDAO getInstance(Object key) {
 		GenericDAO dao = null;
@@ -76,44 +98,198 @@ public class GenericDAO implements Collection {
 	public void setDataSource(DataSource dataSource) { this.dataSource = dataSource; }
 	/** @return Returns the services. */
 	public Map getServices() { return (this.services); }
+	/** @return Returns the number of threads of the default executor. */
+	public int getParallelism() { return (this.parallelism); }
+	/** @param parallelism The number of threads of the default executor. */
+	public void setParallelism(int parallelism) { this.parallelism = parallelism; }
+	/** @return Returns the number of calls the default executor queues before running them in the caller. */
+	public int getQueueSize() { return (this.queueSize); }
+	/** @param queueSize The number of calls the default executor queues before running them in the caller. */
+	public void setQueueSize(int queueSize) { this.queueSize = queueSize; }
+	/** @param executor The executor of the asynchronous calls. */
+	public synchronized void setExecutor(ExecutorService executor) { this.executor = executor; }
+
+	/** @return Returns the cache of the results of the services. */
+	public ResultCache getResultCache() { return (this.resultCache); }
+
+	/**
+	 * Returns the executor of the asynchronous calls. The default one
+	 * has parallelism daemon threads and a queue of queueSize calls.
+	 * When the queue is full the call runs in the caller's thread, so
+	 * the number of connections borrowed stays bounded.
+	 * @return Returns the executor.
+	 */
+	public synchronized ExecutorService getExecutor() {
+		if (this.executor == null) {
+			ThreadFactory factory = new ThreadFactory() {
+				private int count = 0;
+				public synchronized Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "GenericDAO-" + (++count));
+					t.setDaemon(true);
+					return t;
+				}
+			};
+			this.executor = new ThreadPoolExecutor(this.parallelism, this.parallelism,
+				60, TimeUnit.SECONDS, new ArrayBlockingQueue(Math.max(this.queueSize, 1)),
+				factory, new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		return (this.executor);
+	}
+
+	/** Shuts down the executor of the asynchronous calls. */
+	public synchronized void shutdown() {
+		if (this.executor != null) {
+			this.executor.shutdown();
+			this.executor = null;
+		}
+	}
 
 	public Object executeService(Object key, Object data) {
 		Object retVal = null;
+		try {
+			retVal = this.invoke(key, data, false);
+		} catch (Exception e) {
+			if (log.isErrorEnabled()) { log.error(e); }
+		}
+		return retVal;
+	}
+
+	/**
+	 * Runs the service on the executor.
+	 * @param key the name of the service
+	 * @param data the data of the service
+	 * @return the future result, completed exceptionally if the service
+	 * fails, with a {@link ResultCache.FailedResult} carrying the result
+	 * when the service reports its failure through isFailed
+	 */
+	public CompletableFuture executeServiceAsync(final Object key, final Object data) {
+		final CompletableFuture future = new CompletableFuture();
+		try {
+			this.getExecutor().execute(new Runnable() {
+				public void run() {
+					try {
+						future.complete(GenericDAO.this.invoke(key, data, true));
+					} catch (Throwable t) {
+						future.completeExceptionally(t);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Runs independent services in parallel, each on its own connection,
+	 * and waits for all of them.
+	 * @param keys the names of the services
+	 * @param data the data of each service, may be null
+	 * @return the results in the order of the keys, null for the failed ones
+	 */
+	public List executeServices(List keys, List data) {
+		List futures = new ArrayList(keys.size());
+		for (int i=0; i<keys.size(); i++) {
+			Object o = (data != null && i < data.size()) ? data.get(i) : null;
+			futures.add(this.executeServiceAsync(keys.get(i), o));
+		}
+		List retVal = new ArrayList(futures.size());
+		for (int i=0; i<futures.size(); i++) {
+			Object o = null;
+			try {
+				o = ((CompletableFuture)futures.get(i)).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				if (log.isErrorEnabled()) { log.error(keys.get(i), e.getCause()); }
+			}
+			retVal.add(o);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Runs the service, or takes its result from the cache.
+	 * @param failed true to throw the FailedResult of a failed service
+	 * rather than return its result
+	 */
+	private Object invoke(Object key, final Object data, boolean failed) throws Exception {
 		Object o = services.get(key);
-		Connection conn = null;
 		if (this.dataSource == null) {
-if (log.isErrorEnabled()) { log.error("Null datasource!"); }
-			return null;
+			throw new IllegalStateException("Null datasource!");
 		}
 		if (o == null) {
-if (log.isErrorEnabled()) { log.error("No service found"); }
+			throw new IllegalArgumentException("No service found " + key);
+		}
+		if (o instanceof Service) {
+			final Service svc = (Service)o;
+			// the connection is only borrowed when the result is not cached
+			ConcurrentCache.Loader runner = new ConcurrentCache.Loader() {
+				public Object load(Object k) throws Exception {
+					return GenericDAO.this.run(svc, data);
+				}
+			};
+			if (failed) {
+				return this.resultCache.load(key.toString(), svc, data, runner);
+			}
+			return this.resultCache.execute(key.toString(), svc, data, runner);
 		}
+		return this.run(o, data);
+	}
+
+	/**
+	 * @return true if the service overrides bind to return a copy
+	 */
+	private static boolean isTemplate(Service service) {
+		return ((Boolean)templates.get(service.getClass())).booleanValue();
+	}
+
+	private Object run(Service service, Connection conn, Object data) throws Exception {
+		Service bound = service.bind(conn);
+		Object retVal = bound.execute(data);
+		if (bound instanceof Cacheable && ((Cacheable)bound).isFailed()) {
+			throw new ResultCache.FailedResult(retVal);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Runs the service or command bean on a connection of its own.
+	 */
+	private Object run(Object o, Object data) throws Exception {
+		Object retVal = null;
+		Connection conn = null;
 		try {
 			conn = this.dataSource.getConnection();
-			if (o instanceof Service) {
-				Service svc = (Service)o;
-				svc.setCloseConnection(false);
-				svc.setConnection(conn);
-				retVal = svc.execute(data);
-				svc.setCloseConnection(false);
-				svc.setConnection(null);
+			if (o instanceof Service && GenericDAO.isTemplate((Service)o)) {
+				retVal = this.run((Service)o, conn, data);
+			} else if (o instanceof Service) {
+				// bound in place so the calls are serialized
+				synchronized (o) {
+					try {
+						retVal = this.run((Service)o, conn, data);
+					} finally {
+						((Service)o).setConnection(null);
+					}
+				}
 			} else {
-				Map map = new HashMap();
-				map.put("closeConnection", "false");
-				map.put("connection", conn);
-				BeanUtils.populate(o, map);
-				if (o instanceof Command) {
-					Command cmd = (Command)o;
-					retVal = cmd.execute(data);
+				// a plain bean has no per-call copy so the calls are serialized
+				synchronized (o) {
+					Map map = new HashMap();
+					map.put("closeConnection", "false");
+					map.put("connection", conn);
+					BeanUtils.populate(o, map);
+					if (o instanceof Command) {
+						Command cmd = (Command)o;
+						retVal = cmd.execute(data);
+					}
+					map.put("connection", "");
+					BeanUtils.populate(o, map);
 				}
-				map.put("connection", "");
-				BeanUtils.populate(o, map);
 			}
-		} catch (Exception e) {
-			if (log.isErrorEnabled()) { log.error(e); }
 		} finally {
 			if (this.closeConnection) {
-				DatabaseUtil.closeConnection(conn);
+				QueryService.closeConnection(conn);
 			}
 		}
 		return retVal;
@@ -192,6 +192,14 @@ public class Param implements Serializable {
 	 * @exception throws SQLException
 	 */
 	public void prepareEx(Object o, PreparedStatement pstmt) throws SQLException {
+		this.setValueToStatement(this.getValue(o), pstmt);
+	}
+
+	/**
+	 * Returns the value of the attribute of the bean or map.
+	 * @param o the bean or map
+	 */
+	Object getValue(Object o) {
 		Object param = null;
 		if (o instanceof WrapDynaBean) {
 			WrapDynaBean bean = (WrapDynaBean)o;
@@ -203,115 +211,50 @@ public class Param implements Serializable {
 			WrapDynaBean bean = new WrapDynaBean(o);
 			param = bean.get(this.getAttribute());
 		}
-		this.setValueToStatement(param, pstmt);
+		return param;
 	}
 	
 	private Object readValue(ResultSet rs) throws SQLException {
-		Object retVal = null;
+		int index = this.getSqlIndex();
+		if (index == 0) {
+			index = rs.findColumn(this.getSqlName());
+		}
+		Object retVal = this.readValue(rs, index);
+if (log.isDebugEnabled()) { log.debug(this.getAttribute() + "=" + retVal); }
+		return retVal;
+	}
+	/**
+	 * Reads the value of the column at the index given.
+	 * @see RowMapper
+	 */
+	Object readValue(ResultSet rs, int index) throws SQLException {
 		switch (this.sqlType) {
 		case Types.VARCHAR:
 		case Types.CHAR:
-			String s = null;
-			if (this.getSqlIndex() == 0) {
-				s = rs.getString(this.getSqlName());
-			} else {
-				s = rs.getString(this.getSqlIndex()); 
-			}
-			retVal = s;
-			break;
+			return rs.getString(index);
 		case Types.BOOLEAN:
-			boolean b = false;
-			if (this.getSqlIndex() == 0) {
-				b = rs.getBoolean(this.getSqlName());
-			} else {
-				b = rs.getBoolean(this.getSqlIndex()); 
-			}
-			retVal = new Boolean(b);
-			break;
+			return Boolean.valueOf(rs.getBoolean(index));
 		case Types.INTEGER:
-			int i = 0;
-			if (this.getSqlIndex() == 0) {
-				i = rs.getInt(this.getSqlName());
-			} else {
-				i = rs.getInt(this.getSqlIndex()); 
-			}
-			retVal = new Integer(i);
-			break;
+			return Integer.valueOf(rs.getInt(index));
 		case Types.SMALLINT:
-			short ss = 0;
-			if (this.getSqlIndex() == 0) {
-				ss = rs.getShort(this.getSqlName());
-			} else {
-				ss = rs.getShort(this.getSqlIndex()); 
-			}
-			retVal = new Short(ss);
-			break;
+			return Short.valueOf(rs.getShort(index));
 		case Types.TINYINT:
-			byte bb = 0;
-			if (this.getSqlIndex() == 0) {
-				bb = rs.getByte(this.getSqlName());
-			} else {
-				bb = rs.getByte(this.getSqlIndex()); 
-			}
-			retVal = new Byte(bb);
-			break;
+			return Byte.valueOf(rs.getByte(index));
 		case Types.BIGINT:
-			long l = 0;
-			if (this.getSqlIndex() == 0) {
-				l = rs.getLong(this.getSqlName());
-			} else {
-				l = rs.getLong(this.getSqlIndex()); 
-			}
-			retVal = new Long(l);
-			break;
+			return Long.valueOf(rs.getLong(index));
 		case Types.DOUBLE:
-			double dd = 0;
-			if (this.getSqlIndex() == 0) {
-				dd = rs.getDouble(this.getSqlName());
-			} else {
-				dd = rs.getDouble(this.getSqlIndex()); 
-			}
-			retVal = new Double(dd);
-			break;
+			return Double.valueOf(rs.getDouble(index));
 		case Types.FLOAT:
-			float f = 0;
-			if (this.getSqlIndex() == 0) {
-				f = rs.getFloat(this.getSqlName());
-			} else {
-				f = rs.getFloat(this.getSqlIndex()); 
-			}
-			retVal = new Float(f);
-			break;
+			return Float.valueOf(rs.getFloat(index));
 		case Types.NUMERIC:
-			BigDecimal bd = null;
-			if (this.getSqlIndex() == 0) {
-				bd = rs.getBigDecimal(this.getSqlName());
-			} else {
-				bd = rs.getBigDecimal(this.getSqlIndex()); 
-			}
-			retVal = bd;
-			break;
+			return rs.getBigDecimal(index);
 		case Types.TIMESTAMP:
-			Timestamp ts = null;
-			if (this.getSqlIndex() == 0) {
-				ts = rs.getTimestamp(this.getSqlName());
-			} else {
-				ts = rs.getTimestamp(this.getSqlIndex()); 
-			}
-			retVal = ts;
-			break;
+			return rs.getTimestamp(index);
 		default:
-			if (this.getSqlIndex() == 0) {
-				retVal = rs.getObject(this.getSqlName());
-			} else {
-				retVal = rs.getObject(this.getSqlIndex()); 
-			}
-			break;
+			return rs.getObject(index);
 		}
-if (log.isDebugEnabled()) { log.debug(this.getAttribute() + "=" + retVal); }
-		return retVal;
 	}
-	private void setValueToStatement(Object o, PreparedStatement pstmt) throws SQLException {
+	void setValueToStatement(Object o, PreparedStatement pstmt) throws SQLException {
 if (log.isDebugEnabled()) { log.debug(this.sqlIndex + "=" + o); }
 		switch (this.sqlType) {
 		case Types.VARCHAR:
@@ -19,17 +19,33 @@
 package org.latticesoft.util.resource.dao;
 import java.sql.*;
 import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicLong;
 import org.latticesoft.command.*;
 import org.latticesoft.util.resource.*;
 import org.latticesoft.util.common.*;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-public class QueryService implements Service {
+public class QueryService implements Service, Cacheable, Cloneable {
 	private static final Log log = LogFactory.getLog(QueryService.class);
 	private String name = null;
 	private String sql = null;
 	private String beanType = null;
+	private volatile Class beanClass = null;
+	private volatile RowMapper outputMapper = null;
+	private Map inputMappers = new ConcurrentHashMap();
 
 	private Connection conn = null;
 	private int method = 1;
@@ -41,6 +57,39 @@ public class QueryService implements Service {
 	public static final int EXECUTE_QUERY = 3;
 	public static final int EXECUTE_QUERY_OBJECT = 4;
 
+	/**
+	 * The statement caches of the connections keyed by identity. The
+	 * statements hold their connection so the entries are removed when the
+	 * connection is closed through closeConnection or closeStatements, or
+	 * found closed by the sweep done when the map has doubled.
+	 */
+	private static Map statementCaches = new ConcurrentHashMap();
+	private static AtomicInteger sweepSize = new AtomicInteger(16);
+	private static int statementCacheSize = 64;
+	private static AtomicLong statementHitCount = new AtomicLong();
+	private static AtomicLong statementMissCount = new AtomicLong();
+	private boolean cacheStatement = false;
+	// the cache looked up for the connection of this copy
+	private StatementCache statementCache = null;
+	private Connection statementCacheConn = null;
+	private int fetchSize = 0;
+	private String batchSql = null;
+	private String parentKey = null;
+	private String childKey = null;
+	private int batchSize = 500;
+	private int chunkSize = 0;
+	private int writers = 1;
+	private int retryCount = 0;
+	private DataSource dataSource = null;
+	private ExecutorService executor = null;
+	private static ExecutorService writerPool = null;
+	private String tables = null;
+	private int cacheSize = 0;
+	private long cacheTimeToLive = 0;
+	private boolean failed = false;
+	/** The marker of the key list in the batchSql */
+	public static final String KEYS = "{keys}";
+
 	/** @return Returns the closeConn. */
 	public boolean isCloseConnection() { return (this.closeConn); }
 	/** @param closeConn The closeConn to set. */
@@ -64,7 +113,11 @@ public class QueryService implements Service {
 	/** @return Returns the type. */
 	public String getBeanType() { return (this.beanType); }
 	/** @param type The type to set. */
-	public void setBeanType(String type) { this.beanType = type; }
+	public void setBeanType(String type) {
+		this.beanType = type;
+		this.beanClass = null;
+		this.outputMapper = null;
+	}
 
 	/** Return the type of the service */
 	public int getType() {
@@ -109,6 +162,151 @@ public class QueryService implements Service {
 	/** @param name The name to set. */
 	public void setName(String name) { this.name = name; }
 
+	/** @return Returns the cacheStatement. */
+	public boolean isCacheStatement() { return (this.cacheStatement); }
+	/**
+	 * Keeps the statements open on the connection across the calls. This
+	 * only pays off for connections owned by the caller and kept open
+	 * across the calls, who should call {@link #closeStatements(Connection)}
+	 * before closing them. On a connection borrowed for one call, as the
+	 * GenericDAO does, the statements only live for that call. The
+	 * connections of the {@link ConnectionPool} cache their own statements.
+	 * @param cacheStatement The cacheStatement to set.
+	 */
+	public void setCacheStatement(boolean b) { this.cacheStatement = b; }
+
+	/** @return Returns the fetchSize of the streaming queries. */
+	public int getFetchSize() { return (this.fetchSize); }
+	/** @param fetchSize The fetchSize of the streaming queries, 0 for the driver default. */
+	public void setFetchSize(int fetchSize) { this.fetchSize = fetchSize; }
+
+	/** @return Returns the batchSql, the query of the children of many parents with {keys} for the key list. */
+	public String getBatchSql() { return (this.batchSql); }
+	/** @param batchSql The batchSql to set, e.g. SELECT * FROM item WHERE order_id IN ({keys}) */
+	public void setBatchSql(String batchSql) { this.batchSql = batchSql; }
+
+	/** @return Returns the parentKey, the attribute of the parent bean holding the key. */
+	public String getParentKey() { return (this.parentKey); }
+	/** @param parentKey The parentKey to set. */
+	public void setParentKey(String parentKey) { this.parentKey = parentKey; }
+
+	/** @return Returns the childKey, the attribute of the child bean holding the key of its parent. */
+	public String getChildKey() { return (this.childKey); }
+	/** @param childKey The childKey to set. */
+	public void setChildKey(String childKey) { this.childKey = childKey; }
+
+	/** @return Returns the maximum number of keys in one batch query. */
+	public int getBatchSize() { return (this.batchSize); }
+	/** @param batchSize The maximum number of keys in one batch query. */
+	public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+
+	/** @return Returns the number of rows committed together by executeBatch, 0 for one batch. */
+	public int getChunkSize() { return (this.chunkSize); }
+	/** @param chunkSize The number of rows committed together by executeBatch, 0 for one batch. */
+	public void setChunkSize(int chunkSize) { this.chunkSize = chunkSize; }
+
+	/** @return Returns the number of parallel writers of the bulk writes. */
+	public int getWriters() { return (this.writers); }
+	/** @param writers The number of parallel writers, each on its own connection of the dataSource. */
+	public void setWriters(int writers) { this.writers = writers; }
+
+	/** @return Returns the number of times a failed chunk is tried again. */
+	public int getRetryCount() { return (this.retryCount); }
+	/** @param retryCount The number of times a failed chunk is tried again. */
+	public void setRetryCount(int retryCount) { this.retryCount = retryCount; }
+
+	/** @return Returns the dataSource of the parallel writers. */
+	public DataSource getDataSource() { return (this.dataSource); }
+	/** @param dataSource The dataSource of the parallel writers, usually a {@link ConnectionPool}. */
+	public void setDataSource(DataSource dataSource) { this.dataSource = dataSource; }
+	/** @return Returns the executor of the parallel writers, null for the shared one. */
+	public ExecutorService getExecutor() { return (this.executor); }
+	/** @param executor The executor of the parallel writers, null for the shared one. */
+	public void setExecutor(ExecutorService executor) { this.executor = executor; }
+
+	/**
+	 * Returns the pool of the writers shared by the services without an
+	 * executor. It grows as needed, the number of writers being bounded
+	 * per call, and its threads are daemons ending when idle.
+	 */
+	private static synchronized ExecutorService getWriterPool() {
+		if (writerPool == null) {
+			writerPool = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+				new SynchronousQueue(), new ThreadFactory() {
+					private int count = 0;
+					public synchronized Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "QueryService-writer-" + (++count));
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		}
+		return writerPool;
+	}
+
+	/** @return Returns the tables read or written by the service, comma separated. */
+	public String getTables() { return (this.tables); }
+	/** @param tables The tables read or written by the service, comma separated. */
+	public void setTables(String tables) { this.tables = tables; }
+
+	/** @return Returns the maximum number of results cached, 0 for no caching. */
+	public int getCacheSize() { return (this.cacheSize); }
+	/** @param cacheSize The maximum number of results cached, 0 for no caching. */
+	public void setCacheSize(int cacheSize) { this.cacheSize = cacheSize; }
+
+	/** @return Returns the time to live of the cached results in milliseconds. */
+	public long getCacheTimeToLive() { return (this.cacheTimeToLive); }
+	/** @param cacheTimeToLive The time to live of the cached results in milliseconds. */
+	public void setCacheTimeToLive(long cacheTimeToLive) { this.cacheTimeToLive = cacheTimeToLive; }
+
+	/** @see Cacheable#isFailed() */
+	public boolean isFailed() { return (this.failed); }
+	/** @param failed The failed to set by the subclasses running more queries. */
+	protected void setFailed(boolean failed) { this.failed = failed; }
+
+	/**
+	 * Returns the values of the input params of the data. A batch can
+	 * not be cached.
+	 * @see Cacheable#getInputValues(Object)
+	 */
+	public Object[] getInputValues(Object data) {
+		if (this.method != EXECUTE_QUERY && this.method != EXECUTE_QUERY_OBJECT) {
+			return null;
+		}
+		Object[] values = new Object[this.inputParam.size()];
+		if (data == null) {
+			return values;
+		}
+		try {
+			for (int i=0; i<values.length; i++) {
+				values[i] = ((Param)this.inputParam.get(i)).getValue(data);
+			}
+		} catch (Exception e) {
+			if (log.isWarnEnabled()) { log.warn("Unable to read the input of " + this.name, e); }
+			return null;
+		}
+		return values;
+	}
+
+	/**
+	 * @return true if the service can load the children of many parents at once
+	 * @see RecursiveService
+	 */
+	public boolean isBatchQuery() {
+		return this.batchSql != null && this.batchSql.indexOf(KEYS) >= 0
+			&& this.parentKey != null && this.childKey != null;
+	}
+
+	/** @return Returns the number of statements kept per connection. */
+	public static int getStatementCacheSize() { return (statementCacheSize); }
+	/** @param size The number of statements kept per connection. */
+	public static void setStatementCacheSize(int size) { statementCacheSize = size; }
+
+	/** @return Returns the number of statements reused from the cache. */
+	public static long getStatementHitCount() { return (statementHitCount.get()); }
+	/** @return Returns the number of statements prepared because none was cached. */
+	public static long getStatementMissCount() { return (statementMissCount.get()); }
+
 	/** @return Returns the inputParam. */
 	public ArrayList getInputParam() { return (this.inputParam); }
 	/** @return Returns the outputParam. */
@@ -131,6 +329,7 @@ public class QueryService implements Service {
 	
 	/** @see Command#execute(Object) */
 	public Object execute(Object o) throws CommandException {
+		this.failed = false;
 		switch(this.method) {
 		case EXECUTE_UPDATE:
 			return new Integer(this.executeUpdate(o));
@@ -152,6 +351,161 @@ public class QueryService implements Service {
 		return null;
 	}
 	
+	public Service bind(Connection conn) {
+		// compiles the output params once in the template so that the
+		// copies share the mapper
+		this.getOutputMapper();
+		try {
+			QueryService s = (QueryService)this.clone();
+			s.conn = conn;
+			s.closeConn = false;
+			s.statementCache = null;
+			s.statementCacheConn = null;
+			return s;
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the statement cache of the connection. There is none when
+	 * the connection is closed after the call, or when it comes from the
+	 * {@link ConnectionPool} which caches its own statements. The cache
+	 * is kept in this copy so the map is looked up once per call.
+	 */
+	private StatementCache getStatementCache() {
+		if (!this.cacheStatement || this.closeConn || statementCacheSize <= 0 || this.conn == null) {
+			return null;
+		}
+		if (this.statementCache != null && this.statementCacheConn == this.conn) {
+			return this.statementCache;
+		}
+		try {
+			if (this.conn.isWrapperFor(StatementCache.class)) {
+				return null;
+			}
+		} catch (Throwable t) {
+			// drivers older than JDBC 4
+		}
+		ConnectionKey key = new ConnectionKey(this.conn);
+		StatementCache cache = (StatementCache)statementCaches.get(key);
+		if (cache == null) {
+			StatementCache c = new StatementCache(statementCacheSize);
+			cache = (StatementCache)statementCaches.putIfAbsent(key, c);
+			if (cache == null) {
+				cache = c;
+				QueryService.removeClosed();
+			}
+		}
+		this.statementCache = cache;
+		this.statementCacheConn = this.conn;
+		return cache;
+	}
+
+	/**
+	 * Drops the caches of the connections closed by their owner without
+	 * closeStatements. The connections are only checked once the map has
+	 * doubled since the last sweep.
+	 */
+	private static void removeClosed() {
+		int size = sweepSize.get();
+		if (statementCaches.size() < size || !sweepSize.compareAndSet(size, Integer.MAX_VALUE)) {
+			return;
+		}
+		Iterator iter = statementCaches.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry e = (Map.Entry)iter.next();
+			boolean closed = true;
+			try {
+				closed = ((ConnectionKey)e.getKey()).conn.isClosed();
+			} catch (Throwable t) {
+			}
+			if (closed && statementCaches.remove(e.getKey(), e.getValue())) {
+				((StatementCache)e.getValue()).close();
+			}
+		}
+		sweepSize.set(Math.max(16, statementCaches.size() * 2));
+	}
+
+	/**
+	 * Closes the statements cached for the connection. To be called by
+	 * the owner of a connection used with cacheStatement before closing it.
+	 */
+	public static void closeStatements(Connection conn) {
+		if (conn == null) {
+			return;
+		}
+		StatementCache cache = (StatementCache)statementCaches.remove(new ConnectionKey(conn));
+		if (cache != null) {
+			cache.close();
+		}
+	}
+
+	/**
+	 * Returns the statement of the sql, reusing the one cached for the
+	 * connection if any.
+	 */
+	private PreparedStatement prepareStatement(String sql) throws SQLException {
+		StatementCache cache = this.getStatementCache();
+		if (cache == null) {
+			return this.conn.prepareStatement(sql);
+		}
+		PreparedStatement pstmt = cache.take(sql);
+		if (pstmt != null && !QueryService.isClosed(pstmt)) {
+			statementHitCount.incrementAndGet();
+			return pstmt;
+		}
+		statementMissCount.incrementAndGet();
+		return this.conn.prepareStatement(sql);
+	}
+
+	/**
+	 * Returns the statement to the cache of the connection, or closes it
+	 * if the statement is not cached.
+	 */
+	private void releaseStatement(String sql, PreparedStatement pstmt) {
+		if (pstmt == null) {
+			return;
+		}
+		StatementCache cache = this.getStatementCache();
+		if (cache == null) {
+			DatabaseUtil.closeStatement(pstmt);
+		} else {
+			cache.release(sql, pstmt);
+		}
+	}
+
+	private static boolean isClosed(PreparedStatement pstmt) {
+		try {
+			return pstmt.isClosed();
+		} catch (Throwable t) {
+			return false;
+		}
+	}
+
+	/**
+	 * Compares the connections by identity as their equals may not.
+	 */
+	private static class ConnectionKey {
+		private final Connection conn;
+		ConnectionKey(Connection conn) { this.conn = conn; }
+		public int hashCode() { return System.identityHashCode(this.conn); }
+		public boolean equals(Object o) {
+			return (o instanceof ConnectionKey) && ((ConnectionKey)o).conn == this.conn;
+		}
+	}
+
+	/**
+	 * Closes the statements cached for the connection and the connection.
+	 */
+	protected static void closeConnection(Connection conn) {
+		if (conn == null) {
+			return;
+		}
+		QueryService.closeStatements(conn);
+		DatabaseUtil.closeConnection(conn);
+	}
+
 	/**
 	 * Prepares the statement for execution
 	 * @param pstmt the statement to be prepared
@@ -159,10 +513,12 @@ public class QueryService implements Service {
 	 */
 	private void prepare(PreparedStatement pstmt, Object data) {
 		if (data == null || pstmt == null) return;
-		for (int i=0; i<this.inputParam.size(); i++) {
-			Param p = (Param)inputParam.get(i);
-			p.prepare(data, pstmt);
+		RowMapper mapper = (RowMapper)this.inputMappers.get(data.getClass());
+		if (mapper == null || !mapper.matches(this.inputParam)) {
+			mapper = RowMapper.forInput(this.inputParam, data.getClass());
+			this.inputMappers.put(data.getClass(), mapper);
 		}
+		mapper.prepare(data, pstmt);
 	}
 	
 	/**
@@ -192,6 +548,71 @@ public class QueryService implements Service {
 			p.populate(data, rs);
 		}
 	}
+
+	/**
+	 * Returns the output params compiled for the bean type.
+	 * @return the mapper or null if the bean type is not a class
+	 */
+	private RowMapper getOutputMapper() {
+		if (this.beanClass == null && this.beanType != null) {
+			try {
+				this.beanClass = Class.forName(this.beanType);
+			} catch (Exception e) {
+				if (log.isErrorEnabled()) { log.error(e); }
+				return null;
+			}
+		}
+		if (this.beanClass == null) {
+			return null;
+		}
+		RowMapper mapper = this.outputMapper;
+		if (mapper == null || mapper.getBeanClass() != this.beanClass || !mapper.matches(this.outputParam)) {
+			mapper = RowMapper.forOutput(this.outputParam, this.beanClass);
+			this.outputMapper = mapper;
+		}
+		return mapper;
+	}
+
+	/**
+	 * Reads the rows of the ResultSet into new beans of the bean type.
+	 * @param rs the ResultSet
+	 * @param c the collection to add the beans to
+	 * @param max the maximum number of rows to read, negative for all
+	 */
+	private void readRows(ResultSet rs, Collection c, int max) throws SQLException {
+		RowMapper mapper = this.getOutputMapper();
+		int[] index = null;
+		int count = 0;
+		while (rs != null && (max < 0 || count < max) && rs.next()) {
+			count++;
+			if (mapper != null && index == null) {
+				index = mapper.resolve(rs);
+			}
+			Object bean = this.readRow(rs, mapper, index);
+			if (bean != null) {
+				c.add(bean);
+			}
+		}
+	}
+
+	/**
+	 * Reads the current row of the ResultSet into a new bean.
+	 * @param mapper the output mapper, may be null
+	 * @param index the column indexes resolved by the mapper
+	 * @return the bean or null if it can not be created
+	 */
+	Object readRow(ResultSet rs, RowMapper mapper, int[] index) {
+		Object bean = (mapper == null) ? null : mapper.newInstance();
+		if (bean == null) {
+			bean = ClassUtil.newInstance(this.beanType);
+			if (bean != null) {
+				this.populate(rs, bean);
+			}
+		} else {
+			mapper.populate(bean, rs, index);
+		}
+		return bean;
+	}
 	
 	/**
 	 * Executes update to the database
@@ -203,16 +624,17 @@ public class QueryService implements Service {
 		int res = 0;
 		try {
 if (log.isDebugEnabled()) { log.debug(sql); }
-			pstmt = conn.prepareStatement(sql);
+			pstmt = this.prepareStatement(this.sql);
 			this.prepare(pstmt, data);
 			res = pstmt.executeUpdate();
 		} catch (Exception e) {
+			this.failed = true;
 			if (log.isErrorEnabled()) { log.error(e); }
 		} finally {
-			DatabaseUtil.closeStatement(pstmt);
+			this.releaseStatement(this.sql, pstmt);
 			pstmt = null;
 			if (this.closeConn) {
-				DatabaseUtil.closeConnection(conn);
+				QueryService.closeConnection(conn);
 				conn = null;
 			}
 			
@@ -227,11 +649,29 @@ if (log.isDebugEnabled()) { log.debug(sql); }
 	 */
 	public int[] executeBatch(Collection c) {
 		if (c == null) return null;
+		if (this.chunkSize > 0) {
+			List results = this.executeBulk(c);
+			int total = 0;
+			for (int i=0; i<results.size(); i++) {
+				total += ((BatchResult)results.get(i)).getSize();
+			}
+			int[] res = new int[total];
+			for (int i=0; i<results.size(); i++) {
+				BatchResult r = (BatchResult)results.get(i);
+				if (r.isSuccess() && r.getCounts().length == r.getSize()) {
+					System.arraycopy(r.getCounts(), 0, res, r.getOffset(), r.getSize());
+				} else {
+					Arrays.fill(res, r.getOffset(), r.getOffset() + r.getSize(),
+						r.isSuccess() ? Statement.SUCCESS_NO_INFO : Statement.EXECUTE_FAILED);
+				}
+			}
+			return res;
+		}
 		PreparedStatement pstmt = null;
 		int[] res = null;
 		try {
 if (log.isDebugEnabled()) { log.debug(sql); }
-			pstmt = conn.prepareStatement(this.sql);
+			pstmt = this.prepareStatement(this.sql);
 			Iterator iter = c.iterator();
 			while (iter.hasNext()) {
 				Object iterObj = iter.next();
@@ -241,12 +681,13 @@ if (log.isDebugEnabled()) { log.debug(sql); }
 			}
 			res = pstmt.executeBatch();
 		} catch (Exception e) {
+			this.failed = true;
 			if (log.isErrorEnabled()) { log.error(e); }
 		} finally {
-			DatabaseUtil.closeStatement(pstmt);
+			this.releaseStatement(this.sql, pstmt);
 			pstmt = null;
 			if (this.closeConn) {
-				DatabaseUtil.closeConnection(conn);
+				QueryService.closeConnection(conn);
 				conn = null;
 			}
 			
@@ -254,6 +695,215 @@ if (log.isDebugEnabled()) { log.debug(sql); }
 		return res;
 	}
 	
+	/**
+	 * Writes the collection in chunks of chunkSize rows, each chunk in its
+	 * own transaction. A failed chunk is rolled back and tried again up
+	 * to retryCount times. On a connection already in a transaction, the
+	 * chunks are not committed but written between savepoints, so the
+	 * work of the caller is neither committed nor rolled back. With more
+	 * than one writer and a dataSource,
+	 * the chunks are shared by the writers, each on its own connection.
+	 * Otherwise the chunks are written in order on the connection of
+	 * the service.
+	 * @param c the beans to write, the null elements are skipped
+	 * @return the {@link BatchResult} of each chunk in order
+	 */
+	public List executeBulk(Collection c) {
+		List results = new ArrayList();
+		if (c == null) return results;
+		final List rows = new ArrayList(c.size());
+		Iterator iter = c.iterator();
+		while (iter.hasNext()) {
+			Object o = iter.next();
+			if (o != null) {
+				rows.add(o);
+			}
+		}
+		int size = (this.chunkSize > 0) ? this.chunkSize : Math.max(rows.size(), 1);
+		for (int offset=0; offset<rows.size(); offset+=size) {
+			results.add(new BatchResult(results.size(), offset, Math.min(size, rows.size() - offset)));
+		}
+		try {
+if (log.isDebugEnabled()) { log.debug(sql + " " + rows.size() + " rows in " + results.size() + " chunks"); }
+			if (this.writers > 1 && this.dataSource != null && results.size() > 1) {
+				this.writeParallel(rows, results);
+			} else {
+				for (int i=0; i<results.size(); i++) {
+					this.writeChunk(this.conn, rows, (BatchResult)results.get(i));
+				}
+			}
+			for (int i=0; i<results.size(); i++) {
+				if (!((BatchResult)results.get(i)).isSuccess()) {
+					this.failed = true;
+				}
+			}
+		} finally {
+			if (this.closeConn) {
+				QueryService.closeConnection(conn);
+				conn = null;
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Shares the chunks among the writers. Each writer borrows its own
+	 * connection and takes the next chunk until none is left. The writers
+	 * run on the executor, or the shared pool, and one in the caller.
+	 * The writers the executor has not started once the caller is done
+	 * are cancelled, so a busy executor does not block the call.
+	 */
+	private void writeParallel(final List rows, final List results) {
+		int count = Math.min(this.writers, results.size());
+		final AtomicInteger next = new AtomicInteger();
+		Runnable writer = new Runnable() {
+			public void run() {
+				Connection cn = null;
+				try {
+					cn = dataSource.getConnection();
+					int i = 0;
+					while ((i = next.getAndIncrement()) < results.size()) {
+						writeChunk(cn, rows, (BatchResult)results.get(i));
+					}
+				} catch (SQLException e) {
+					if (log.isErrorEnabled()) { log.error("Writer unable to connect", e); }
+				} finally {
+					DatabaseUtil.closeConnection(cn);
+				}
+			}
+		};
+		ExecutorService es = (this.executor != null) ? this.executor : getWriterPool();
+		List futures = new ArrayList();
+		for (int w=1; w<count; w++) {
+			try {
+				futures.add(es.submit(writer));
+			} catch (RejectedExecutionException e) {
+				break;
+			}
+		}
+		writer.run();
+		for (int i=0; i<futures.size(); i++) {
+			Future f = (Future)futures.get(i);
+			if (f.cancel(false)) {
+				continue;
+			}
+			try {
+				f.get();
+			} catch (Exception e) {
+				if (log.isErrorEnabled()) { log.error(e); }
+			}
+		}
+		// the chunks left by writers which could not connect
+		for (int i=0; i<results.size(); i++) {
+			BatchResult r = (BatchResult)results.get(i);
+			if (r.getAttempts() == 0) {
+				this.writeChunk(this.conn, rows, r);
+			}
+		}
+	}
+
+	/**
+	 * Writes one chunk in a transaction, trying again on failure. When
+	 * the caller has a transaction open on the connection, the chunk is
+	 * written after a savepoint and only rolled back to it.
+	 */
+	private void writeChunk(Connection cn, List rows, BatchResult result) {
+		if (cn == null) {
+			result.setError(new SQLException("No connection"));
+			return;
+		}
+		boolean autoCommit = true;
+		try {
+			autoCommit = cn.getAutoCommit();
+			if (autoCommit) {
+				cn.setAutoCommit(false);
+			}
+		} catch (SQLException e) {
+			result.setError(e);
+			return;
+		}
+		try {
+			for (int attempt=0; attempt<=this.retryCount; attempt++) {
+				PreparedStatement pstmt = null;
+				Savepoint savepoint = null;
+				result.setAttempts(attempt + 1);
+				try {
+					if (!autoCommit) {
+						savepoint = this.setSavepoint(cn, result);
+						if (savepoint == null) {
+							return;
+						}
+					}
+					pstmt = cn.prepareStatement(this.sql);
+					int end = result.getOffset() + result.getSize();
+					for (int i=result.getOffset(); i<end; i++) {
+						this.prepare(pstmt, rows.get(i));
+						pstmt.addBatch();
+					}
+					int[] counts = pstmt.executeBatch();
+					if (autoCommit) {
+						cn.commit();
+					} else {
+						this.releaseSavepoint(cn, savepoint);
+					}
+					result.setCounts(counts);
+					result.setError(null);
+					return;
+				} catch (Exception e) {
+					if (log.isWarnEnabled()) { log.warn("Chunk " + result.getChunk() + " failed attempt " + (attempt + 1), e); }
+					result.setError(e);
+					try {
+						if (autoCommit) {
+							cn.rollback();
+						} else if (savepoint != null) {
+							cn.rollback(savepoint);
+						}
+					} catch (SQLException sqle) {
+						if (log.isErrorEnabled()) { log.error(sqle); }
+					}
+				} finally {
+					DatabaseUtil.closeStatement(pstmt);
+				}
+			}
+		} finally {
+			if (autoCommit) {
+				try {
+					cn.setAutoCommit(true);
+				} catch (SQLException e) {
+					if (log.isErrorEnabled()) { log.error(e); }
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets a savepoint in the transaction of the caller. A chunk is not
+	 * written on a connection without savepoints, as a failure could only
+	 * be undone by rolling back the work of the caller.
+	 * @return the savepoint or null if the connection has none
+	 */
+	private Savepoint setSavepoint(Connection cn, BatchResult result) {
+		try {
+			return cn.setSavepoint();
+		} catch (Exception e) {
+			result.setError(e);
+		} catch (AbstractMethodError e) {
+			result.setError(new SQLException("Savepoints not supported by " + cn));
+		}
+		if (log.isErrorEnabled()) { log.error("Chunk " + result.getChunk() + " not written, the connection is in a transaction without savepoints"); }
+		return null;
+	}
+
+	private void releaseSavepoint(Connection cn, Savepoint savepoint) {
+		try {
+			cn.releaseSavepoint(savepoint);
+		} catch (Exception e) {
+			// the savepoint ends with the transaction anyway
+		} catch (AbstractMethodError e) {
+			// the savepoint ends with the transaction anyway
+		}
+	}
+
 	/**
 	 * Executes a query for a single object
 	 * @param data for preparing the statement
@@ -265,24 +915,24 @@ if (log.isDebugEnabled()) { log.debug(sql); }
 		ResultSet rs = null;
 		try {
 if (log.isDebugEnabled()) { log.debug(sql); }
-			pstmt = conn.prepareStatement(sql);
+			pstmt = this.prepareStatement(this.sql);
 			this.prepare(pstmt, data);
 			rs = pstmt.executeQuery();
-			if (rs != null && rs.next()) {
-				retVal = ClassUtil.newInstance(this.beanType);
-				if (retVal != null) {
-					this.populate(rs, retVal);
-				}
+			ArrayList a = new ArrayList(1);
+			this.readRows(rs, a, 1);
+			if (a.size() > 0) {
+				retVal = a.get(0);
 			}
 		} catch (Exception e) {
+			this.failed = true;
 			if (log.isErrorEnabled()) { log.error(e); }
 		} finally {
 			DatabaseUtil.closeResultSet(rs);
-			DatabaseUtil.closeStatement(pstmt);
+			this.releaseStatement(this.sql, pstmt);
 			rs = null;
 			pstmt = null;
 			if (this.closeConn) {
-				DatabaseUtil.closeConnection(conn);
+				QueryService.closeConnection(conn);
 				conn = null;
 			}
 		}
@@ -296,35 +946,168 @@ if (log.isDebugEnabled()) { log.debug(sql); }
 	 */
 	public Collection executeQuery(Object data) {
 		ArrayList a = new ArrayList();
-		Object retVal = null;
 		PreparedStatement pstmt = null;
 		ResultSet rs = null;
 		try {
 if (log.isDebugEnabled()) { log.debug(sql); }
-			pstmt = conn.prepareStatement(sql);
+			pstmt = this.prepareStatement(this.sql);
 			this.prepare(pstmt, data);
 			rs = pstmt.executeQuery();
-			while (rs != null && rs.next()) {
-				retVal = ClassUtil.newInstance(this.beanType);
-				if (retVal != null) {
-					this.populate(rs, retVal);
-					a.add(retVal);
+			this.readRows(rs, a, -1);
+		} catch (Exception e) {
+			this.failed = true;
+			if (log.isErrorEnabled()) { log.error(e); }
+		} finally {
+			DatabaseUtil.closeResultSet(rs);
+			this.releaseStatement(this.sql, pstmt);
+			rs = null;
+			pstmt = null;
+			if (this.closeConn) {
+				QueryService.closeConnection(conn);
+				conn = null;
+			}
+		}
+		return a;
+	}
+
+	/**
+	 * Executes the batchSql for the keys given, in chunks of batchSize
+	 * keys. The last chunk is padded with its last key so that all the
+	 * chunks share the same statement.
+	 * @param keys the keys of the parents
+	 * @return the beans of all the chunks
+	 */
+	public Collection executeQueryIn(Collection keys) {
+		ArrayList a = new ArrayList();
+		this.failed = false;
+		if (keys == null || keys.isEmpty() || this.batchSql == null) {
+			if (this.closeConn) {
+				QueryService.closeConnection(conn);
+				conn = null;
+			}
+			return a;
+		}
+		Object[] k = keys.toArray();
+		int size = (this.batchSize > 0) ? Math.min(this.batchSize, k.length) : k.length;
+		StringBuffer sb = new StringBuffer();
+		for (int i=0; i<size; i++) {
+			if (i > 0) {
+				sb.append(",");
+			}
+			sb.append("?");
+		}
+		String s = StringUtil.replace(this.batchSql, KEYS, sb.toString());
+		PreparedStatement pstmt = null;
+		ResultSet rs = null;
+		try {
+if (log.isDebugEnabled()) { log.debug(s); }
+			pstmt = this.prepareStatement(s);
+			for (int start=0; start<k.length; start+=size) {
+				for (int i=0; i<size; i++) {
+					pstmt.setObject(i + 1, k[Math.min(start + i, k.length - 1)]);
 				}
+				rs = pstmt.executeQuery();
+				this.readRows(rs, a, -1);
+				DatabaseUtil.closeResultSet(rs);
+				rs = null;
 			}
 		} catch (Exception e) {
+			this.failed = true;
 			if (log.isErrorEnabled()) { log.error(e); }
 		} finally {
 			DatabaseUtil.closeResultSet(rs);
-			DatabaseUtil.closeStatement(pstmt);
+			this.releaseStatement(s, pstmt);
 			rs = null;
 			pstmt = null;
 			if (this.closeConn) {
-				DatabaseUtil.closeConnection(conn);
+				QueryService.closeConnection(conn);
 				conn = null;
 			}
 		}
 		return a;
 	}
+
+	/**
+	 * Executes a query whose rows are read one at a time while iterating.
+	 * The statement is forward only and read only, with the fetch size
+	 * of the service. The connection is handed to the iterator, which
+	 * closes it at the end if the service closes its connections.
+	 * @param data for preparing the statement
+	 * @return the iterator of the beans, to be closed by the caller,
+	 * throwing an IllegalStateException from hasNext if the query failed
+	 */
+	public ResultIterator executeQueryIterator(Object data) {
+		this.failed = false;
+		Connection c = this.conn;
+		boolean close = this.closeConn;
+		PreparedStatement pstmt = null;
+		ResultSet rs = null;
+		try {
+if (log.isDebugEnabled()) { log.debug(sql); }
+			pstmt = c.prepareStatement(this.sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			if (this.fetchSize != 0) {
+				pstmt.setFetchSize(this.fetchSize);
+			}
+			this.prepare(pstmt, data);
+			rs = pstmt.executeQuery();
+			return new ResultIterator(this, c, close, pstmt, rs, this.getOutputMapper());
+		} catch (Exception e) {
+			this.failed = true;
+			if (log.isErrorEnabled()) { log.error(e); }
+			DatabaseUtil.closeResultSet(rs);
+			DatabaseUtil.closeStatement(pstmt);
+			if (close) {
+				QueryService.closeConnection(c);
+			}
+			return new ResultIterator(this, e);
+		} finally {
+			if (close) {
+				this.conn = null;
+			}
+		}
+	}
+
+	/**
+	 * Executes a query as a stream of beans read one row at a time.
+	 * Closing the stream releases the statement and the connection.
+	 * @see #executeQueryIterator(Object)
+	 */
+	public Stream executeQueryStream(Object data) {
+		final ResultIterator iter = this.executeQueryIterator(data);
+		Stream stream = StreamSupport.stream(Spliterators.spliteratorUnknownSize(iter,
+			Spliterator.ORDERED | Spliterator.NONNULL), false);
+		return (Stream)stream.onClose(new Runnable() {
+			public void run() {
+				iter.close();
+			}
+		});
+	}
+
+	/**
+	 * Executes a query and passes each bean to the callback as it is read.
+	 * The query stops when the callback returns Boolean.TRUE, like a
+	 * {@link Chain} being terminated.
+	 * @param data for preparing the statement
+	 * @param callback the command executed with each bean
+	 * @return the number of beans passed to the callback
+	 * @throws IllegalStateException if the query or reading its rows fails
+	 */
+	public int executeQuery(Object data, Command callback) {
+		ResultIterator iter = this.executeQueryIterator(data);
+		int count = 0;
+		try {
+			while (iter.hasNext()) {
+				Object bean = iter.next();
+				count++;
+				if (Boolean.TRUE.equals(callback.execute(bean))) {
+					break;
+				}
+			}
+		} finally {
+			iter.close();
+		}
+		return count;
+	}
 /*	
 	public static void main(String[] args) {
 		try {
@@ -51,14 +51,7 @@ public class RecursiveService extends QueryService {
 			if (retVal == null) return null;
 if (log.isDebugEnabled()) { log.debug("RetVal " + retVal); }
 			if (retVal instanceof Collection) {
-				Collection c = (Collection)retVal;
-				Iterator iter = c.iterator();
-				while (iter.hasNext()) {
-					Object iterObj = iter.next();
-					if (iterObj != null) {
-						this.processBeanByChildService(iterObj);
-					}
-				}
+				this.processBeansByChildService((Collection)retVal);
 			} else {
 				this.processBeanByChildService(retVal);
 			}
@@ -70,30 +63,125 @@ if (log.isDebugEnabled()) { log.debug("RetVal " + retVal); }
 		return retVal;
 	}
 	
+	/**
+	 * Loads the children of the beans of the batch query given, then
+	 * passes the children to the child services.
+	 * @see QueryService#executeQueryIn(Collection)
+	 */
+	public Collection executeQueryIn(Collection keys) {
+		Collection c = super.executeQueryIn(keys);
+		this.processBeansByChildService(c);
+		return c;
+	}
+
+	/**
+	 * Process the beans of a query by the child services. A child which
+	 * is a batch query runs once for many beans and its results are
+	 * grouped back to the beans by key. The other childs run once per bean.
+	 */
+	private void processBeansByChildService(Collection beans) {
+		for (int i=0; i<this.childs.size(); i++) {
+			Service child = (Service)this.childs.get(i);
+			if (child.getType() == Service.QUERY && child instanceof QueryService
+					&& ((QueryService)child).isBatchQuery()) {
+				this.loadChildren((QueryService)child, beans);
+				continue;
+			}
+			Iterator iter = beans.iterator();
+			while (iter.hasNext()) {
+				Object iterObj = iter.next();
+				if (iterObj != null) {
+					this.processBeanByChildService(child, iterObj);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the batch query of the child for the keys of all the beans and
+	 * sets the children found to each bean.
+	 */
+	private void loadChildren(QueryService child, Collection beans) {
+		// the keys are deduplicated once normalized but bound as read
+		Map keys = new LinkedHashMap();
+		Iterator iter = beans.iterator();
+		while (iter.hasNext()) {
+			Object value = BeanUtil.getAttribute(iter.next(), child.getParentKey());
+			Object key = KeyNormalizer.normalize(value);
+			if (key != null && !keys.containsKey(key)) {
+				keys.put(key, value);
+			}
+		}
+		QueryService bound = (QueryService)child.bind(this.getConnection());
+		Collection res = bound.executeQueryIn(keys.values());
+		if (bound.isFailed()) {
+			// the parents are incomplete and must not be cached
+			this.setFailed(true);
+		}
+if (log.isDebugEnabled()) { log.debug(child.getName() + " loaded " + res.size() + " for " + keys.size() + " keys"); }
+
+		Map groups = new HashMap();
+		iter = res.iterator();
+		while (iter.hasNext()) {
+			Object o = iter.next();
+			Object key = KeyNormalizer.normalize(BeanUtil.getAttribute(o, child.getChildKey()));
+			List list = (List)groups.get(key);
+			if (list == null) {
+				list = new ArrayList();
+				groups.put(key, list);
+			}
+			list.add(o);
+		}
+		boolean single = (child.getMethod() == QueryService.EXECUTE_QUERY_OBJECT);
+		iter = beans.iterator();
+		while (iter.hasNext()) {
+			Object bean = iter.next();
+			if (bean == null) {
+				continue;
+			}
+			List list = (List)groups.get(KeyNormalizer.normalize(BeanUtil.getAttribute(bean, child.getParentKey())));
+			Object value = null;
+			if (single) {
+				value = (list == null) ? null : list.get(0);
+			} else {
+				value = (list == null) ? new ArrayList() : list;
+			}
+			BeanUtil.setAttribute(bean, child.getName(), value);
+		}
+	}
+
 	/** Process the bean by the child services */
 	private void processBeanByChildService(Object bean) {
 if (log.isDebugEnabled()) { log.debug("Bean " + bean); }
 		for (int i=0; i<this.childs.size(); i++) {
-			Service child = (Service)this.childs.get(i);
-			child.setConnection(this.getConnection());
-			child.setCloseConnection(false);
-			if (child.getType() == Service.QUERY) {
-				Object res = child.execute(bean);
-				// for query childs we need to update back to the bean 
-				Map map = new HashMap();
-				map.put(child.getName(), res);
-				try {
-					BeanUtils.populate(bean, map);
-				} catch (Exception e) {
-					if (log.isErrorEnabled()) { log.error(e); }
-				}
-			} else if (child.getType() == Service.UPDATE) {
-				// for update we get the attribute from teh bean and pass to the 
-				// child service
-				Object data = BeanUtil.getAttribute(bean, child.getName());
-				child.execute(data);
+			this.processBeanByChildService((Service)this.childs.get(i), bean);
+		}
+	}
+
+	/** Process the bean by one child service */
+	private void processBeanByChildService(Service child, Object bean) {
+		child = child.bind(this.getConnection());
+		if (child.getType() == Service.QUERY) {
+			Object res = child.execute(bean);
+			if (child instanceof Cacheable && ((Cacheable)child).isFailed()) {
+				this.setFailed(true);
+			}
+			// for query childs we need to update back to the bean 
+			Map map = new HashMap();
+			map.put(child.getName(), res);
+			try {
+				BeanUtils.populate(bean, map);
+			} catch (Exception e) {
+				if (log.isErrorEnabled()) { log.error(e); }
+			}
+		} else if (child.getType() == Service.UPDATE) {
+			// for update we get the attribute from teh bean and pass to the 
+			// child service
+			Object data = BeanUtil.getAttribute(bean, child.getName());
+			child.execute(data);
+			if (child instanceof Cacheable && ((Cacheable)child).isFailed()) {
+				this.setFailed(true);
 			}
-			child.setConnection(null);
 		}
 	}
 }
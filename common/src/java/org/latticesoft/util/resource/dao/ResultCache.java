@@ -0,0 +1,281 @@
+/*
+ * Copyright 2004 Senunkan Shinryuu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Created on Oct 18, 2026
+ *
+ */
+package org.latticesoft.util.resource.dao;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import org.latticesoft.util.common.KeyNormalizer;
+import org.latticesoft.util.container.ConcurrentCache;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A read-through cache of the results of the {@link Cacheable} services.
+ * Each service has its own {@link ConcurrentCache} sized by its
+ * cacheSize and cacheTimeToLive. The results are keyed by the values
+ * of the input params of the call. An update service invalidates all
+ * the results of the services sharing one of its tables.
+ * <p>
+ * The cached results are shared by the callers so the lists, sets and
+ * maps are stored as unmodifiable views. The beans they hold must not
+ * be modified. A runner which fails throws a {@link FailedResult} so the result it
+ * carries is returned without being cached.
+ */
+public class ResultCache {
+	private static final Log log = LogFactory.getLog(ResultCache.class);
+	private Map caches = new ConcurrentHashMap();
+	private Map generations = new ConcurrentHashMap();
+	private Map tables = new ConcurrentHashMap();
+
+	/**
+	 * Returns the result of the service for the data, running the
+	 * service only when the result is not cached.
+	 * @param name the name of the service
+	 * @param service the service template
+	 * @param data the data of the call
+	 * @param runner runs the service when the result is not cached
+	 * @return the result
+	 */
+	public Object execute(String name, Service service, Object data, ConcurrentCache.Loader runner) throws Exception {
+		try {
+			return this.load(name, service, data, runner);
+		} catch (FailedResult e) {
+			return e.getResult();
+		}
+	}
+
+	/**
+	 * Returns the result of the service for the data like execute, but
+	 * throws the FailedResult of a failed run to the caller.
+	 * @throws FailedResult if the service has failed
+	 */
+	public Object load(String name, Service service, Object data, final ConcurrentCache.Loader runner) throws Exception {
+		if (!(service instanceof Cacheable)) {
+			return runner.load(data);
+		}
+		Cacheable c = (Cacheable)service;
+		if (service.getType() == Service.UPDATE) {
+			try {
+				return runner.load(data);
+			} finally {
+				// a failed update may have committed some of its data
+				this.invalidateTables(c.getTables());
+			}
+		}
+		Object[] values = (c.getCacheSize() > 0) ? c.getInputValues(data) : null;
+		if (values == null) {
+			return runner.load(data);
+		}
+		ConcurrentCache cache = this.getCache(name, c);
+		AtomicLong generation = (AtomicLong)this.generations.get(name);
+		long before = generation.get();
+		Key key = new Key(values);
+		Object retVal = cache.get(key, new ConcurrentCache.Loader() {
+			public Object load(Object k) throws Exception {
+				return ResultCache.unmodifiable(runner.load(k));
+			}
+		});
+		if (generation.get() != before) {
+			// the tables were updated while loading
+			cache.remove(key);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Returns an unmodifiable view of a collection or map result.
+	 */
+	private static Object unmodifiable(Object o) {
+		if (o instanceof List) {
+			return Collections.unmodifiableList((List)o);
+		} else if (o instanceof Set) {
+			return Collections.unmodifiableSet((Set)o);
+		} else if (o instanceof Collection) {
+			return Collections.unmodifiableCollection((Collection)o);
+		} else if (o instanceof Map) {
+			return Collections.unmodifiableMap((Map)o);
+		}
+		return o;
+	}
+
+	/**
+	 * Returns the cache of the service, creating it on first use.
+	 */
+	private ConcurrentCache getCache(String name, Cacheable c) {
+		ConcurrentCache cache = (ConcurrentCache)this.caches.get(name);
+		if (cache != null) {
+			return cache;
+		}
+		synchronized (this) {
+			cache = (ConcurrentCache)this.caches.get(name);
+			if (cache == null) {
+				cache = new ConcurrentCache(c.getCacheSize());
+				cache.setDefaultTimeToLive(c.getCacheTimeToLive());
+				this.generations.put(name, new AtomicLong());
+				String[] s = split(c.getTables());
+				for (int i=0; i<s.length; i++) {
+					Set names = (Set)this.tables.get(s[i]);
+					if (names == null) {
+						names = new CopyOnWriteArraySet();
+						this.tables.put(s[i], names);
+					}
+					names.add(name);
+				}
+				this.caches.put(name, cache);
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Invalidates the results of the services reading the tables.
+	 * @param s the tables, comma separated
+	 */
+	public void invalidateTables(String s) {
+		String[] t = split(s);
+		for (int i=0; i<t.length; i++) {
+			Set names = (Set)this.tables.get(t[i]);
+			if (names == null) {
+				continue;
+			}
+			Iterator iter = names.iterator();
+			while (iter.hasNext()) {
+				this.invalidate((String)iter.next());
+			}
+		}
+	}
+
+	/**
+	 * Invalidates all the results of the service.
+	 * @param name the name of the service
+	 */
+	public void invalidate(String name) {
+		AtomicLong generation = (AtomicLong)this.generations.get(name);
+		if (generation != null) {
+			generation.incrementAndGet();
+		}
+		ConcurrentCache cache = (ConcurrentCache)this.caches.get(name);
+		if (cache != null) {
+if (log.isDebugEnabled()) { log.debug("Invalidate " + name + " " + cache.size()); }
+			cache.clear();
+		}
+	}
+
+	/** Invalidates all the results. */
+	public void clear() {
+		Iterator iter = this.caches.keySet().iterator();
+		while (iter.hasNext()) {
+			this.invalidate((String)iter.next());
+		}
+	}
+
+	/**
+	 * @param name the name of the service
+	 * @return the hit ratio of the results of the service, 0 if none
+	 */
+	public double getHitRatio(String name) {
+		ConcurrentCache cache = (ConcurrentCache)this.caches.get(name);
+		return (cache == null) ? 0 : cache.getHitRatio();
+	}
+
+	/**
+	 * @return the hit ratio over all the services
+	 */
+	public double getHitRatio() {
+		long hit = 0;
+		long total = 0;
+		Iterator iter = this.caches.values().iterator();
+		while (iter.hasNext()) {
+			ConcurrentCache cache = (ConcurrentCache)iter.next();
+			hit += cache.getHitCount();
+			total += cache.getHitCount() + cache.getMissCount();
+		}
+		return (total == 0) ? 0 : (double)hit / total;
+	}
+
+	/**
+	 * @return the statistics of the cache of each service by name
+	 */
+	public Map getStatistics() {
+		Map map = new TreeMap();
+		Iterator iter = this.caches.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry e = (Map.Entry)iter.next();
+			map.put(e.getKey(), ((ConcurrentCache)e.getValue()).getStatistics());
+		}
+		return map;
+	}
+
+	/**
+	 * Thrown by the runner when the service has failed. The result of
+	 * the failed run is returned to the caller but not cached.
+	 */
+	public static class FailedResult extends Exception {
+		public static final long serialVersionUID = 20261018110000L;
+		private transient Object result;
+
+		public FailedResult(Object result) {
+			super("Service failed");
+			this.result = result;
+		}
+		/** @return Returns the result of the failed run. */
+		public Object getResult() { return (this.result); }
+	}
+
+	private static String[] split(String s) {
+		if (s == null || s.trim().length() == 0) {
+			return new String[0];
+		}
+		String[] t = s.split(",");
+		for (int i=0; i<t.length; i++) {
+			t[i] = t[i].trim().toUpperCase();
+		}
+		return t;
+	}
+
+	/** The key of a result: the normalized input values. */
+	private static class Key {
+		private Object[] values;
+		private int hash;
+
+		private Key(Object[] values) {
+			this.values = new Object[values.length];
+			for (int i=0; i<values.length; i++) {
+				this.values[i] = KeyNormalizer.normalize(values[i]);
+			}
+			this.hash = Arrays.hashCode(this.values);
+		}
+
+		public int hashCode() {
+			return this.hash;
+		}
+
+		public boolean equals(Object o) {
+			if (o == this) return true;
+			if (!(o instanceof Key)) return false;
+			Key k = (Key)o;
+			return this.hash == k.hash && Arrays.equals(this.values, k.values);
+		}
+
+		public String toString() {
+			return Arrays.asList(this.values).toString();
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2004 Senunkan Shinryuu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Created on Oct 18, 2026
+ *
+ */
+package org.latticesoft.util.resource.dao;
+
+import java.io.Closeable;
+import java.sql.*;
+import java.util.*;
+import org.latticesoft.util.resource.DatabaseUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * <p>Iterates over the rows of a query one bean at a time, so the
+ * memory used does not depend on the number of rows. The ResultSet,
+ * the statement and, if the service closes its connections, the
+ * connection are released when the last row is read, when an error
+ * occurs or when the iterator is closed. Always close the iterator
+ * when it is not read to the end.</p>
+ * <p>An error reading the rows marks the service as failed and is
+ * thrown by hasNext and next as an IllegalStateException, so that it
+ * is not taken for the end of the rows.</p>
+ * <code>
+ * ResultIterator iter = service.executeQueryIterator(data);
+ * try {
+ *     while (iter.hasNext()) {
+ *         Object bean = iter.next();
+ *     }
+ * } finally {
+ *     iter.close();
+ * }
+ * </code>
+ * @see QueryService#executeQueryIterator(Object)
+ */
+public class ResultIterator implements Iterator, Closeable {
+	private static final Log log = LogFactory.getLog(ResultIterator.class);
+	private QueryService service;
+	private Connection conn;
+	private boolean closeConn;
+	private PreparedStatement pstmt;
+	private ResultSet rs;
+	private RowMapper mapper;
+	private int[] index;
+	private Object next;
+	private boolean closed = false;
+	private int count = 0;
+	private RuntimeException failure = null;
+
+	ResultIterator(QueryService service, Connection conn, boolean closeConn,
+			PreparedStatement pstmt, ResultSet rs, RowMapper mapper) {
+		this.service = service;
+		this.conn = conn;
+		this.closeConn = closeConn;
+		this.pstmt = pstmt;
+		this.rs = rs;
+		this.mapper = mapper;
+	}
+
+	/**
+	 * Creates a closed iterator throwing the error of the query.
+	 */
+	ResultIterator(QueryService service, Exception e) {
+		this.service = service;
+		this.closed = true;
+		this.failure = new IllegalStateException(e.getMessage(), e);
+	}
+
+	/** @return Returns the number of rows read so far. */
+	public int getCount() { return (this.count); }
+
+	public boolean hasNext() {
+		if (this.next != null) {
+			return true;
+		}
+		if (this.failure != null) {
+			throw this.failure;
+		}
+		if (this.closed) {
+			return false;
+		}
+		try {
+			while (this.next == null && this.rs.next()) {
+				if (this.mapper != null && this.index == null) {
+					this.index = this.mapper.resolve(this.rs);
+				}
+				this.next = this.service.readRow(this.rs, this.mapper, this.index);
+			}
+		} catch (SQLException e) {
+			if (log.isErrorEnabled()) { log.error(e); }
+			this.service.setFailed(true);
+			this.failure = new IllegalStateException(e.getMessage(), e);
+			this.close();
+			throw this.failure;
+		}
+		if (this.next == null) {
+			this.close();
+			return false;
+		}
+		return true;
+	}
+
+	public Object next() {
+		if (!this.hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Object o = this.next;
+		this.next = null;
+		this.count++;
+		return o;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Releases the ResultSet, the statement and the connection if the
+	 * service closes its connections. Closing twice does nothing.
+	 */
+	public void close() {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		this.next = null;
+		DatabaseUtil.closeResultSet(this.rs);
+		DatabaseUtil.closeStatement(this.pstmt);
+		this.rs = null;
+		this.pstmt = null;
+		if (this.closeConn) {
+			QueryService.closeConnection(this.conn);
+		}
+		this.conn = null;
+	}
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2004 Senunkan Shinryuu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Created on Oct 18, 2026
+ *
+ */
+package org.latticesoft.util.resource.dao;
+
+import java.beans.*;
+import java.lang.invoke.*;
+import java.math.*;
+import java.sql.*;
+import java.util.*;
+import org.apache.commons.beanutils.DynaBean;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * <p>The list of {@link Param} of a service compiled for one bean class.
+ * Each param is bound once to the MethodHandle of the bean property, so
+ * a row is read or written without introspection. When the property and
+ * the sql type are the same primitive, the value is passed as a
+ * primitive without boxing.</p>
+ * <p>The columns named by the params are resolved to indexes once per
+ * ResultSet with {@link #resolve(ResultSet)}. A param which can not be
+ * compiled, such as one on a Map or a DynaBean, falls back to
+ * {@link Param#populate(Object, ResultSet)} and
+ * {@link Param#prepare(Object, PreparedStatement)}.</p>
+ * <p>The mapper is immutable and can be shared by many threads.</p>
+ */
+public class RowMapper {
+	private static final Log log = LogFactory.getLog(RowMapper.class);
+
+	private static final int LEGACY = 0;
+	private static final int INT = 1;
+	private static final int LONG = 2;
+	private static final int SHORT = 3;
+	private static final int BYTE = 4;
+	private static final int DOUBLE = 5;
+	private static final int FLOAT = 6;
+	private static final int BOOLEAN = 7;
+	private static final int OBJECT = 8;
+
+	private Class beanClass;
+	private Param[] params;
+	private int[] kinds;
+	private MethodHandle[] handles;
+	private MethodHandle constructor;
+
+	private RowMapper(Class beanClass, Param[] params) {
+		this.beanClass = beanClass;
+		this.params = params;
+		this.kinds = new int[params.length];
+		this.handles = new MethodHandle[params.length];
+	}
+
+	/**
+	 * Compiles the params to populate the beans of the class from a ResultSet.
+	 * @param params the output params
+	 * @param beanClass the class of the beans
+	 */
+	public static RowMapper forOutput(List params, Class beanClass) {
+		RowMapper mapper = new RowMapper(beanClass, (Param[])params.toArray(new Param[params.size()]));
+		Map properties = mapper.getProperties();
+		for (int i=0; i<mapper.params.length; i++) {
+			PropertyDescriptor pd = (PropertyDescriptor)properties.get(mapper.params[i].getAttribute());
+			if (pd != null && pd.getWriteMethod() != null) {
+				mapper.compileSetter(i, pd);
+			}
+		}
+		try {
+			mapper.constructor = MethodHandles.publicLookup().findConstructor(beanClass,
+				MethodType.methodType(void.class)).asType(MethodType.methodType(Object.class));
+		} catch (Exception e) {
+			// the beans are created elsewhere
+		}
+		return mapper;
+	}
+
+	/**
+	 * Compiles the params to prepare a statement from the beans of the class.
+	 * @param params the input params
+	 * @param beanClass the class of the beans
+	 */
+	public static RowMapper forInput(List params, Class beanClass) {
+		RowMapper mapper = new RowMapper(beanClass, (Param[])params.toArray(new Param[params.size()]));
+		Map properties = mapper.getProperties();
+		for (int i=0; i<mapper.params.length; i++) {
+			PropertyDescriptor pd = (PropertyDescriptor)properties.get(mapper.params[i].getAttribute());
+			if (pd != null && pd.getReadMethod() != null) {
+				mapper.compileGetter(i, pd);
+			}
+		}
+		return mapper;
+	}
+
+	private Map getProperties() {
+		Map map = new HashMap();
+		if (Map.class.isAssignableFrom(this.beanClass) || DynaBean.class.isAssignableFrom(this.beanClass)) {
+			return map;
+		}
+		try {
+			PropertyDescriptor[] pd = Introspector.getBeanInfo(this.beanClass).getPropertyDescriptors();
+			for (int i=0; i<pd.length; i++) {
+				map.put(pd[i].getName(), pd[i]);
+			}
+		} catch (Exception e) {
+			if (log.isErrorEnabled()) { log.error(e); }
+		}
+		return map;
+	}
+
+	/**
+	 * @return the primitive kind of the sql type, OBJECT if not a primitive
+	 */
+	private static int kindOf(int sqlType) {
+		switch (sqlType) {
+		case Types.INTEGER: return INT;
+		case Types.BIGINT: return LONG;
+		case Types.SMALLINT: return SHORT;
+		case Types.TINYINT: return BYTE;
+		case Types.DOUBLE: return DOUBLE;
+		case Types.FLOAT: return FLOAT;
+		case Types.BOOLEAN: return BOOLEAN;
+		default: return OBJECT;
+		}
+	}
+
+	private static Class primitiveOf(int kind) {
+		switch (kind) {
+		case INT: return int.class;
+		case LONG: return long.class;
+		case SHORT: return short.class;
+		case BYTE: return byte.class;
+		case DOUBLE: return double.class;
+		case FLOAT: return float.class;
+		case BOOLEAN: return boolean.class;
+		default: return null;
+		}
+	}
+
+	/**
+	 * @return the class of the value read for the sql type
+	 */
+	private static Class valueClassOf(int sqlType) {
+		switch (sqlType) {
+		case Types.VARCHAR:
+		case Types.CHAR: return String.class;
+		case Types.NUMERIC: return BigDecimal.class;
+		case Types.TIMESTAMP: return Timestamp.class;
+		case Types.INTEGER: return Integer.class;
+		case Types.BIGINT: return Long.class;
+		case Types.SMALLINT: return Short.class;
+		case Types.TINYINT: return Byte.class;
+		case Types.DOUBLE: return Double.class;
+		case Types.FLOAT: return Float.class;
+		case Types.BOOLEAN: return Boolean.class;
+		default: return Object.class;
+		}
+	}
+
+	private void compileSetter(int i, PropertyDescriptor pd) {
+		try {
+			MethodHandle mh = MethodHandles.publicLookup().unreflect(pd.getWriteMethod());
+			Class type = pd.getPropertyType();
+			int kind = kindOf(this.params[i].getSqlType());
+			if (type.isPrimitive()) {
+				if (type != primitiveOf(kind)) {
+					return;
+				}
+				this.handles[i] = mh.asType(MethodType.methodType(void.class, Object.class, type));
+				this.kinds[i] = kind;
+			} else {
+				Class valueClass = valueClassOf(this.params[i].getSqlType());
+				if (valueClass != Object.class && !type.isAssignableFrom(valueClass)) {
+					return;
+				}
+				this.handles[i] = mh.asType(MethodType.methodType(void.class, Object.class, Object.class));
+				this.kinds[i] = OBJECT;
+			}
+		} catch (Exception e) {
+			if (log.isDebugEnabled()) { log.debug("Unable to compile " + this.params[i], e); }
+		}
+	}
+
+	private void compileGetter(int i, PropertyDescriptor pd) {
+		try {
+			MethodHandle mh = MethodHandles.publicLookup().unreflect(pd.getReadMethod());
+			Class type = pd.getPropertyType();
+			int kind = kindOf(this.params[i].getSqlType());
+			if (type.isPrimitive() && type == primitiveOf(kind)) {
+				this.handles[i] = mh.asType(MethodType.methodType(type, Object.class));
+				this.kinds[i] = kind;
+			} else {
+				this.handles[i] = mh.asType(MethodType.methodType(Object.class, Object.class));
+				this.kinds[i] = OBJECT;
+			}
+		} catch (Exception e) {
+			if (log.isDebugEnabled()) { log.debug("Unable to compile " + this.params[i], e); }
+		}
+	}
+
+	/** @return Returns the beanClass. */
+	public Class getBeanClass() { return (this.beanClass); }
+
+	/**
+	 * @return true if the mapper was compiled from the same params
+	 */
+	public boolean matches(List list) {
+		if (list.size() != this.params.length) {
+			return false;
+		}
+		for (int i=0; i<this.params.length; i++) {
+			if (list.get(i) != this.params[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates a new bean with the public no argument constructor.
+	 * @return the bean or null if the class has no such constructor
+	 */
+	public Object newInstance() {
+		if (this.constructor == null) {
+			return null;
+		}
+		try {
+			return (Object)this.constructor.invokeExact();
+		} catch (Throwable t) {
+			if (log.isErrorEnabled()) { log.error(t); }
+		}
+		return null;
+	}
+
+	/**
+	 * Resolves the column index of each param. The params with an index
+	 * keep it and the others are looked up by name in the metadata.
+	 * @return the column indexes, 0 where not found
+	 */
+	public int[] resolve(ResultSet rs) throws SQLException {
+		int[] index = new int[this.params.length];
+		ResultSetMetaData md = null;
+		for (int i=0; i<this.params.length; i++) {
+			Param p = this.params[i];
+			index[i] = p.getSqlIndex();
+			if (index[i] != 0 || p.getSqlName() == null) {
+				continue;
+			}
+			if (md == null) {
+				md = rs.getMetaData();
+			}
+			if (md != null) {
+				int count = md.getColumnCount();
+				for (int c=1; c<=count; c++) {
+					if (p.getSqlName().equalsIgnoreCase(md.getColumnLabel(c))) {
+						index[i] = c;
+						break;
+					}
+				}
+			}
+			if (index[i] == 0) {
+				try {
+					index[i] = rs.findColumn(p.getSqlName());
+				} catch (SQLException e) {
+					// left to the param to report
+				}
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Populates the bean from the current row.
+	 * @param bean the bean to populate
+	 * @param rs the ResultSet positioned on the row
+	 * @param index the column indexes from {@link #resolve(ResultSet)}
+	 */
+	public void populate(Object bean, ResultSet rs, int[] index) {
+		for (int i=0; i<this.params.length; i++) {
+			MethodHandle mh = this.handles[i];
+			int c = index[i];
+			if (mh == null || c == 0) {
+				this.params[i].populate(bean, rs);
+				continue;
+			}
+			try {
+				switch (this.kinds[i]) {
+				case INT: mh.invokeExact(bean, rs.getInt(c)); break;
+				case LONG: mh.invokeExact(bean, rs.getLong(c)); break;
+				case SHORT: mh.invokeExact(bean, rs.getShort(c)); break;
+				case BYTE: mh.invokeExact(bean, rs.getByte(c)); break;
+				case DOUBLE: mh.invokeExact(bean, rs.getDouble(c)); break;
+				case FLOAT: mh.invokeExact(bean, rs.getFloat(c)); break;
+				case BOOLEAN: mh.invokeExact(bean, rs.getBoolean(c)); break;
+				default: mh.invokeExact(bean, this.params[i].readValue(rs, c)); break;
+				}
+			} catch (Throwable t) {
+				if (log.isErrorEnabled()) { log.error(t); }
+			}
+		}
+	}
+
+	/**
+	 * Sets the parameters of the statement from the bean.
+	 * @param bean the bean holding the values
+	 * @param pstmt the statement to prepare
+	 */
+	public void prepare(Object bean, PreparedStatement pstmt) {
+		for (int i=0; i<this.params.length; i++) {
+			MethodHandle mh = this.handles[i];
+			if (mh == null) {
+				this.params[i].prepare(bean, pstmt);
+				continue;
+			}
+			int c = this.params[i].getSqlIndex();
+			try {
+				switch (this.kinds[i]) {
+				case INT: pstmt.setInt(c, (int)mh.invokeExact(bean)); break;
+				case LONG: pstmt.setLong(c, (long)mh.invokeExact(bean)); break;
+				case SHORT: pstmt.setShort(c, (short)mh.invokeExact(bean)); break;
+				case BYTE: pstmt.setByte(c, (byte)mh.invokeExact(bean)); break;
+				case DOUBLE: pstmt.setDouble(c, (double)mh.invokeExact(bean)); break;
+				case FLOAT: pstmt.setFloat(c, (float)mh.invokeExact(bean)); break;
+				case BOOLEAN: pstmt.setBoolean(c, (boolean)mh.invokeExact(bean)); break;
+				default: this.params[i].setValueToStatement((Object)mh.invokeExact(bean), pstmt); break;
+				}
+			} catch (Throwable t) {
+				if (log.isErrorEnabled()) { log.error(t); }
+			}
+		}
+	}
+}
@@ -17,6 +17,7 @@
  *
  */
 package org.latticesoft.util.resource.dao;
+import java.sql.Connection;
 import org.latticesoft.command.Command;
 public interface Service extends ConnectionUser, Command {
 	public static final int UPDATE = 1;
@@ -25,4 +26,19 @@ public interface Service extends ConnectionUser, Command {
 	String getName();
 	void setName(String s);
 	int getType();
+	/**
+	 * Returns a copy of this service which runs on the connection given
+	 * and leaves it open. The service itself is treated as a template
+	 * and is not changed, so many threads may bind it at the same time.
+	 * <p>The default sets the connection on this service itself, as
+	 * before there was bind, and returns it. The calls of such a
+	 * service must not overlap.</p>
+	 * @param conn the connection of the call
+	 * @return the service bound to the connection
+	 */
+	default Service bind(Connection conn) {
+		this.setConnection(conn);
+		this.setCloseConnection(false);
+		return this;
+	}
 }
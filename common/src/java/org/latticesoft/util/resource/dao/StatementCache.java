@@ -0,0 +1,146 @@
+/*
+ * Copyright 2004 Senunkan Shinryuu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Created on Oct 18, 2026
+ *
+ */
+package org.latticesoft.util.resource.dao;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.latticesoft.util.container.EvictionListener;
+import org.latticesoft.util.container.LinkedLRUMap;
+import org.latticesoft.util.resource.DatabaseUtil;
+
+/**
+ * A least recently used cache of the prepared statements of one
+ * connection keyed by their SQL. A statement is taken out of the cache
+ * while in use so it is never shared, and put back when done. The
+ * statements evicted are closed. The cache is synchronized.
+ */
+public class StatementCache {
+	private LinkedLRUMap cache;
+	private AtomicLong hitCount = new AtomicLong();
+	private AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * Constructs the object
+	 * @param maxSize the maximum number of statements kept
+	 */
+	public StatementCache(int maxSize) {
+		this.cache = new LinkedLRUMap(maxSize);
+		this.cache.setEvictionListener(new EvictionListener() {
+			public void evicted(Object key, Object value, int cause) {
+				DatabaseUtil.closeStatement((Statement)value);
+			}
+		});
+	}
+
+	/** @return Returns the maximum number of statements kept. */
+	public int getMaxSize() { return (this.cache.getMaxCount()); }
+
+	/** @return Returns the number of statements found in the cache. */
+	public long getHitCount() { return (this.hitCount.get()); }
+
+	/** @return Returns the number of statements not found in the cache. */
+	public long getMissCount() { return (this.missCount.get()); }
+
+	/** @return Returns the number of statements kept. */
+	public synchronized int size() {
+		return this.cache.size();
+	}
+
+	/**
+	 * Takes the statement of the key out of the cache. A statement closed
+	 * while cached, for instance through ResultSet.getStatement, is
+	 * dropped.
+	 * @param key the SQL and any other attribute of the statement
+	 * @return the statement or null if none is cached
+	 */
+	public PreparedStatement take(Object key) {
+		PreparedStatement pstmt = null;
+		synchronized (this) {
+			pstmt = (PreparedStatement)this.cache.remove(key);
+		}
+		if (pstmt != null && isClosed(pstmt)) {
+			pstmt = null;
+		}
+		if (pstmt == null) {
+			this.missCount.incrementAndGet();
+		} else {
+			this.hitCount.incrementAndGet();
+		}
+		return pstmt;
+	}
+
+	/**
+	 * Puts back a statement after use. Its open ResultSet is closed, as
+	 * closing the statement would do. The parameters, batch and warnings
+	 * are cleared and the fetch size, max rows and query timeout are
+	 * reset to 0 so the next user does not inherit them. If another
+	 * statement of the same key is already cached, this one is closed.
+	 */
+	public void release(Object key, PreparedStatement pstmt) {
+		if (pstmt == null) {
+			return;
+		}
+		try {
+			DatabaseUtil.closeResultSet(pstmt.getResultSet());
+			pstmt.clearParameters();
+			pstmt.clearBatch();
+			pstmt.clearWarnings();
+			pstmt.setFetchSize(0);
+			pstmt.setMaxRows(0);
+			pstmt.setQueryTimeout(0);
+		} catch (SQLException e) {
+			DatabaseUtil.closeStatement(pstmt);
+			return;
+		}
+		PreparedStatement old = null;
+		synchronized (this) {
+			old = (PreparedStatement)this.cache.peek(key);
+			if (old == null) {
+				this.cache.put(key, pstmt);
+			}
+		}
+		if (old != null) {
+			DatabaseUtil.closeStatement(pstmt);
+		}
+	}
+
+	private static boolean isClosed(PreparedStatement pstmt) {
+		try {
+			return pstmt.isClosed();
+		} catch (Throwable t) {
+			return false;
+		}
+	}
+
+	/**
+	 * Closes all the statements cached.
+	 */
+	public void close() {
+		List list = null;
+		synchronized (this) {
+			list = new ArrayList(this.cache.values());
+			this.cache.clear();
+		}
+		for (int i=0; i<list.size(); i++) {
+			DatabaseUtil.closeStatement((Statement)list.get(i));
+		}
+	}
+}
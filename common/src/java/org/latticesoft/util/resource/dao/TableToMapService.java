@@ -25,7 +25,7 @@ import org.latticesoft.command.*;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-public class TableToMapService implements Service {
+public class TableToMapService implements Service, Cacheable, Cloneable {
 
 	private static final Log log = LogFactory.getLog(TableToMapService.class);
 	private Connection conn = null;
@@ -34,6 +34,10 @@ public class TableToMapService implements Service {
 	private String value;
 	private String sql;
 	private String name = null;
+	private String tables = null;
+	private int cacheSize = 0;
+	private long cacheTimeToLive = 0;
+	private boolean failed = false;
 
 	/** @return Returns the name. */
 	public String getName() { return (this.name); }
@@ -59,9 +63,40 @@ public class TableToMapService implements Service {
 	/** @param value The value to set. */
 	public void setValue(String s) { this.value = s; }
 	
+	/** @return Returns the tables read by the service, comma separated. */
+	public String getTables() { return (this.tables); }
+	/** @param tables The tables read by the service, comma separated. */
+	public void setTables(String tables) { this.tables = tables; }
+	/** @return Returns the maximum number of results cached, 0 for no caching. */
+	public int getCacheSize() { return (this.cacheSize); }
+	/** @param cacheSize The maximum number of results cached, 0 for no caching. */
+	public void setCacheSize(int cacheSize) { this.cacheSize = cacheSize; }
+	/** @return Returns the time to live of the cached map in milliseconds. */
+	public long getCacheTimeToLive() { return (this.cacheTimeToLive); }
+	/** @param cacheTimeToLive The time to live of the cached map in milliseconds. */
+	public void setCacheTimeToLive(long cacheTimeToLive) { this.cacheTimeToLive = cacheTimeToLive; }
+
+	/** @see Cacheable#isFailed() */
+	public boolean isFailed() { return (this.failed); }
+
+	/** The map does not depend on the input so it has a single key. */
+	public Object[] getInputValues(Object data) { return new Object[0]; }
+
 	public int getType() { return Service.QUERY; }
 
+	public Service bind(Connection conn) {
+		try {
+			TableToMapService s = (TableToMapService)this.clone();
+			s.conn = conn;
+			s.closeConnection = false;
+			return s;
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e.getMessage());
+		}
+	}
+
 	public Object execute(Object o) throws CommandException {
+		this.failed = false;
 		Map map = new HashMap();
 		if (this.conn == null || this.key == null || 
 			this.value == null || this.sql == null) {
@@ -80,6 +115,7 @@ public class TableToMapService implements Service {
 				}
 			}
 		} catch (Exception e) {
+			this.failed = true;
 			if (log.isErrorEnabled()) { log.error(e); }
 		} finally {
 			DatabaseUtil.closeResultSet(rs);